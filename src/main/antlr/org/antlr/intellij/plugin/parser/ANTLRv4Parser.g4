@@ -398,3 +398,15 @@ identifier	:	RULE_REF
 
 qid : identifier (DOT identifier)*
     ;
+
+// --------------------
+// Entry points to reparse the body of a rule on its own, see RuleBodyElementType.
+// Without EOF, prediction at the end of the body has no follow to go by.
+
+standaloneRuleBlock
+	:	ruleBlock EOF
+	;
+
+standaloneLexerRuleBlock
+	:	lexerRuleBlock EOF
+	;
@@ -6,6 +6,8 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -20,9 +22,9 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.progress.BackgroundTaskQueue;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
-import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.progress.util.BackgroundTaskUtil;
 import com.intellij.openapi.progress.util.ProgressWindow;
 import com.intellij.openapi.project.Project;
@@ -39,9 +41,19 @@ import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.messages.MessageBusConnection;
+import com.intellij.util.ui.update.MergingUpdateQueue;
+import com.intellij.util.ui.update.Update;
+import org.antlr.intellij.plugin.parsing.GenerationCache;
+import org.antlr.intellij.plugin.parsing.GrammarAnalysisService;
+import org.antlr.intellij.plugin.parsing.GrammarDependencyGraph;
+import org.antlr.intellij.plugin.parsing.ParsingResult;
+import org.antlr.intellij.plugin.parsing.ParsingResultCache;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.intellij.plugin.parsing.ProcessedGrammarCache;
 import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
+import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFiles;
 import org.antlr.intellij.plugin.preview.PreviewPanel;
 import org.antlr.intellij.plugin.preview.PreviewState;
 import org.antlr.intellij.plugin.profiler.ProfilerPanel;
@@ -51,11 +63,19 @@ import org.antlr.v4.tool.LexerGrammar;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
-import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore.getGrammarProperties;
 
 /** This object is the controller for the ANTLR plug-in. It receives
  *  events and can send them on to its contained components. For example,
@@ -94,10 +114,28 @@ public class ANTLRv4PluginController implements ProjectComponent {
 
 	private ProgressIndicator parsingProgressIndicator;
 
+	/** Lets us switch back to a grammar, input or start rule without reparsing */
+	private final ParsingResultCache parsingResultCache = new ParsingResultCache();
+	private final AtomicLong grammarVersions = new AtomicLong();
+
 	private final Map<String, Long> grammarFileMods = new HashMap<>();
 
+	/** Which loaded grammars use which lexer or imported grammars */
+	private final GrammarDependencyGraph grammarDependencies = new GrammarDependencyGraph();
+
+	/** Waits for saves to settle before generating code */
+	private final MergingUpdateQueue generationRequests;
+
+	/** Runs one generation at a time so that they don't write the same files concurrently */
+	private final BackgroundTaskQueue generationQueue;
+
+	/** The latest generation queued or running for each grammar */
+	private final Map<String, RunANTLROnGrammarFile> generations = new ConcurrentHashMap<>();
+
 	public ANTLRv4PluginController(Project project) {
 		this.project = project;
+		generationRequests = new MergingUpdateQueue("ANTLR Code Generation Requests", 300, true, null, project);
+		generationQueue = new BackgroundTaskQueue(project, "ANTLR Code Generation");
 	}
 
 	public static ANTLRv4PluginController getInstance(Project project) {
@@ -176,6 +214,7 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		for (PreviewState it : grammarToPreviewState.values()) {
 			previewPanel.inputPanel.releaseEditor(it);
 		}
+		parsingResultCache.clear();
 
 		previewPanel = null;
 		previewWindow = null;
@@ -285,13 +324,14 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		grammarFileMods.put(grammarFilePath, modCount);
 
 		LOG.info("grammarFileSavedEvent "+grammarFilePath+" "+project.getName());
-		updateGrammarObjectsFromFile(grammarFile, true); // force reload
-		if ( previewPanel!=null ) {
-			previewPanel.grammarFileSaved(grammarFile);
-		}
-		else {
-			LOG.error("grammarFileSavedEvent called before preview panel created");
-		}
+		updateGrammarObjectsInBackground(grammarFile, true, () -> { // force reload
+			if ( previewPanel!=null ) {
+				previewPanel.grammarFileSaved(grammarFile);
+			}
+			else {
+				LOG.error("grammarFileSavedEvent called before preview panel created");
+			}
+		});
 	}
 
 	public void currentEditorFileChangedEvent(VirtualFile oldFile, VirtualFile newFile, boolean modified) {
@@ -320,14 +360,19 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		// When switching from a lexer grammar, update its objects in case the grammar was modified.
 		// The updated objects might be needed later by another dependant grammar.
 		if ( oldFile != null && "g4".equals(oldFile.getExtension()) && modified) {
-			updateGrammarObjectsFromFile(oldFile, true);
+			updateGrammarObjectsInBackground(oldFile, true, () -> {});
 		}
 
 		PreviewState previewState = getPreviewState(newFile);
 		if ( previewState.g==null && previewState.lg==null ) { // only load grammars if none is there
-			updateGrammarObjectsFromFile(newFile, false);
+			updateGrammarObjectsInBackground(newFile, false, () -> {
+				// the user may have moved on to another grammar while we were loading this one
+				if ( previewPanel!=null && newFile.equals(getCurrentGrammarFile()) ) {
+					previewPanel.grammarFileChanged(newFile);
+				}
+			});
 		}
-		if ( previewPanel!=null ) {
+		else if ( previewPanel!=null ) {
 			previewPanel.grammarFileChanged(newFile);
 		}
 	}
@@ -358,10 +403,14 @@ public class ANTLRv4PluginController implements ProjectComponent {
 
 		previewState.g = null; // wack old ref to the Grammar for text in editor
 		previewState.lg = null;
+		parsingResultCache.invalidate(grammarFileName);
 
 		previewPanel.closeGrammar(vfile);
 
 		grammarToPreviewState.remove(grammarFileName);
+		grammarDependencies.remove(grammarFileName);
+		GrammarAnalysisService.getInstance(project).invalidate(grammarFileName);
+		ProcessedGrammarCache.getInstance(project).invalidate(grammarFileName);
 
 		// close tool window
 		hidePreview();
@@ -376,18 +425,117 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		}
 	}
 
-	/** Make sure to run after updating grammars in previewState */
+	/** Generate code for a saved grammar, if it's stale and auto-generation is
+	 *  on. Rapid successive saves of the same grammar are coalesced into one
+	 *  generation, which runs in the background.
+	 */
 	public void runANTLRTool(final VirtualFile grammarFile) {
 		String title = "ANTLR Code Generation";
 		boolean canBeCancelled = true;
 		boolean forceGeneration = false;
-		Task gen =
+		RunANTLROnGrammarFile gen =
 			new RunANTLROnGrammarFile(grammarFile,
 									  project,
 									  title,
 									  canBeCancelled,
 									  forceGeneration);
-		ProgressManager.getInstance().run(gen);
+		if ( ApplicationManager.getApplication().isUnitTestMode() ) {
+			// tests expect the .tokens file to be there as soon as the event is fired
+			ProgressManager.getInstance().run(gen);
+			return;
+		}
+		generationRequests.queue(new Update(grammarFile.getPath()) {
+			@Override
+			public void run() {
+				if ( !projectIsClosed ) {
+					runANTLRTool(gen);
+				}
+			}
+		});
+	}
+
+	/** Queue {@code gen} after the generations in progress, cancelling the
+	 *  previous generation of the same grammar as it would be overwritten anyway.
+	 */
+	public void runANTLRTool(RunANTLROnGrammarFile gen) {
+		String grammarFileName = gen.getGrammarFile().getPath();
+		RunANTLROnGrammarFile previous = generations.put(grammarFileName, gen);
+		if ( previous!=null ) {
+			previous.cancel();
+		}
+		generationQueue.run(gen);
+	}
+
+	/** Queue the generation of many grammars after the generations in
+	 *  progress, cancelling the generations of these grammars that are queued
+	 *  or running as they would be overwritten anyway. Generations requested
+	 *  meanwhile, on save for instance, run after it.
+	 */
+	public void runANTLRTool(RunANTLROnGrammarFiles gen) {
+		for (VirtualFile grammarFile : gen.getGrammarFiles()) {
+			RunANTLROnGrammarFile previous = generations.remove(grammarFile.getPath());
+			if ( previous!=null ) {
+				previous.cancel();
+			}
+		}
+		generationQueue.run(gen);
+	}
+
+	/** Called by {@code gen} when it's done, cancelled or not */
+	public void generationFinished(RunANTLROnGrammarFile gen) {
+		generations.remove(gen.getGrammarFile().getPath(), gen);
+	}
+
+	/** Same as {@link #updateGrammarObjectsFromFile} but without blocking the
+	 *  EDT: grammars are loaded in a cancellable read action, which is restarted
+	 *  if a write action comes in. Requests for the same file are coalesced so
+	 *  that only the latest one is processed. When done, the new grammars are
+	 *  published to the preview state and {@code onLoaded} runs on the EDT.
+	 */
+	private void updateGrammarObjectsInBackground(VirtualFile grammarFile, boolean generateTokensFile, Runnable onLoaded) {
+		if ( ApplicationManager.getApplication().isUnitTestMode() ) {
+			// tests expect the grammars to be there as soon as the event is fired
+			updateGrammarObjectsFromFile(grammarFile, generateTokensFile);
+			onLoaded.run();
+			return;
+		}
+		loadGrammarObjectsInBackground(grammarFile, () -> {
+			List<PreviewState> dependents = getLoadedDependents(grammarFile.getPath());
+			if ( !dependents.isEmpty() ) {
+				if ( generateTokensFile ) {
+					// Run the tool to regenerate the .tokens file needed by dependent grammars
+					runANTLRTool(grammarFile);
+				}
+				reloadDependentsInBackground(dependents.iterator());
+			}
+			onLoaded.run();
+		});
+	}
+
+	/** Reload grammars one after the other, each may depend on the previous ones */
+	private void reloadDependentsInBackground(Iterator<PreviewState> dependents) {
+		if ( !dependents.hasNext() ) {
+			return;
+		}
+		VirtualFile dependentFile = dependents.next().grammarFile;
+		loadGrammarObjectsInBackground(dependentFile, () -> {
+			if ( previewPanel!=null && dependentFile.equals(getCurrentGrammarFile()) ) {
+				previewPanel.grammarFileChanged(dependentFile);
+			}
+			reloadDependentsInBackground(dependents);
+		});
+	}
+
+	private void loadGrammarObjectsInBackground(VirtualFile grammarFile, Runnable onLoaded) {
+		ReadAction.nonBlocking(() -> ParsingUtils.loadGrammars(grammarFile, project))
+			.coalesceBy(this, grammarFile)
+			.expireWith(project)
+			.finishOnUiThread(ModalityState.defaultModalityState(), grammars -> {
+				if ( projectIsClosed ) return;
+				setGrammarObjects(grammarFile, grammars);
+				onLoaded.run();
+			})
+			.submit(AppExecutorUtil.getAppExecutorService());
 	}
 
 	/** Look for state information concerning this grammar file and update
@@ -399,69 +547,99 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	private void updateGrammarObjectsFromFile(VirtualFile grammarFile, boolean generateTokensFile) {
 		updateGrammarObjectsFromFile_(grammarFile);
 
-		// if grammarFileName is a separate lexer, we need to look for
-		// its matching parser, if any, that is loaded in an editor
+		// if grammarFileName is a separate lexer or an imported grammar, we need
+		// to reload the grammars using it, if any, that are loaded in an editor
 		// (don't go looking on disk).
-		PreviewState s = getAssociatedParserIfLexer(grammarFile.getPath());
-		if ( s!=null ) {
+		List<PreviewState> dependents = getLoadedDependents(grammarFile.getPath());
+		if ( !dependents.isEmpty() ) {
 			if (generateTokensFile) {
 				// Run the tool to regenerate the .tokens file, which will be
 				// needed in the parser grammar
 				runANTLRTool(grammarFile);
 			}
 
-			// try to load lexer again and associate with this parser grammar.
-			// must update parser too as tokens have changed
-			updateGrammarObjectsFromFile_(s.grammarFile);
+			// must update dependents too as tokens have changed
+			for (PreviewState s : dependents) {
+				updateGrammarObjectsFromFile_(s.grammarFile);
+			}
 		}
 	}
 
 	private String updateGrammarObjectsFromFile_(VirtualFile grammarFile) {
+		return setGrammarObjects(grammarFile, ParsingUtils.loadGrammars(grammarFile, project));
+	}
+
+	/** Publish grammars loaded from {@code grammarFile}, or null if they couldn't be loaded */
+	private String setGrammarObjects(VirtualFile grammarFile, Grammar[] grammars) {
 		String grammarFileName = grammarFile.getPath();
 		PreviewState previewState = getPreviewState(grammarFile);
-		Grammar[] grammars = ParsingUtils.loadGrammars(grammarFile, project);
+		if ( grammars!=null && previewState.lg==grammars[0] && previewState.g==grammars[1] ) {
+			return grammarFileName; // reused, keep the ATN caches and parsing results
+		}
 		if (grammars != null) {
 			synchronized (previewState) { // build atomically
 				previewState.lg = (LexerGrammar)grammars[0];
 				previewState.g = grammars[1];
+				previewState.grammarVersion = grammarVersions.incrementAndGet();
+				previewState.parserATNCache = null;
+				previewState.lexerATNCache = null;
 			}
+			grammarDependencies.setDependencies(grammarFileName, getDependencies(grammars));
 		}
 		else {
 			synchronized (previewState) { // build atomically
 				previewState.lg = null;
 				previewState.g = null;
+				previewState.grammarVersion = grammarVersions.incrementAndGet();
+				previewState.parserATNCache = null;
+				previewState.lexerATNCache = null;
 			}
 		}
+		parsingResultCache.invalidate(grammarFileName); // results of the old grammar are unreachable
 		return grammarFileName;
 	}
 
-	// TODO there could be multiple grammars importing/tokenVocab'ing this lexer grammar
-	public PreviewState getAssociatedParserIfLexer(String grammarFileName) {
-		for (PreviewState s : grammarToPreviewState.values()) {
-			if ( s!=null && s.lg!=null &&
-					(sameFile(grammarFileName, s.lg.fileName)||s.lg==ParsingUtils.BAD_LEXER_GRAMMAR) )
-			{
-				// s has a lexer with same filename, see if there is a parser grammar
-				// (not a combined grammar)
-				if ( s.g!=null && s.g.getType()==ANTLRParser.PARSER ) {
-					return s;
-				}
+	/** The loaded grammars that depend, directly or not, on {@code grammarFileName},
+	 *  in the order they must be reloaded.
+	 */
+	public List<PreviewState> getLoadedDependents(String grammarFileName) {
+		List<PreviewState> dependents = new ArrayList<>();
+		for (String dependent : grammarDependencies.getTransitiveDependents(grammarFileName)) {
+			PreviewState s = grammarToPreviewState.get(dependent);
+			if ( s!=null ) {
+				dependents.add(s);
 			}
+		}
+		return dependents;
+	}
 
-			if ( s!=null && s.g!=null && s.g.importedGrammars!=null ) {
-				for ( Grammar importedGrammar : s.g.importedGrammars ) {
-					if (grammarFileName.equals(importedGrammar.fileName)) {
-						return s;
-					}
-				}
+	/** The lexer and imported grammars used by grammars loaded from one file */
+	private static List<String> getDependencies(Grammar[] grammars) {
+		LexerGrammar lg = (LexerGrammar) grammars[0];
+		Grammar g = grammars[1];
+		List<String> dependencies = new ArrayList<>();
+		if ( g!=null && g.getType()==ANTLRParser.PARSER ) {
+			if ( lg!=null && lg!=ParsingUtils.BAD_LEXER_GRAMMAR ) {
+				dependencies.add(lg.fileName);
+				addImportedGrammars(lg, dependencies);
+			}
+			else { // reload when the missing lexer shows up
+				dependencies.add(ParsingUtils.getLexerGrammarFileName(g));
 			}
 		}
-		return null;
+		addImportedGrammars(g!=null ? g : lg, dependencies);
+		return dependencies;
 	}
 
-	private boolean sameFile(String pathOne, String pathTwo) {
-		// use new File() to support both / and \ in paths
-		return new File(pathOne).equals(new File(pathTwo));
+	private static void addImportedGrammars(Grammar g, List<String> dependencies) {
+		List<Grammar> imports = g!=null ? g.getAllImportedGrammars() : null;
+		if ( imports!=null ) {
+			for (Grammar imported : imports) {
+				if ( imported.fileName!=null ) {
+					dependencies.add(imported.fileName);
+				}
+			}
+		}
 	}
 
 	public void parseText(final VirtualFile grammarFile, String inputText) {
@@ -470,6 +648,55 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		// No need to parse empty text during unit tests, yet...
 		if (inputText.isEmpty() && ApplicationManager.getApplication().isUnitTestMode()) return;
 
+		// In fast mode, only pay for profiling if someone is going to look at it,
+		// and then it needs exact ambiguity detection, which SLL/LL doesn't do
+		boolean fastMode = previewPanel.isFastParsingMode() && !previewPanel.isProfilerTabSelected();
+		boolean profile = !fastMode;
+
+		ParsingResultCache.Key key = new ParsingResultCache.Key(
+				grammarFile.getPath(), previewState.grammarVersion, previewState.startRuleName,
+				getGrammarProperties(project, grammarFile).getCaseChangingStrategy(), fastMode, inputText
+		);
+		ParsingResultCache.Hit hit = parsingResultCache.get(key, profile);
+		if ( hit!=null ) {
+			if ( previewState.parsingResult!=null && previewState.parsingResult!=hit.result ) {
+				previewState.parsingResult.release();
+			}
+			previewState.parsingResult = hit.result;
+			previewPanel.onParsingCompleted(previewState, hit.parseTime_ns);
+			return;
+		}
+
+		parseInBackground(previewState, () -> ParsingUtils.parseText(
+				previewState.g, previewState.lg, previewState.startRuleName,
+				grammarFile, inputText, project, previewState, fastMode, profile
+		), key);
+	}
+
+	/** Parse an input file that is too big to be loaded in an editor, straight from disk */
+	public void parseLargeInputFile(final VirtualFile grammarFile, VirtualFile inputFile) {
+		final PreviewState previewState = getPreviewState(grammarFile);
+
+		boolean fastMode = previewPanel.isFastParsingMode() && !previewPanel.isProfilerTabSelected();
+		boolean profile = !fastMode;
+
+		parseInBackground(previewState, () -> {
+			try {
+				return ParsingUtils.parseLargeInputFile(
+						previewState.g, previewState.lg, previewState.startRuleName,
+						grammarFile, inputFile, project, previewState, fastMode, profile
+				);
+			}
+			catch (IOException e) {
+				LOG.warn("can't read large input file "+inputFile.getPath(), e);
+				return null;
+			}
+		}, null);
+	}
+
+	/** Run {@code parser} off the EDT; its result is cached under {@code cacheKey} if not null */
+	private void parseInBackground(PreviewState previewState, Supplier<ParsingResult> parser,
+								   ParsingResultCache.Key cacheKey) {
 		// Parse text in a background thread to avoid freezing the UI if the grammar is badly written
 		// and takes forever to interpret the input.
 		parsingProgressIndicator = BackgroundTaskUtil.executeAndTryWait(
@@ -477,15 +704,23 @@ public class ANTLRv4PluginController implements ProjectComponent {
 //					System.out.println("PARSE START "+Thread.currentThread().getName());
 					long start = System.nanoTime();
 
-					previewState.parsingResult = ParsingUtils.parseText(
-							previewState.g, previewState.lg, previewState.startRuleName,
-							grammarFile, inputText, project
-					);
+					ParsingResult result = parser.get();
+					ParsingResult previous = previewState.parsingResult;
+					previewState.parsingResult = result;
+					long parseTime_ns = System.nanoTime() - start;
+					if ( cacheKey!=null && result!=null ) {
+						parsingResultCache.put(cacheKey, result, parseTime_ns);
+					}
 
-//					long parseTime_ns = System.nanoTime() - start;
 //					double parseTimeMS = parseTime_ns/(1000.0*1000.0);
 //					System.out.println("PARSE STOP "+Thread.currentThread().getName()+" "+parseTimeMS+"ms");
-					return () -> previewPanel.onParsingCompleted(previewState, System.nanoTime() - start);
+					return () -> {
+						// on the EDT, where the previous result might still have been read
+						if ( previous!=null && previous!=result ) {
+							previous.release();
+						}
+						previewPanel.onParsingCompleted(previewState, parseTime_ns);
+					};
 				},
 				() -> previewPanel.notifySlowParsing(),
 				ProgressWindow.DEFAULT_PROGRESS_DIALOG_POSTPONE_TIME_MILLIS,
@@ -630,6 +865,16 @@ public class ANTLRv4PluginController implements ProjectComponent {
 				grammarFileSavedEvent(vfile);
 			}
 		}
+
+		@Override
+		public void fileDeleted(@NotNull VirtualFileEvent event) {
+			final VirtualFile vfile = event.getFile();
+			if ( !projectIsClosed && vfile.getName().endsWith(".g4") ) {
+				GrammarAnalysisService.getInstance(project).invalidate(vfile.getPath());
+				ProcessedGrammarCache.getInstance(project).invalidate(vfile.getPath());
+				GenerationCache.getInstance(project).invalidate(vfile.getPath());
+			}
+		}
 	}
 
 	public class MyFileEditorManagerAdapter implements FileEditorManagerListener {
@@ -6,6 +6,7 @@ import org.antlr.intellij.adaptor.lexer.PSIElementTypeFactory;
 import org.antlr.intellij.adaptor.lexer.RuleIElementType;
 import org.antlr.intellij.adaptor.lexer.TokenIElementType;
 import org.antlr.intellij.plugin.adaptors.ANTLRv4LexerAdaptor;
+import org.antlr.intellij.plugin.adaptors.RuleBodyElementType;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.intellij.lang.annotations.MagicConstant;
@@ -15,6 +16,10 @@ import java.util.List;
 public class ANTLRv4TokenTypes {
 	public static IElementType BAD_TOKEN_TYPE = new IElementType("BAD_TOKEN", ANTLRv4Language.INSTANCE);
 
+	/** Lazily parsed bodies of parser and lexer rules, in place of ruleBlock and lexerRuleBlock nodes */
+	public static final RuleBodyElementType PARSER_RULE_BODY = new RuleBodyElementType("PARSER_RULE_BODY", ANTLRv4Lexer.RULE_REF);
+	public static final RuleBodyElementType LEXER_RULE_BODY = new RuleBodyElementType("LEXER_RULE_BODY", ANTLRv4Lexer.TOKEN_REF);
+
 	static {
 		ANTLRv4LexerAdaptor.initializeElementTypeFactory();
 	}
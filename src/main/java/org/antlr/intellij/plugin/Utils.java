@@ -15,4 +15,14 @@ public class Utils {
 		}
 		return filtered;
 	}
+
+	/** 64-bit FNV-1a, so that different texts of the same length practically never collide */
+	public static long fnv1aHash(CharSequence s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i<s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
 }
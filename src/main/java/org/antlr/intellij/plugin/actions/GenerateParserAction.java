@@ -10,12 +10,12 @@ import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDocumentManager;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore;
 import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
 import org.jetbrains.annotations.NotNull;
@@ -72,26 +72,31 @@ public class GenerateParserAction extends AnAction implements DumbAware {
 									  project,
 									  title,
 									  canBeCancelled,
-									  forceGeneration);
+									  forceGeneration)
+			{
+				@Override
+				public void onSuccess() {
+					// refresh from disk to see new files
+					Set<File> generatedFiles = new HashSet<>();
+					generatedFiles.add(new File(getOutputDirName()));
+					LocalFileSystem.getInstance().refreshIoFiles(generatedFiles, true, true, null);
+					// pop up a notification
+					Notification notification =
+						new Notification(RunANTLROnGrammarFile.groupDisplayId,
+										 "parser for " + grammarFile.getName() + " generated",
+										 "to " + getOutputDirName(),
+										 NotificationType.INFORMATION);
+					Notifications.Bus.notify(notification, project);
+				}
+			};
 
 		boolean autogen = ANTLRv4GrammarPropertiesStore.getGrammarProperties(project, grammarFile).shouldAutoGenerateParser();
 		if ( !unsaved || !autogen ) {
 			// if everything already saved (not stale) then run ANTLR
 			// if had to be saved and autogen NOT on, then run ANTLR
 			// Otherwise, the save file event will have or will run ANTLR.
-			ProgressManager.getInstance().run(gen); //, "Generating", canBeCancelled, e.getData(PlatformDataKeys.PROJECT));
-
-			// refresh from disk to see new files
-			Set<File> generatedFiles = new HashSet<>();
-			generatedFiles.add(new File(gen.getOutputDirName()));
-			LocalFileSystem.getInstance().refreshIoFiles(generatedFiles, true, true, null);
-			// pop up a notification
-			Notification notification =
-				new Notification(RunANTLROnGrammarFile.groupDisplayId,
-								 "parser for " + grammarFile.getName() + " generated",
-								 "to " + gen.getOutputDirName(),
-								 NotificationType.INFORMATION);
-			Notifications.Bus.notify(notification, project);
+			// Queued like auto-generation, in the background and superseding it
+			ANTLRv4PluginController.getInstance(project).runANTLRTool(gen);
 		}
 	}
 }
@@ -0,0 +1,88 @@
+package org.antlr.intellij.plugin.actions;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFiles;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Generate the recognizers of all the grammars selected in the project
+ *  view, or found in the selected directories, in one background task.
+ */
+public class GenerateParsersAction extends AnAction implements DumbAware {
+	public static final Logger LOG = Logger.getInstance("ANTLR GenerateParsersAction");
+
+	/** Only show for a directory or several grammars; a single grammar has antlr.Generate */
+	@Override
+	public void update(AnActionEvent e) {
+		VirtualFile[] files = LangDataKeys.VIRTUAL_FILE_ARRAY.getData(e.getDataContext());
+		boolean enabled = false;
+		if ( e.getProject()!=null && files!=null ) {
+			int grammars = 0;
+			for (VirtualFile file : files) {
+				if ( file.isDirectory() ) {
+					enabled = true;
+					break;
+				}
+				if ( isGrammar(file) ) {
+					grammars++;
+				}
+			}
+			enabled |= grammars>1;
+		}
+		e.getPresentation().setEnabledAndVisible(enabled);
+	}
+
+	@Override
+	public @NotNull ActionUpdateThread getActionUpdateThread() {
+		return ActionUpdateThread.BGT;
+	}
+
+	@Override
+	public void actionPerformed(final AnActionEvent e) {
+		Project project = e.getProject();
+		if ( project==null ) {
+			LOG.error("actionPerformed no project for "+e);
+			return; // whoa!
+		}
+		VirtualFile[] files = LangDataKeys.VIRTUAL_FILE_ARRAY.getData(e.getDataContext());
+		if ( files==null ) return;
+		List<VirtualFile> grammarFiles = getGrammarFiles(files);
+		LOG.info("actionPerformed "+grammarFiles.size()+" grammars");
+		if ( grammarFiles.isEmpty() ) return;
+
+		// generate what the user sees in the editors
+		FileDocumentManager.getInstance().saveAllDocuments();
+		ANTLRv4PluginController.getInstance(project).runANTLRTool(new RunANTLROnGrammarFiles(project, grammarFiles));
+	}
+
+	private static List<VirtualFile> getGrammarFiles(VirtualFile[] files) {
+		Set<VirtualFile> grammarFiles = new LinkedHashSet<>();
+		for (VirtualFile file : files) {
+			VfsUtilCore.iterateChildrenRecursively(file, null, child -> {
+				if ( isGrammar(child) ) {
+					grammarFiles.add(child);
+				}
+				return true;
+			});
+		}
+		return new ArrayList<>(grammarFiles);
+	}
+
+	private static boolean isGrammar(VirtualFile file) {
+		return !file.isDirectory() && file.getName().endsWith(".g4");
+	}
+}
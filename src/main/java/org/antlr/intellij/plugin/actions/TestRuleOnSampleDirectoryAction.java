@@ -0,0 +1,94 @@
+package org.antlr.intellij.plugin.actions;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.Presentation;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.RunRuleOnSampleDirectory;
+import org.antlr.intellij.plugin.preview.SampleResultsPanel;
+import org.antlr.intellij.plugin.psi.ParserRuleRefNode;
+import org.jetbrains.annotations.NotNull;
+
+/** Parse all the files of a directory with the rule under the cursor, to
+ *  regression-test a grammar against a set of samples.
+ */
+public class TestRuleOnSampleDirectoryAction extends AnAction implements DumbAware {
+	public static final Logger LOG = Logger.getInstance("ANTLR TestRuleOnSampleDirectoryAction");
+
+	/** Only show if selection is a grammar and in a parser rule */
+	@Override
+	public void update(AnActionEvent e) {
+		Presentation presentation = e.getPresentation();
+		presentation.setText("Test ANTLR Rule on Sample Directory...");
+		presentation.setIcon(AllIcons.Actions.RunAll);
+
+		VirtualFile grammarFile = MyActionUtils.getGrammarFileFromEvent(e);
+		ParserRuleRefNode r = grammarFile!=null ? MyActionUtils.getParserRuleSurroundingRef(e) : null;
+		if ( r==null || !Character.isLowerCase(r.getText().charAt(0)) ) {
+			presentation.setEnabledAndVisible(false);
+			return;
+		}
+		presentation.setEnabledAndVisible(true);
+		presentation.setText("Test Rule "+r.getText()+" on Sample Directory...");
+	}
+
+	@Override
+	public @NotNull ActionUpdateThread getActionUpdateThread() {
+		return ActionUpdateThread.BGT;
+	}
+
+	@Override
+	public void actionPerformed(final AnActionEvent e) {
+		Project project = e.getProject();
+		if ( project==null ) {
+			LOG.error("actionPerformed no project for "+e);
+			return; // whoa!
+		}
+		VirtualFile grammarFile = MyActionUtils.getGrammarFileFromEvent(e);
+		ParserRuleRefNode r = MyActionUtils.getParserRuleSurroundingRef(e);
+		if ( grammarFile==null || r==null ) return;
+		String ruleName = r.getText();
+
+		VirtualFile sampleDirectory = FileChooser.chooseFile(
+			FileChooserDescriptorFactory.createSingleFolderDescriptor().withTitle("Select Sample Directory"),
+			project, grammarFile.getParent()
+		);
+		if ( sampleDirectory==null ) return;
+
+		LOG.info("actionPerformed "+grammarFile+" rule "+ruleName+" on "+sampleDirectory);
+
+		FileDocumentManager docMgr = FileDocumentManager.getInstance();
+		Document doc = docMgr.getDocument(grammarFile);
+		if ( doc!=null ) {
+			docMgr.saveDocument(doc);
+		}
+
+		ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
+		ToolWindow previewWindow = controller.getPreviewWindow();
+		SampleResultsPanel resultsPanel = new SampleResultsPanel(project, sampleDirectory);
+		Content content = ContentFactory.SERVICE.getInstance()
+			.createContent(resultsPanel, ruleName+" on "+sampleDirectory.getName(), false);
+		content.setCloseable(true);
+		previewWindow.getContentManager().addContent(content);
+		previewWindow.getContentManager().setSelectedContent(content);
+		previewWindow.show(null);
+
+		ProgressManager.getInstance().run(
+			new RunRuleOnSampleDirectory(project, grammarFile, ruleName, sampleDirectory, resultsPanel::addResult)
+		);
+	}
+}
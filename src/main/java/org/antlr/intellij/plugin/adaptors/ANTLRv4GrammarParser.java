@@ -1,15 +1,22 @@
 package org.antlr.intellij.plugin.adaptors;
 
+import com.intellij.lang.PsiBuilder;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IFileElementType;
+import org.antlr.intellij.adaptor.parser.ANTLRParseTreeToPSIConverter;
 import org.antlr.intellij.adaptor.parser.ANTLRParserAdaptor;
 import org.antlr.intellij.plugin.ANTLRv4Language;
 import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
-import org.antlr.v4.runtime.Parser;
-import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /** A specific kind of parser that knows how to parse ANTLR v4 grammar meta-language */
 public class ANTLRv4GrammarParser extends ANTLRParserAdaptor {
@@ -23,6 +30,9 @@ public class ANTLRv4GrammarParser extends ANTLRParserAdaptor {
 		if (root instanceof IFileElementType) {
 			startRule = ANTLRv4Parser.RULE_grammarSpec;
 		}
+		else if (root instanceof RuleBodyElementType) {
+			startRule = ((RuleBodyElementType) root).getStartRule();
+		}
 		else if (root == ANTLRv4TokenTypes.TOKEN_ELEMENT_TYPES.get(ANTLRv4Lexer.TOKEN_REF)
 			|| root == ANTLRv4TokenTypes.TOKEN_ELEMENT_TYPES.get(ANTLRv4Lexer.RULE_REF)) {
 			startRule = ANTLRv4Parser.RULE_atom;
@@ -31,15 +41,82 @@ public class ANTLRv4GrammarParser extends ANTLRParserAdaptor {
 			startRule = Token.INVALID_TYPE;
 		}
 
+		if (startRule == Token.INVALID_TYPE) {
+			throw new UnsupportedOperationException(String.format("cannot start parsing using root element %s", root));
+		}
+
+		return parseSLLFirst((ANTLRv4Parser) parser, startRule);
+	}
+
+	/** Parse with SLL prediction first, which is enough for almost all grammars
+	 *  and much cheaper, and again with full LL only if that fails, either
+	 *  because of a real syntax error or because SLL was too weak. Only the
+	 *  LL parse reports syntax errors, with the error strategy and listeners
+	 *  {@code parser} came with. Both use the {@link SharedPredictionCache}.
+	 */
+	static ParseTree parseSLLFirst(ANTLRv4Parser parser, int startRule) {
+		SharedPredictionCache.getInstance().install(parser);
+		try {
+			ParseTree tree = parseSLL(parser, startRule);
+			if ( tree != null ) {
+				return tree;
+			}
+
+			// Stage 2: full LL from the first token, reporting errors
+			parser.reset();
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return parse(parser, startRule);
+		}
+		finally {
+			SharedPredictionCache.trim();
+		}
+	}
+
+	/** Stage 1: SLL, bailing out on the first syntax error without reporting it */
+	@Nullable
+	private static ParseTree parseSLL(ANTLRv4Parser parser, int startRule) {
+		ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+		List<? extends ANTLRErrorListener> errorListeners = new ArrayList<>(parser.getErrorListeners());
+
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			return parse(parser, startRule);
+		}
+		catch (ParseCancellationException e) {
+			// either a real syntax error or SLL was too weak, try again with full LL
+			return null;
+		}
+		finally {
+			parser.setErrorHandler(errorHandler);
+			for (ANTLRErrorListener listener : errorListeners) {
+				parser.addErrorListener(listener);
+			}
+		}
+	}
+
+	private static ParseTree parse(ANTLRv4Parser parser, int startRule) {
 		switch (startRule) {
 		case ANTLRv4Parser.RULE_grammarSpec:
-			return ((ANTLRv4Parser) parser).grammarSpec();
+			return parser.grammarSpec();
+
+		case ANTLRv4Parser.RULE_standaloneRuleBlock:
+			return parser.standaloneRuleBlock();
+
+		case ANTLRv4Parser.RULE_standaloneLexerRuleBlock:
+			return parser.standaloneLexerRuleBlock();
 
 		case ANTLRv4Parser.RULE_atom:
-			return ((ANTLRv4Parser) parser).atom();
+			return parser.atom();
 
 		default:
-			throw new UnsupportedOperationException(String.format("cannot start parsing using root element %s", root));
+			throw new UnsupportedOperationException("cannot start parsing with rule " + startRule);
 		}
 	}
+
+	@Override
+	protected ANTLRParseTreeToPSIConverter createListener(Parser parser, IElementType root, PsiBuilder builder) {
+		return new ANTLRv4ParseTreeToPSIConverter(ANTLRv4Language.INSTANCE, parser, builder, root);
+	}
 }
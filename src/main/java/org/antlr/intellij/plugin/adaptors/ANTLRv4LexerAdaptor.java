@@ -6,6 +6,7 @@ import org.antlr.intellij.plugin.ANTLRv4Language;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
 
 /** Adapt ANTLR needs to intellij */
 public class ANTLRv4LexerAdaptor extends ANTLRLexerAdaptor {
@@ -23,23 +24,29 @@ public class ANTLRv4LexerAdaptor extends ANTLRLexerAdaptor {
 		);
 	}
 
-	private static final ANTLRv4LexerState INITIAL_STATE = new ANTLRv4LexerState(Lexer.DEFAULT_MODE, null, 0);
+	/** The rule type the lexer starts with, see {@link ANTLRv4Lexer#getCurrentRuleType()} */
+	private final int initialRuleType;
 
 	public ANTLRv4LexerAdaptor(ANTLRv4Lexer lexer) {
+		this(lexer, Token.INVALID_TYPE);
+	}
+
+	/** A lexer starting inside a rule of type {@code initialRuleType}
+	 *  ({@link ANTLRv4Lexer#RULE_REF} or {@link ANTLRv4Lexer#TOKEN_REF}),
+	 *  to lex the body of a rule on its own.
+	 */
+	public ANTLRv4LexerAdaptor(ANTLRv4Lexer lexer, int initialRuleType) {
 		super(ANTLRv4Language.INSTANCE, lexer);
+		this.initialRuleType = initialRuleType;
 	}
 
 	@Override
 	protected ANTLRv4LexerState getInitialState() {
-		return INITIAL_STATE;
+		return ANTLRv4LexerState.get(Lexer.DEFAULT_MODE, null, initialRuleType);
 	}
 
 	@Override
 	protected ANTLRv4LexerState getLexerState(Lexer lexer) {
-		if (lexer._modeStack.isEmpty()) {
-			return new ANTLRv4LexerState(lexer._mode, null, ((ANTLRv4Lexer)lexer).getCurrentRuleType());
-		}
-
-		return new ANTLRv4LexerState(lexer._mode, lexer._modeStack, ((ANTLRv4Lexer)lexer).getCurrentRuleType());
+		return ANTLRv4LexerState.get(lexer._mode, lexer._modeStack, ((ANTLRv4Lexer)lexer).getCurrentRuleType());
 	}
 }
@@ -7,6 +7,20 @@ import org.antlr.v4.runtime.misc.IntegerStack;
 import org.antlr.v4.runtime.misc.MurmurHash;
 
 public class ANTLRv4LexerState extends ANTLRLexerState {
+	/** Range of rule types whose states are shared, covering the token types
+	 *  and the negative construct types used by {@link ANTLRv4Lexer}.
+	 */
+	private static final int MIN_SHARED_RULE_TYPE = -16;
+	private static final int MAX_SHARED_RULE_TYPE = 63;
+	private static final int MODES = ANTLRv4Lexer.modeNames.length;
+
+	/** States with at most one mode on the stack, indexed by mode, mode on
+	 *  the stack and rule type, created when first needed. Two threads may
+	 *  race to create the same one, which is harmless since they're equal.
+	 */
+	private static final ANTLRv4LexerState[] SHARED_STATES =
+		new ANTLRv4LexerState[MODES * (MODES + 1) * (MAX_SHARED_RULE_TYPE - MIN_SHARED_RULE_TYPE + 1)];
+
 	/** Tracks whether we are in a lexer rule, a parser rule or neither;
 	 *  managed by the ANTLRv4Lexer grammar.
 	 */
@@ -17,6 +31,32 @@ public class ANTLRv4LexerState extends ANTLRLexerState {
 		this.currentRuleType = currentRuleType;
 	}
 
+	/** Returns a state equal to {@code new ANTLRv4LexerState(mode, modeStack, currentRuleType)},
+	 *  which is shared for the usual states: default mode, or one mode pushed
+	 *  for an action, argument, options block etc. Highlighting asks for the
+	 *  state after every token, so this saves an allocation and a copy of the
+	 *  mode stack almost every time.
+	 */
+	public static ANTLRv4LexerState get(int mode, IntegerStack modeStack, int currentRuleType) {
+		int stackSize = modeStack == null ? 0 : modeStack.size();
+		int pushedMode = stackSize == 0 ? -1 : modeStack.peek();
+		if (stackSize > 1
+			|| mode < 0 || mode >= MODES
+			|| pushedMode < -1 || pushedMode >= MODES
+			|| currentRuleType < MIN_SHARED_RULE_TYPE || currentRuleType > MAX_SHARED_RULE_TYPE) {
+			return new ANTLRv4LexerState(mode, stackSize == 0 ? null : modeStack, currentRuleType);
+		}
+
+		int index = ((mode * (MODES + 1)) + pushedMode + 1) * (MAX_SHARED_RULE_TYPE - MIN_SHARED_RULE_TYPE + 1)
+			+ currentRuleType - MIN_SHARED_RULE_TYPE;
+		ANTLRv4LexerState state = SHARED_STATES[index];
+		if (state == null) {
+			state = new ANTLRv4LexerState(mode, stackSize == 0 ? null : modeStack, currentRuleType);
+			SHARED_STATES[index] = state;
+		}
+		return state;
+	}
+
 	public int getCurrentRuleType() {
 		return currentRuleType;
 	}
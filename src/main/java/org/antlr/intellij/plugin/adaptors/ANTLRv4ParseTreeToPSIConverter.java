@@ -0,0 +1,133 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.openapi.progress.ProgressIndicatorProvider;
+import com.intellij.psi.tree.IElementType;
+import org.antlr.intellij.adaptor.parser.ANTLRParseTreeToPSIConverter;
+import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.jetbrains.annotations.Nullable;
+
+/** Builds the PSI tree like the adaptor does, except that rule bodies
+ *  without syntax errors become a single {@link RuleBodyElementType} node
+ *  whose content is parsed when first needed, and reparsed on its own upon
+ *  edits. When parsing such a body, the standalone entry rule and the
+ *  ruleBlock or lexerRuleBlock context under it aren't turned into nodes
+ *  since the body node stands for them.
+ */
+class ANTLRv4ParseTreeToPSIConverter extends ANTLRParseTreeToPSIConverter {
+	private final PsiBuilder builder;
+	private final IElementType root;
+
+	/** The body being collapsed into a lazy node, if any */
+	private RuleBodyElementType bodyType;
+	private PsiBuilder.Marker bodyMarker;
+	/** How deep we are in the body being collapsed, 0 outside */
+	private int bodyDepth;
+
+	ANTLRv4ParseTreeToPSIConverter(Language language, Parser parser, PsiBuilder builder, IElementType root) {
+		super(language, parser, builder);
+		this.builder = builder;
+		this.root = root;
+	}
+
+	@Override
+	public void enterEveryRule(ParserRuleContext ctx) {
+		if ( bodyDepth > 0 ) {
+			ProgressIndicatorProvider.checkCanceled();
+			bodyDepth++;
+			return;
+		}
+		if ( isChameleonRoot(ctx) ) {
+			return;
+		}
+
+		RuleBodyElementType type = getBodyType(ctx);
+		if ( type != null ) {
+			bodyType = type;
+			bodyMarker = builder.mark();
+			bodyDepth = 1;
+			return;
+		}
+
+		super.enterEveryRule(ctx);
+	}
+
+	@Override
+	public void exitEveryRule(ParserRuleContext ctx) {
+		if ( bodyDepth > 1 ) {
+			bodyDepth--;
+			return;
+		}
+		if ( bodyDepth == 1 ) {
+			bodyMarker.collapse(bodyType);
+			bodyMarker = null;
+			bodyType = null;
+			bodyDepth = 0;
+			return;
+		}
+		if ( isChameleonRoot(ctx) ) {
+			return;
+		}
+
+		super.exitEveryRule(ctx);
+	}
+
+	private boolean isChameleonRoot(ParserRuleContext ctx) {
+		return root instanceof RuleBodyElementType && ctx.depth() <= 2;
+	}
+
+	/** The type of lazy node {@code ctx} can become, if it's a rule body we can reparse on its own */
+	@Nullable
+	private static RuleBodyElementType getBodyType(ParserRuleContext ctx) {
+		RuleBodyElementType type;
+		if ( ctx instanceof ANTLRv4Parser.RuleBlockContext &&
+			 ctx.getParent() instanceof ANTLRv4Parser.ParserRuleSpecContext )
+		{
+			// a ';' in rule options changes the lexer state the body starts in
+			if ( ((ANTLRv4Parser.ParserRuleSpecContext) ctx.getParent()).rulePrequel().stream()
+					.anyMatch(prequel -> prequel.optionsSpec() != null) ) {
+				return null;
+			}
+			type = ANTLRv4TokenTypes.PARSER_RULE_BODY;
+		}
+		else if ( ctx instanceof ANTLRv4Parser.LexerRuleBlockContext &&
+				  ctx.getParent() instanceof ANTLRv4Parser.LexerRuleContext )
+		{
+			type = ANTLRv4TokenTypes.LEXER_RULE_BODY;
+		}
+		else {
+			return null;
+		}
+
+		if ( ctx.getStart() == null || ctx.getStop() == null ||
+			 ctx.getStop().getTokenIndex() < ctx.getStart().getTokenIndex() ) {
+			return null; // empty body
+		}
+		// errors are reported where the whole rule is parsed
+		if ( hasSyntaxErrors(ctx.getParent()) ) {
+			return null;
+		}
+		return type;
+	}
+
+	private static boolean hasSyntaxErrors(ParseTree tree) {
+		if ( tree instanceof ErrorNode ) {
+			return true;
+		}
+		if ( tree instanceof ParserRuleContext && ((ParserRuleContext) tree).exception != null ) {
+			return true;
+		}
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			if ( hasSyntaxErrors(tree.getChild(i)) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
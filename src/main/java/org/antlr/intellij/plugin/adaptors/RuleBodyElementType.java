@@ -0,0 +1,129 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import com.intellij.psi.tree.IReparseableElementType;
+import org.antlr.intellij.plugin.ANTLRv4Language;
+import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/** The body of a parser or lexer rule, between its ':' and ';'. It stands
+ *  for the ruleBlock or lexerRuleBlock node, is parsed lazily with the
+ *  standaloneRuleBlock or standaloneLexerRuleBlock entry point of
+ *  {@link ANTLRv4Parser}, and when an edit stays within it,
+ *  only the body is reparsed instead of the whole grammar.
+ *
+ *  Only bodies without syntax errors become such nodes, see
+ *  {@link ANTLRv4ParseTreeToPSIConverter}, and an edited body is only
+ *  reparsed on its own if it still parses without errors and leaves the
+ *  lexer in the state it started in, so that the result is the same as
+ *  reparsing the whole file.
+ */
+public class RuleBodyElementType extends IReparseableElementType {
+	/** What {@link ANTLRv4Lexer#getCurrentRuleType()} is inside the body:
+	 *  {@link ANTLRv4Lexer#RULE_REF} or {@link ANTLRv4Lexer#TOKEN_REF}
+	 */
+	private final int ruleType;
+
+	public RuleBodyElementType(@NotNull String debugName, int ruleType) {
+		super(debugName, ANTLRv4Language.INSTANCE);
+		this.ruleType = ruleType;
+	}
+
+	/** The rule of {@link ANTLRv4Parser} matching a body of this type followed by EOF */
+	public int getStartRule() {
+		return ruleType == ANTLRv4Lexer.TOKEN_REF ? ANTLRv4Parser.RULE_standaloneLexerRuleBlock : ANTLRv4Parser.RULE_standaloneRuleBlock;
+	}
+
+	@Override
+	public ASTNode createNode(CharSequence text) {
+		return new LazyParseableElement(this, text);
+	}
+
+	@Override
+	protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+		Project project = psi.getProject();
+		ANTLRv4LexerAdaptor lexer = new ANTLRv4LexerAdaptor(new ANTLRv4Lexer(null), ruleType);
+		PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(project, chameleon, lexer, getLanguage(), chameleon.getChars());
+		return new ANTLRv4GrammarParser().parse(this, builder).getFirstChildNode();
+	}
+
+	@Override
+	public boolean isParsable(@Nullable ASTNode parent, @NotNull CharSequence buffer,
+							  @NotNull Language fileLanguage, @NotNull Project project) {
+		return isRuleBody(buffer, ruleType);
+	}
+
+	/** Does {@code text} lex and parse as a whole rule body without errors,
+	 *  starting and ending with a token of the body and leaving the lexer in
+	 *  the state it was in before the body?
+	 */
+	static boolean isRuleBody(CharSequence text, int ruleType) {
+		ANTLRv4Lexer lexer = new ANTLRv4Lexer(CharStreams.fromString(text.toString()));
+		lexer.setCurrentRuleType(ruleType);
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		ANTLRv4Parser parser = new ANTLRv4Parser(tokens);
+
+		ANTLRErrorListener bail = new BaseErrorListener() {
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+									int charPositionInLine, String msg, RecognitionException e) {
+				throw new ParseCancellationException(msg);
+			}
+		};
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(bail);
+		parser.removeErrorListeners();
+		parser.addErrorListener(bail);
+		parser.setErrorHandler(new BailErrorStrategy());
+		// if SLL isn't enough, the whole file is reparsed, which is still correct
+		SharedPredictionCache.getInstance().install(parser);
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+
+		try {
+			if ( ruleType == ANTLRv4Lexer.TOKEN_REF ) {
+				parser.standaloneLexerRuleBlock();
+			}
+			else {
+				parser.standaloneRuleBlock();
+			}
+		}
+		catch (ParseCancellationException e) {
+			return false;
+		}
+		finally {
+			SharedPredictionCache.trim();
+		}
+
+		// whitespace and comments around the body belong to the enclosing rule
+		List<Token> allTokens = tokens.getTokens();
+		if ( allTokens.size() < 2 ) {
+			return false;
+		}
+		Token first = allTokens.get(0);
+		Token last = allTokens.get(allTokens.size() - 2); // before EOF
+		if ( first.getChannel() != Token.DEFAULT_CHANNEL || last.getChannel() != Token.DEFAULT_CHANNEL ) {
+			return false;
+		}
+		for (Token t : allTokens) {
+			if ( t.getType() == Token.INVALID_TYPE ) {
+				return false;
+			}
+		}
+
+		// otherwise the text after the body would be lexed differently
+		return lexer._mode == Lexer.DEFAULT_MODE && lexer._modeStack.isEmpty() && lexer.getCurrentRuleType() == ruleType;
+	}
+}
@@ -0,0 +1,61 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/** The prediction DFA and context cache of {@link ANTLRv4Parser}, shared by
+ *  the parsers of all grammar files and reparses, like the static ones of the
+ *  generated parser, except that it is thrown away and started over once it
+ *  holds more than {@link #MAX_DFA_STATES} states, so that editing many big
+ *  grammars in a long session doesn't grow it forever.
+ */
+public class SharedPredictionCache {
+	static final int MAX_DFA_STATES = 20_000;
+
+	private static volatile SharedPredictionCache instance = new SharedPredictionCache();
+
+	private final DFA[] decisionToDFA;
+	private final PredictionContextCache sharedContextCache = new PredictionContextCache();
+
+	private SharedPredictionCache() {
+		ATN atn = ANTLRv4Parser._ATN;
+		decisionToDFA = new DFA[atn.getNumberOfDecisions()];
+		for (int i = 0; i < decisionToDFA.length; i++) {
+			decisionToDFA[i] = new DFA(atn.getDecisionState(i), i);
+		}
+	}
+
+	public static SharedPredictionCache getInstance() {
+		return instance;
+	}
+
+	/** Makes {@code parser} predict with this cache */
+	public void install(Parser parser) {
+		parser.setInterpreter(new ParserATNSimulator(parser, parser.getATN(), decisionToDFA, sharedContextCache));
+	}
+
+	public int getDFAStateCount() {
+		int n = 0;
+		for (DFA dfa : decisionToDFA) {
+			n += dfa.states.size();
+		}
+		return n;
+	}
+
+	/** Starts over with an empty cache if the current one got too big.
+	 *  Parsers already using the old one keep it until they're done.
+	 */
+	public static void trim() {
+		trim(MAX_DFA_STATES);
+	}
+
+	static void trim(int maxDFAStates) {
+		if ( instance.getDFAStateCount() > maxDFAStates ) {
+			instance = new SharedPredictionCache();
+		}
+	}
+}
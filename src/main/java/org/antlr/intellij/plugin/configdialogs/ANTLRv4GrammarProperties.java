@@ -78,6 +78,18 @@ public class ANTLRv4GrammarProperties implements Cloneable {
     @OptionTag(converter = CaseChangingStrategyConverter.class)
     CaseChangingStrategy caseChangingStrategy = CaseChangingStrategy.LEAVE_AS_IS;
 
+    /** Max wall-clock time of a parse in the Preview window, in seconds; 0 means no limit */
+    @Property
+    int previewTimeBudget = 60;
+
+    /** Max number of nodes in a parse tree in the Preview window; 0 means no limit */
+    @Property
+    int previewMaxParseTreeNodes = 10_000_000;
+
+    /** Max number of tokens parsed in the Preview window; 0 means no limit */
+    @Property
+    int previewMaxTokens;
+
     public ANTLRv4GrammarProperties() {
     }
 
@@ -92,6 +104,9 @@ public class ANTLRv4GrammarProperties implements Cloneable {
         this.generateListener = source.generateListener;
         this.generateVisitor = source.generateVisitor;
         this.caseChangingStrategy = source.caseChangingStrategy;
+        this.previewTimeBudget = source.previewTimeBudget;
+        this.previewMaxParseTreeNodes = source.previewMaxParseTreeNodes;
+        this.previewMaxTokens = source.previewMaxTokens;
     }
 
     public boolean shouldAutoGenerateParser() {
@@ -130,6 +145,18 @@ public class ANTLRv4GrammarProperties implements Cloneable {
         return caseChangingStrategy;
     }
 
+    public int getPreviewTimeBudget() {
+        return previewTimeBudget;
+    }
+
+    public int getPreviewMaxParseTreeNodes() {
+        return previewMaxParseTreeNodes;
+    }
+
+    public int getPreviewMaxTokens() {
+        return previewMaxTokens;
+    }
+
     public String resolveOutputDirName(Project project, VirtualFile contentRoot, String package_) {
         String outputDirName = outputDir.isEmpty() ? RunANTLROnGrammarFile.OUTPUT_DIR_NAME : outputDir;
 
@@ -123,6 +123,9 @@ public class ANTLRv4GrammarPropertiesStore {
 		defaultSettings.generateListener = true;
 		defaultSettings.generateVisitor = true;
 		defaultSettings.caseChangingStrategy = CaseChangingStrategy.LEAVE_AS_IS;
+		defaultSettings.previewTimeBudget = 60;
+		defaultSettings.previewMaxParseTreeNodes = 10_000_000;
+		defaultSettings.previewMaxTokens = 0;
 
 		return defaultSettings;
 	}
@@ -32,6 +32,9 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 	protected JCheckBox autoGenerateParsersCheckBox;
 	protected JTextField languageField;
 	private JComboBox<CaseChangingStrategy> caseTransformation;
+	private JSpinner previewTimeBudgetSpinner;
+	private JSpinner previewMaxParseTreeNodesSpinner;
+	private JSpinner previewMaxTokensSpinner;
 
 	private ConfigANTLRPerGrammar(final Project project) {
 		super(project, false);
@@ -77,6 +80,9 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		packageField.setText(grammarProperties.getPackage());
 		languageField.setText(grammarProperties.getLanguage());
 		caseTransformation.setSelectedItem(grammarProperties.getCaseChangingStrategy());
+		previewTimeBudgetSpinner.setValue(grammarProperties.getPreviewTimeBudget());
+		previewMaxParseTreeNodesSpinner.setValue(grammarProperties.getPreviewMaxParseTreeNodes());
+		previewMaxTokensSpinner.setValue(grammarProperties.getPreviewMaxTokens());
 		generateParseTreeListenerCheckBox.setSelected(grammarProperties.shouldGenerateParseTreeListener());
 		generateParseTreeVisitorCheckBox.setSelected(grammarProperties.shouldGenerateParseTreeVisitor());
 	}
@@ -91,6 +97,9 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		grammarProperties.pkg = getPackageFieldText();
 		grammarProperties.language = getLanguageText();
 		grammarProperties.caseChangingStrategy = getCaseChangingStrategy();
+		grammarProperties.previewTimeBudget = getPreviewTimeBudget();
+		grammarProperties.previewMaxParseTreeNodes = getPreviewMaxParseTreeNodes();
+		grammarProperties.previewMaxTokens = getPreviewMaxTokens();
 		grammarProperties.generateListener = generateParseTreeListenerCheckBox.isSelected();
 		grammarProperties.generateVisitor = generateParseTreeVisitorCheckBox.isSelected();
 	}
@@ -101,7 +110,10 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 				|| !Objects.equals(originalProperties.getEncoding(), getFileEncodingText())
 				|| !Objects.equals(originalProperties.getPackage(), getPackageFieldText())
 				|| !Objects.equals(originalProperties.getLanguage(), getLanguageText())
-				|| !Objects.equals(originalProperties.caseChangingStrategy, getCaseChangingStrategy());
+				|| !Objects.equals(originalProperties.caseChangingStrategy, getCaseChangingStrategy())
+				|| originalProperties.getPreviewTimeBudget() != getPreviewTimeBudget()
+				|| originalProperties.getPreviewMaxParseTreeNodes() != getPreviewMaxParseTreeNodes()
+				|| originalProperties.getPreviewMaxTokens() != getPreviewMaxTokens();
 	}
 
 	String getLanguageText() {
@@ -128,6 +140,18 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		return (CaseChangingStrategy) caseTransformation.getSelectedItem();
 	}
 
+	private int getPreviewTimeBudget() {
+		return (Integer) previewTimeBudgetSpinner.getValue();
+	}
+
+	private int getPreviewMaxParseTreeNodes() {
+		return (Integer) previewMaxParseTreeNodesSpinner.getValue();
+	}
+
+	private int getPreviewMaxTokens() {
+		return (Integer) previewMaxTokensSpinner.getValue();
+	}
+
 	@Nullable
 	@Override
 	protected JComponent createCenterPanel() {
@@ -147,5 +171,8 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 
 	private void createUIComponents() {
 		caseTransformation = new ComboBox<>(CaseChangingStrategy.values());
+		previewTimeBudgetSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 10));
+		previewMaxParseTreeNodesSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 100_000));
+		previewMaxTokensSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 100_000));
 	}
 }
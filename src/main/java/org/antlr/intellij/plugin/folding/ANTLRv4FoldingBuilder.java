@@ -39,7 +39,6 @@ public class ANTLRv4FoldingBuilder extends CustomFoldingBuilder {
     private static final TokenIElementType BLOCK_COMMENT_TOKEN = ANTLRv4TokenTypes.getTokenElementType(ANTLRv4Lexer.BLOCK_COMMENT);
     private static final TokenIElementType LINE_COMMENT_TOKEN = ANTLRv4TokenTypes.getTokenElementType(ANTLRv4Lexer.LINE_COMMENT);
 
-    private static final RuleIElementType OPTIONSSPEC = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_optionsSpec);
     private static final TokenIElementType OPTIONS = ANTLRv4TokenTypes.getTokenElementType(ANTLRv4Lexer.OPTIONS);
 
     private static final RuleIElementType TOKENSSPEC = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_tokensSpec);
@@ -77,7 +76,7 @@ public class ANTLRv4FoldingBuilder extends CustomFoldingBuilder {
     }
 
     private static void addTokensFoldingDescriptor(List<FoldingDescriptor> descriptors, PsiElement root) {
-        PsiElement tokensSpec = MyPsiUtils.findFirstChildOfType(root, TOKENSSPEC);
+        PsiElement tokensSpec = GrammarHeader.getInstance((ANTLRv4FileRoot) root).getTokensSpec();
         if (tokensSpec != null) {
             PsiElement tokens = tokensSpec.getFirstChild();
             if ( tokens.getNode().getElementType() == TOKENS ) {
@@ -91,7 +90,7 @@ public class ANTLRv4FoldingBuilder extends CustomFoldingBuilder {
     }
 
     private static void addOptionsFoldingDescriptor(List<FoldingDescriptor> descriptors, PsiElement root) {
-        PsiElement optionsSpec = MyPsiUtils.findFirstChildOfType(root, OPTIONSSPEC);
+        PsiElement optionsSpec = GrammarHeader.getInstance((ANTLRv4FileRoot) root).getOptionsSpec();
         if (optionsSpec != null) {
             PsiElement options = optionsSpec.getFirstChild();
             if ( options.getNode().getElementType() == OPTIONS ) {
@@ -0,0 +1,33 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+/** Keeps only the first {@code maxErrors} syntax errors and counts the others,
+ *  so that parsing a huge input with the wrong grammar doesn't fill the heap
+ *  with errors nobody will read.
+ */
+public class CappedSyntaxErrorListener extends SyntaxErrorListener {
+	private final int maxErrors;
+	private int errorCount;
+
+	public CappedSyntaxErrorListener(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
+	@Override
+	public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+							int line, int charPositionInLine,
+							String msg, RecognitionException e) {
+		errorCount++;
+		if ( getSyntaxErrors().size()<maxErrors ) {
+			super.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
+		}
+	}
+
+	/** How many errors were reported, including those that weren't kept */
+	public int getErrorCount() {
+		return errorCount;
+	}
+}
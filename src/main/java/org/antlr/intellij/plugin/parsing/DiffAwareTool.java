@@ -0,0 +1,103 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.progress.ProgressManager;
+import org.antlr.v4.Tool;
+import org.antlr.v4.tool.Grammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A tool that renders generated files in memory and only writes those whose
+ *  content changed. Rewriting an identical parser still changes its timestamp,
+ *  which makes IntelliJ refresh it and recompile everything depending on it.
+ *
+ *  Which files were written or left alone is recorded until the next
+ *  {@link #startGeneration()}, so that it can be reported in the console.
+ *
+ *  Processing a grammar can be cancelled through the progress indicator it
+ *  runs under, see {@link #log(String, String)}.
+ */
+public class DiffAwareTool extends Tool {
+	private final List<File> writtenFiles = new ArrayList<>();
+	private final List<File> unchangedFiles = new ArrayList<>();
+
+	public DiffAwareTool(String[] args) {
+		super(args);
+	}
+
+	public synchronized void startGeneration() {
+		writtenFiles.clear();
+		unchangedFiles.clear();
+	}
+
+	public synchronized List<File> getWrittenFiles() {
+		return new ArrayList<>(writtenFiles);
+	}
+
+	public synchronized List<File> getUnchangedFiles() {
+		return new ArrayList<>(unchangedFiles);
+	}
+
+	/** The tool logs as it transforms rules and analyzes decisions, whether
+	 *  logging is enabled or not, which makes it the place to give up on a
+	 *  grammar that is being edited.
+	 */
+	@Override
+	public void log(String component, String msg) {
+		ProgressManager.checkCanceled();
+		super.log(component, msg);
+	}
+
+	/** Checks for cancellation first, so that a superseded generation stops
+	 *  between files rather than after the last one.
+	 */
+	@Override
+	public Writer getOutputFileWriter(Grammar g, String fileName) throws IOException {
+		ProgressManager.checkCanceled();
+		if ( outputDirectory==null ) {
+			return new StringWriter();
+		}
+		// same location as Tool.getOutputFileWriter()
+		File outputDir = getOutputDirectory(g.fileName);
+		File outputFile = new File(outputDir, fileName);
+		return new StringWriter() {
+			private boolean closed = false;
+
+			@Override
+			public void close() throws IOException {
+				if ( !closed ) {
+					closed = true;
+					writeIfChanged(outputFile, toString());
+				}
+			}
+		};
+	}
+
+	private void writeIfChanged(File outputFile, String content) throws IOException {
+		Charset charset = grammarEncoding!=null ? Charset.forName(grammarEncoding) : Charset.defaultCharset();
+		byte[] bytes = content.getBytes(charset);
+		if ( outputFile.isFile() && outputFile.length()==bytes.length &&
+			 Arrays.equals(Files.readAllBytes(outputFile.toPath()), bytes) )
+		{
+			synchronized (this) {
+				unchangedFiles.add(outputFile);
+			}
+			return;
+		}
+		File outputDir = outputFile.getParentFile();
+		if ( !outputDir.exists() ) {
+			outputDir.mkdirs();
+		}
+		Files.write(outputFile.toPath(), bytes);
+		synchronized (this) {
+			writtenFiles.add(outputFile);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.v4.Tool;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.parse.TokenVocabParser;
+import org.antlr.v4.tool.Grammar;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/** What was generated last for each grammar, and from what: a hash of the
+ *  text of the grammar, of the grammars it imports or gets its vocabulary
+ *  from, and of the tool arguments. Generation on save is skipped when that
+ *  hash didn't change and the generated files are still there, even if the
+ *  grammar was touched, e.g. by a VCS checkout.
+ *
+ *  Stored in <code>.idea/workspace.xml</code> since it describes generated
+ *  files on this machine only.
+ */
+@State(name = "ANTLRGenerationCache", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
+public class GenerationCache implements PersistentStateComponent<GenerationCache.CacheState> {
+	public static final Logger LOG = Logger.getInstance("GenerationCache");
+
+	public static class Generation {
+		public String key = "";
+		public List<String> outputFiles = new ArrayList<>();
+	}
+
+	public static class CacheState {
+		/** Grammar file name -> its last generation */
+		public Map<String, Generation> generations = new HashMap<>();
+	}
+
+	private CacheState state = new CacheState();
+
+	public static GenerationCache getInstance(Project project) {
+		return ServiceManager.getService(project, GenerationCache.class);
+	}
+
+	@NotNull
+	@Override
+	public synchronized CacheState getState() {
+		return state;
+	}
+
+	@Override
+	public synchronized void loadState(@NotNull CacheState state) {
+		this.state = state;
+	}
+
+	/** Would generating {@code grammarFileName} with {@code key} produce the files already there? */
+	public synchronized boolean isUpToDate(String grammarFileName, String key) {
+		Generation generation = state.generations.get(grammarFileName);
+		if ( generation==null || !generation.key.equals(key) || generation.outputFiles.isEmpty() ) {
+			return false;
+		}
+		for (String outputFile : generation.outputFiles) {
+			if ( !new File(outputFile).isFile() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public synchronized void generated(String grammarFileName, String key, Collection<File> outputFiles) {
+		Generation generation = new Generation();
+		generation.key = key;
+		for (File outputFile : outputFiles) {
+			generation.outputFiles.add(outputFile.getPath());
+		}
+		state.generations.put(grammarFileName, generation);
+	}
+
+	public synchronized void invalidate(String grammarFileName) {
+		state.generations.remove(grammarFileName);
+	}
+
+	/** Hash everything the output of the tool depends on when run with
+	 *  {@code args} on the grammars of {@code analyses}: the tool version, the
+	 *  arguments and the text of the grammars, of the grammars they import and
+	 *  of the lexer grammars they get their vocabulary from, or of the tokens
+	 *  files when these lexer grammars aren't there. Needs a read action.
+	 */
+	public static String computeKey(List<String> args, List<GrammarAnalysis> analyses) {
+		Set<String> inputFileNames = new TreeSet<>();
+		Set<String> tokensFileNames = new TreeSet<>();
+		for (GrammarAnalysis analysis : analyses) {
+			addInputFileNames(analysis.getGrammar(), inputFileNames);
+			Grammar g = analysis.getGrammar();
+			if ( g!=null && g.getType()==ANTLRParser.PARSER ) {
+				inputFileNames.add(ParsingUtils.getLexerGrammarFileName(g));
+				addInputFileNames(analysis.getLexerGrammar(), inputFileNames);
+				if ( analysis.getLexerGrammar()==null && g.getOptionString("tokenVocab")!=null ) {
+					// the tool imported the tokens file, as GrammarAnalysisService does
+					tokensFileNames.add(new TokenVocabParser(g).getImportedVocabFile().getPath());
+				}
+			}
+		}
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-256
+		}
+		update(digest, Tool.VERSION);
+		for (String arg : args) {
+			update(digest, arg);
+		}
+		for (String inputFileName : inputFileNames) {
+			update(digest, inputFileName);
+			update(digest, getText(inputFileName));
+		}
+		for (String tokensFileName : tokensFileNames) {
+			update(digest, tokensFileName);
+			digest.update(getBytes(tokensFileName));
+			digest.update((byte) 0);
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	private static void addInputFileNames(Grammar g, Set<String> inputFileNames) {
+		if ( g==null || g.fileName==null ) {
+			return;
+		}
+		inputFileNames.add(g.fileName);
+		List<Grammar> imports = g.getAllImportedGrammars();
+		if ( imports!=null ) {
+			for (Grammar imported : imports) {
+				if ( imported.fileName!=null ) {
+					inputFileNames.add(imported.fileName);
+				}
+			}
+		}
+	}
+
+	/** The text of the grammar as the analysis saw it, not necessarily saved */
+	private static CharSequence getText(String fileName) {
+		VirtualFile file = LocalFileSystem.getInstance().findFileByIoFile(new File(fileName));
+		if ( file==null || !file.exists() ) {
+			return "<missing>";
+		}
+		Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+		return document!=null ? document.getImmutableCharSequence() : LoadTextUtil.loadText(file);
+	}
+
+	/** The content of a file written by the tool, from disk as the VFS may
+	 *  not have seen it yet
+	 */
+	private static byte[] getBytes(String fileName) {
+		try {
+			return Files.readAllBytes(Paths.get(fileName));
+		}
+		catch (IOException e) {
+			return "<missing>".getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void update(MessageDigest digest, CharSequence s) {
+		digest.update(s.toString().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0); // so that "ab","c" and "a","bc" differ
+	}
+}
@@ -0,0 +1,89 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.intellij.plugin.validation.GrammarIssue;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/** The result of running the ANTLR tool on one version of a grammar file:
+ *  the processed grammar, what the tool reported about it, and the lexer it
+ *  was processed with. Shared by the annotator, the preview and the code
+ *  generation, see {@link GrammarAnalysisService}; treat it as read-only.
+ */
+public class GrammarAnalysis {
+	private final long modificationStamp;
+	private final List<GrammarIssue> issues;
+	private final List<String> errorMessages;
+	private final List<String> warningMessages;
+	private final boolean hasErrors;
+	private final Grammar grammar;
+	private final GrammarFingerprint fingerprint;
+	private final LexerGrammar lexerGrammar;
+
+	GrammarAnalysis(long modificationStamp, List<GrammarIssue> issues,
+					List<String> errorMessages, List<String> warningMessages, boolean hasErrors,
+					@Nullable Grammar grammar, @Nullable GrammarFingerprint fingerprint,
+					@Nullable LexerGrammar lexerGrammar) {
+		this.modificationStamp = modificationStamp;
+		this.issues = Collections.unmodifiableList(issues);
+		this.errorMessages = Collections.unmodifiableList(errorMessages);
+		this.warningMessages = Collections.unmodifiableList(warningMessages);
+		this.hasErrors = hasErrors;
+		this.grammar = grammar;
+		this.fingerprint = fingerprint;
+		this.lexerGrammar = lexerGrammar;
+	}
+
+	/** Modification stamp of the document (or file) that was analyzed */
+	public long getModificationStamp() {
+		return modificationStamp;
+	}
+
+	/** Errors and warnings reported by the tool, including those in imported
+	 *  grammars. Don't modify them, the annotator copies them before adding
+	 *  its own details.
+	 */
+	public List<GrammarIssue> getIssues() {
+		return issues;
+	}
+
+	/** Rendered error messages, for the console */
+	public List<String> getErrorMessages() {
+		return errorMessages;
+	}
+
+	/** Rendered warning messages, for the console */
+	public List<String> getWarningMessages() {
+		return warningMessages;
+	}
+
+	/** Were there errors that make the grammar unusable? A missing tokens
+	 *  file isn't one of them: implicit token definitions are fine for the preview.
+	 */
+	public boolean hasErrors() {
+		return hasErrors;
+	}
+
+	/** The processed grammar, or null if the file couldn't be parsed at all */
+	@Nullable
+	public Grammar getGrammar() {
+		return grammar;
+	}
+
+	/** The fingerprint of the grammar before processing, null with the grammar */
+	@Nullable
+	public GrammarFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	/** The lexer of a parser grammar (if one was found without errors), the
+	 *  implicit lexer of a combined grammar or the grammar itself if it's a lexer.
+	 */
+	@Nullable
+	public LexerGrammar getLexerGrammar() {
+		return lexerGrammar;
+	}
+}
@@ -0,0 +1,394 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.validation.GrammarIssue;
+import org.antlr.intellij.plugin.validation.GrammarIssuesCollector;
+import org.antlr.v4.Tool;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.parse.TokenVocabParser;
+import org.antlr.v4.tool.ANTLRMessage;
+import org.antlr.v4.tool.ErrorManager;
+import org.antlr.v4.tool.ErrorType;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** Runs the ANTLR tool once per version of a grammar file, for everyone who
+ *  needs it: the annotator wants the issues, the preview the processed grammars
+ *  and code generation both. Without it, the same text was analyzed up to
+ *  three times each time a grammar was edited.
+ *
+ *  The tool is set up with the same arguments as code generation (see
+ *  {@link RunANTLROnGrammarFile#getANTLRArgsAsList}), so the processed grammar
+ *  can be handed to the code generator as is; its tool is a {@link DiffAwareTool}
+ *  so that unchanged generated files aren't rewritten. The vocabulary of a parser
+ *  grammar comes from the analysis of its lexer grammar, or from the tokens
+ *  file if there is no lexer grammar.
+ *
+ *  An analysis is valid as long as the modification stamps of the grammar,
+ *  of its lexer, imports or tokens file, and the arguments don't change.
+ *  Stamps come from the document if it is loaded, since the annotator and the
+ *  preview work on unsaved text. Must be called from a read action; in a
+ *  non-blocking one, typing cancels the analysis even while the tool is
+ *  processing the grammar, see {@link DiffAwareTool#log}.
+ */
+public class GrammarAnalysisService {
+	public static final Logger LOG = Logger.getInstance("GrammarAnalysisService");
+
+	private static final String LANGUAGE_ARG_PREFIX = "-Dlanguage=";
+
+	/** A processed grammar holds its AST, ATN and tool; keep only that many, and softly */
+	static final int MAX_ENTRIES = 32;
+
+	private static class Entry {
+		final SoftReference<GrammarAnalysis> analysis;
+		final List<String> args;
+		/** Modification stamps of the grammar file and of the files it uses, -1 if missing */
+		final Map<String, Long> stamps;
+
+		Entry(GrammarAnalysis analysis, List<String> args, Map<String, Long> stamps) {
+			this.analysis = new SoftReference<>(analysis);
+			this.args = args;
+			this.stamps = stamps;
+		}
+	}
+
+	/** Analyzing a parser grammar analyzes its lexer; don't loop if the "lexer" is a parser using the first one */
+	private static final ThreadLocal<Set<String>> inProgress = ThreadLocal.withInitial(HashSet::new);
+
+	private final Project project;
+	/** The analysis each grammar file is going through, by path */
+	private final Map<String, CompletableFuture<GrammarAnalysis>> runningAnalyses = new ConcurrentHashMap<>();
+	/** In access order, least recently used first */
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size()>MAX_ENTRIES;
+		}
+	};
+
+	public GrammarAnalysisService(Project project) {
+		this.project = project;
+	}
+
+	public static GrammarAnalysisService getInstance(Project project) {
+		return ServiceManager.getService(project, GrammarAnalysisService.class);
+	}
+
+	/** The analysis of the current text of {@code grammarFile}, run now if
+	 *  the last one is out of date. If another thread is already analyzing
+	 *  it, wait for that analysis instead of running the tool twice.
+	 */
+	@NotNull
+	public GrammarAnalysis analyze(VirtualFile grammarFile) {
+		String path = grammarFile.getPath();
+		List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(project, grammarFile);
+		Set<String> analyzing = inProgress.get();
+		if ( analyzing.contains(path) ) {
+			throw new IllegalStateException("circular token vocabulary through "+path);
+		}
+		while ( true ) {
+			GrammarAnalysis cached = getUpToDate(path, args);
+			if ( cached!=null ) {
+				return cached;
+			}
+
+			CompletableFuture<GrammarAnalysis> analysis = new CompletableFuture<>();
+			CompletableFuture<GrammarAnalysis> running = runningAnalyses.putIfAbsent(path, analysis);
+			// while analyzing a parser, don't wait for its lexer: that thread may be waiting for us
+			if ( running!=null && analyzing.isEmpty() ) {
+				await(running);
+				continue; // it may have been cancelled, or analyzed older text
+			}
+
+			analyzing.add(path);
+			try {
+				Map<String, Long> stamps = new HashMap<>();
+				GrammarAnalysis result = analyze(grammarFile, new ArrayList<>(args), stamps);
+				synchronized (entries) {
+					entries.put(path, new Entry(result, args, stamps));
+				}
+				analysis.complete(result);
+				return result;
+			}
+			catch (RuntimeException | Error e) {
+				analysis.completeExceptionally(e);
+				throw e;
+			}
+			finally {
+				analyzing.remove(path);
+				runningAnalyses.remove(path, analysis);
+			}
+		}
+	}
+
+	private GrammarAnalysis getUpToDate(String path, List<String> args) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(path);
+		}
+		GrammarAnalysis cached = entry!=null ? entry.analysis.get() : null;
+		if ( cached!=null && entry.args.equals(args) && isUpToDate(entry.stamps) ) {
+			return cached;
+		}
+		return null;
+	}
+
+	/** Wait for another thread's analysis, however it ends, unless we're cancelled first */
+	private static void await(Future<GrammarAnalysis> analysis) {
+		while ( true ) {
+			ProgressManager.checkCanceled();
+			try {
+				analysis.get(10, TimeUnit.MILLISECONDS);
+				return;
+			}
+			catch (TimeoutException e) {
+				// check for cancellation again
+			}
+			catch (ExecutionException | CancellationException e) {
+				return;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ProcessCanceledException();
+			}
+		}
+	}
+
+	/** Forget the analyses of {@code grammarFileName} and of the grammars using it */
+	public void invalidate(String grammarFileName) {
+		synchronized (entries) {
+			entries.values().removeIf(e -> e.stamps.containsKey(grammarFileName));
+		}
+	}
+
+	private GrammarAnalysis analyze(VirtualFile grammarFile, List<String> args, Map<String, Long> stamps) {
+		LOG.info("analyze "+grammarFile.getPath());
+		long modificationStamp = getModificationStamp(grammarFile);
+		stamps.put(grammarFile.getPath(), modificationStamp);
+
+		List<GrammarIssue> issues = new ArrayList<>();
+		String languageArg = findLanguageArg(args);
+		if ( languageArg!=null ) {
+			String language = languageArg.substring(LANGUAGE_ARG_PREFIX.length());
+			if ( !GrammarIssuesCollector.targetExists(language) ) {
+				GrammarIssue issue = new GrammarIssue(null);
+				issue.setAnnotation("Unknown target language '" + language + "', analysis will be done using the default target language 'Java'");
+				issues.add(issue);
+				args.remove(languageArg);
+			}
+		}
+
+		Tool antlr = new DiffAwareTool(args.toArray(new String[0]));
+		if ( !args.contains("-lib") ) {
+			antlr.libDirectory = grammarFile.getParent().getPath();
+		}
+		AnalysisErrorManager errMgr = new AnalysisErrorManager(antlr);
+		antlr.errMgr = errMgr;
+		AnalysisToolListener listener = new AnalysisToolListener(antlr, issues);
+		antlr.removeListeners();
+		antlr.addListener(listener);
+
+		GrammarRootAST ast = ParsingUtils.parseGrammar(antlr, grammarFile);
+		if ( ast==null || ast.hasErrors ) {
+			return listener.toAnalysis(modificationStamp, null, null, null);
+		}
+		Grammar g = antlr.createGrammar(ast);
+		g.fileName = grammarFile.getPath();
+		// before processing, which rewrites left-recursive rules
+		GrammarFingerprint fingerprint = GrammarFingerprint.of(g.ast);
+
+		LexerGrammar lg = null;
+		if ( g.getType()==ANTLRParser.PARSER ) {
+			lg = analyzeLexerGrammarFor(g, grammarFile, stamps);
+			if ( lg!=null ) {
+				g.importVocab(lg);
+				// the tool still looks for the tokens file, which may not be generated yet
+				errMgr.vocabularyFromLexer = true;
+			}
+			else if ( g.getOptionString("tokenVocab")!=null ) { // the tool imports the tokens file
+				File tokensFile = new TokenVocabParser(g).getImportedVocabFile();
+				stamps.put(normalize(tokensFile.getPath()), getModificationStamp(tokensFile));
+			}
+		}
+
+		ProgressManager.checkCanceled();
+		try {
+			antlr.process(g, false);
+		}
+		catch (ProcessCanceledException pce) {
+			throw pce;
+		}
+		catch (Exception e) {
+			LOG.error("antlr can't process "+grammarFile.getName(), e);
+		}
+
+		switch ( g.getType() ) {
+			case ANTLRParser.LEXER :
+				lg = (LexerGrammar) g;
+				break;
+			case ANTLRParser.COMBINED :
+				lg = g.getImplicitLexer();
+				break;
+		}
+
+		List<Grammar> imports = g.getAllImportedGrammars();
+		if ( imports!=null ) {
+			for (Grammar imported : imports) {
+				if ( imported.fileName!=null ) {
+					stamps.put(normalize(imported.fileName), getModificationStamp(new File(imported.fileName)));
+				}
+			}
+		}
+		if ( listener.missingImport ) {
+			// we can't tell when it shows up, so analyze again next time
+			stamps.put(grammarFile.getPath(), -1L);
+		}
+		return listener.toAnalysis(modificationStamp, g, fingerprint, lg);
+	}
+
+	/** The lexer grammar a parser grammar gets its vocabulary from, as
+	 *  {@link ParsingUtils#getLexerGrammarFileName} finds it, if it has no errors.
+	 */
+	private LexerGrammar analyzeLexerGrammarFor(Grammar g, VirtualFile grammarFile, Map<String, Long> stamps) {
+		String lexerGrammarFileName = ParsingUtils.getLexerGrammarFileName(g);
+		VirtualFile lexerGrammarFile = LocalFileSystem.getInstance().findFileByIoFile(new File(lexerGrammarFileName));
+		if ( lexerGrammarFile==null || !lexerGrammarFile.exists() ) {
+			stamps.put(normalize(lexerGrammarFileName), -1L);
+			return null;
+		}
+		if ( lexerGrammarFile.equals(grammarFile) ) {
+			return null;
+		}
+		GrammarAnalysis lexerAnalysis;
+		try {
+			lexerAnalysis = analyze(lexerGrammarFile);
+		}
+		catch (IllegalStateException ise) { // grammars using each other as token vocabulary
+			LOG.warn(ise.getMessage());
+			return null;
+		}
+		stamps.put(lexerGrammarFile.getPath(), lexerAnalysis.getModificationStamp());
+		Grammar lexer = lexerAnalysis.getGrammar();
+		if ( lexer==null || lexer.getType()!=ANTLRParser.LEXER || lexerAnalysis.hasErrors() ) {
+			return null;
+		}
+		return (LexerGrammar) lexer;
+	}
+
+	private static boolean isUpToDate(Map<String, Long> stamps) {
+		for (Map.Entry<String, Long> stamp : stamps.entrySet()) {
+			if ( getModificationStamp(new File(stamp.getKey()))!=stamp.getValue() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String findLanguageArg(List<String> args) {
+		for ( String arg : args ) {
+			if ( arg.startsWith(LANGUAGE_ARG_PREFIX) ) {
+				return arg;
+			}
+		}
+		return null;
+	}
+
+	private static long getModificationStamp(File file) {
+		VirtualFile vfile = LocalFileSystem.getInstance().findFileByIoFile(file);
+		return vfile!=null && vfile.exists() ? getModificationStamp(vfile) : -1;
+	}
+
+	public static long getModificationStamp(VirtualFile file) {
+		Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+		return document!=null ? document.getModificationStamp() : file.getModificationStamp();
+	}
+
+	private static String normalize(String path) {
+		return path.replace('\\', '/');
+	}
+
+	/** Reports a missing tokens file without counting it as an error, so that
+	 *  the tool still builds the ATN with implicit token definitions, or not at
+	 *  all if the vocabulary was imported from the lexer grammar.
+	 */
+	private static class AnalysisErrorManager extends ErrorManager {
+		boolean vocabularyFromLexer = false;
+
+		AnalysisErrorManager(Tool tool) {
+			super(tool);
+			setFormat("antlr");
+		}
+
+		@Override
+		public void emit(ErrorType etype, ANTLRMessage msg) {
+			if ( etype==ErrorType.CANNOT_FIND_TOKENS_FILE_REFD_IN_GRAMMAR ||
+				 etype==ErrorType.CANNOT_FIND_TOKENS_FILE_GIVEN_ON_CMDLINE )
+			{
+				if ( !vocabularyFromLexer ) {
+					tool.error(msg);
+				}
+				return;
+			}
+			super.emit(etype, msg);
+		}
+	}
+
+	/** Collects issues for the annotator and rendered messages for the console */
+	private static class AnalysisToolListener extends LoadGrammarsToolListener {
+		final List<GrammarIssue> issues;
+		boolean hasErrors = false;
+		boolean missingImport = false;
+
+		AnalysisToolListener(Tool tool, List<GrammarIssue> issues) {
+			super(tool);
+			this.issues = issues;
+		}
+
+		@Override
+		public void error(ANTLRMessage msg) {
+			super.error(msg);
+			issues.add(new GrammarIssue(msg));
+			ErrorType type = msg.getErrorType();
+			if ( type==ErrorType.CANNOT_FIND_IMPORTED_GRAMMAR ) {
+				missingImport = true;
+			}
+			if ( type!=ErrorType.CANNOT_FIND_TOKENS_FILE_REFD_IN_GRAMMAR &&
+				 type!=ErrorType.CANNOT_FIND_TOKENS_FILE_GIVEN_ON_CMDLINE )
+			{
+				hasErrors = true;
+			}
+		}
+
+		@Override
+		public void warning(ANTLRMessage msg) {
+			super.warning(msg);
+			issues.add(new GrammarIssue(msg));
+		}
+
+		GrammarAnalysis toAnalysis(long modificationStamp, Grammar g, GrammarFingerprint fingerprint, LexerGrammar lg) {
+			return new GrammarAnalysis(modificationStamp, issues, grammarErrorMessages, grammarWarningMessages,
+									   hasErrors || g==null, g, fingerprint, lg);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.antlr.intellij.plugin.parsing;
+
+import java.util.*;
+
+/** Which grammar files depend on which, through tokenVocab (or the implicit
+ *  XLexer.g4 of an XParser.g4) and import statements. Edges are recorded when
+ *  a grammar is loaded, so that when a grammar changes we know exactly which
+ *  loaded grammars must be reloaded, and in which order.
+ *
+ *  Paths are compared with '/' separators, like IntelliJ's VirtualFile paths.
+ */
+public class GrammarDependencyGraph {
+	/** grammar -> grammars it uses */
+	private final Map<String, Set<String>> dependencies = new HashMap<>();
+	/** grammar -> grammars that use it */
+	private final Map<String, Set<String>> dependents = new HashMap<>();
+
+	/** Replace what {@code grammarFileName} depends on */
+	public synchronized void setDependencies(String grammarFileName, Collection<String> dependencyFileNames) {
+		String from = normalize(grammarFileName);
+		removeDependencies(from);
+		if ( dependencyFileNames.isEmpty() ) {
+			return;
+		}
+		Set<String> to = new LinkedHashSet<>();
+		for (String dependency : dependencyFileNames) {
+			String d = normalize(dependency);
+			if ( !d.equals(from) ) {
+				to.add(d);
+				dependents.computeIfAbsent(d, k -> new LinkedHashSet<>()).add(from);
+			}
+		}
+		dependencies.put(from, to);
+	}
+
+	/** Forget the dependencies of a grammar that is no longer loaded. Grammars
+	 *  depending on it still do.
+	 */
+	public synchronized void remove(String grammarFileName) {
+		removeDependencies(normalize(grammarFileName));
+	}
+
+	public synchronized Set<String> getDependencies(String grammarFileName) {
+		Set<String> d = dependencies.get(normalize(grammarFileName));
+		return d!=null ? new LinkedHashSet<>(d) : Collections.emptySet();
+	}
+
+	public synchronized Set<String> getDirectDependents(String grammarFileName) {
+		Set<String> d = dependents.get(normalize(grammarFileName));
+		return d!=null ? new LinkedHashSet<>(d) : Collections.emptySet();
+	}
+
+	/** All the grammars that depend, directly or not, on {@code grammarFileName},
+	 *  ordered so that each grammar comes after the ones it depends on.
+	 */
+	public synchronized List<String> getTransitiveDependents(String grammarFileName) {
+		String root = normalize(grammarFileName);
+		// depth-first post-order on the dependents edges gives a reverse topological order
+		List<String> postOrder = new ArrayList<>();
+		Set<String> visited = new HashSet<>();
+		visited.add(root);
+		Deque<Iterator<String>> stack = new ArrayDeque<>();
+		Deque<String> path = new ArrayDeque<>();
+		stack.push(dependentsOf(root).iterator());
+		while ( !stack.isEmpty() ) {
+			Iterator<String> it = stack.peek();
+			if ( it.hasNext() ) {
+				String next = it.next();
+				if ( visited.add(next) ) { // also stops on import cycles
+					path.push(next);
+					stack.push(dependentsOf(next).iterator());
+				}
+			}
+			else {
+				stack.pop();
+				if ( !path.isEmpty() ) { // done with all the dependents of path.peek()
+					postOrder.add(path.pop());
+				}
+			}
+		}
+		Collections.reverse(postOrder);
+		return postOrder;
+	}
+
+	/** {@code grammarFileNames} in groups, each grammar coming in a later group
+	 *  than the grammars of the set it depends on. Grammars of the same group
+	 *  don't depend on each other, so they can be processed in parallel.
+	 *  Grammars in a cycle end up together in the last group.
+	 */
+	public synchronized List<List<String>> getLayers(Collection<String> grammarFileNames) {
+		Set<String> remaining = new LinkedHashSet<>();
+		for (String grammarFileName : grammarFileNames) {
+			remaining.add(normalize(grammarFileName));
+		}
+		List<List<String>> layers = new ArrayList<>();
+		while ( !remaining.isEmpty() ) {
+			List<String> layer = new ArrayList<>();
+			for (String grammar : remaining) {
+				boolean ready = true;
+				for (String dependency : dependencies.getOrDefault(grammar, Collections.emptySet())) {
+					if ( remaining.contains(dependency) ) {
+						ready = false;
+						break;
+					}
+				}
+				if ( ready ) {
+					layer.add(grammar);
+				}
+			}
+			if ( layer.isEmpty() ) { // only cycles left
+				layer.addAll(remaining);
+			}
+			remaining.removeAll(layer);
+			layers.add(layer);
+		}
+		return layers;
+	}
+
+	private Set<String> dependentsOf(String grammarFileName) {
+		return dependents.getOrDefault(grammarFileName, Collections.emptySet());
+	}
+
+	private void removeDependencies(String from) {
+		Set<String> old = dependencies.remove(from);
+		if ( old==null ) {
+			return;
+		}
+		for (String d : old) {
+			Set<String> users = dependents.get(d);
+			if ( users!=null ) {
+				users.remove(from);
+				if ( users.isEmpty() ) {
+					dependents.remove(d);
+				}
+			}
+		}
+	}
+
+	private static String normalize(String path) {
+		return path.replace('\\', '/');
+	}
+}
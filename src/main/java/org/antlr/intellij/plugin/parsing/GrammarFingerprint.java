@@ -0,0 +1,90 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.intellij.plugin.Utils;
+import org.antlr.runtime.tree.Tree;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.tool.ast.GrammarAST;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.antlr.v4.tool.ast.RuleAST;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** What the ANTLR tool sees of a grammar, per rule: a hash of the AST of
+ *  each rule and one of everything else (name, options, imports, tokens,
+ *  channels, named actions, rule order and modes). Comments and formatting
+ *  are not in the AST, so editing them doesn't change the fingerprint.
+ *
+ *  Must be computed before the grammar is processed, since processing
+ *  rewrites the AST of left-recursive rules.
+ */
+public class GrammarFingerprint {
+	private final long header;
+	/** Rule name -> hash of its AST, in grammar order */
+	private final Map<String, Long> rules;
+
+	private GrammarFingerprint(long header, Map<String, Long> rules) {
+		this.header = header;
+		this.rules = rules;
+	}
+
+	public static GrammarFingerprint of(GrammarRootAST ast) {
+		StringBuilder header = new StringBuilder();
+		header.append(ast.grammarType).append(' ');
+		Map<String, Long> rules = new LinkedHashMap<>();
+		for (int i = 0; i<ast.getChildCount(); i++) {
+			GrammarAST child = (GrammarAST) ast.getChild(i);
+			switch ( child.getType() ) {
+				case ANTLRParser.RULES :
+					addRules(child, header, rules);
+					break;
+				case ANTLRParser.MODE :
+					header.append("(mode ").append(child.getChild(0).getText());
+					addRules(child, header, rules);
+					header.append(')');
+					break;
+				default :
+					header.append(child.toStringTree()).append(' ');
+			}
+		}
+		return new GrammarFingerprint(Utils.fnv1aHash(header), rules);
+	}
+
+	private static void addRules(GrammarAST parent, StringBuilder header, Map<String, Long> rules) {
+		for (int i = 0; i<parent.getChildCount(); i++) {
+			Tree child = parent.getChild(i);
+			if ( child instanceof RuleAST ) {
+				RuleAST rule = (RuleAST) child;
+				header.append(rule.getRuleName()).append(' ');
+				rules.put(rule.getRuleName(), Utils.fnv1aHash(rule.toStringTree()));
+			}
+		}
+	}
+
+	/** Rules added, removed or modified since {@code previous} */
+	public Set<String> getChangedRules(GrammarFingerprint previous) {
+		Set<String> changed = new LinkedHashSet<>();
+		for (Map.Entry<String, Long> rule : rules.entrySet()) {
+			if ( !rule.getValue().equals(previous.rules.get(rule.getKey())) ) {
+				changed.add(rule.getKey());
+			}
+		}
+		for (String name : previous.rules.keySet()) {
+			if ( !rules.containsKey(name) ) {
+				changed.add(name);
+			}
+		}
+		return changed;
+	}
+
+	public boolean sameHeader(GrammarFingerprint previous) {
+		return header==previous.header;
+	}
+
+	/** Would the tool produce the same grammar from both? */
+	public boolean sameAs(GrammarFingerprint previous) {
+		return sameHeader(previous) && getChangedRules(previous).isEmpty();
+	}
+}
@@ -0,0 +1,386 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.progress.ProgressManager;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.IntegerList;
+import org.antlr.v4.runtime.misc.IntegerStack;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.tool.LexerGrammar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Lexes the input of a preview window, reusing as many tokens as possible
+ *  from the previous run. Each {@link org.antlr.intellij.plugin.preview.PreviewState}
+ *  owns one of these so that typing in a big input file doesn't re-lex everything.
+ *
+ *  For every token, we remember where the lexer started looking for it, the mode
+ *  and mode stack at that point, and the furthest char the lexer looked at while
+ *  matching it. Upon an edit, lexing resumes at the last token that didn't look
+ *  at the damaged region, with its mode stack restored. Once the lexer reaches
+ *  the unchanged suffix of the input in the same state as it was in the previous
+ *  run, the remaining old tokens are shifted into place instead of being re-lexed.
+ *
+ *  Lexer errors found in the reused regions are reported again so that the
+ *  preview still shows them.
+ */
+public class IncrementalLexer {
+	private LexerGrammar lg;
+	private CaseChangingStrategy caseChangingStrategy;
+	private Snapshot previous;
+
+	/** Tokenize {@code inputText} with the lexer of {@code lexerATNCache}, reporting
+	 *  lexer errors to {@code errorListener}. The returned stream is already filled,
+	 *  up to and including EOF.
+	 */
+	public synchronized TokenStreamSubset tokenize(LexerATNCache lexerATNCache,
+												   String sourceName,
+												   String inputText,
+												   ANTLRErrorListener errorListener) {
+		LexerGrammar lg = lexerATNCache.lg;
+		CaseChangingStrategy caseChangingStrategy = lexerATNCache.caseChangingStrategy;
+		LookaheadTrackingCharStream input = new LookaheadTrackingCharStream(
+			caseChangingStrategy.applyTo(CharStreams.fromString(inputText, sourceName))
+		);
+		LexerInterpreter lexer = lexerATNCache.createLexerInterpreter(input);
+		Snapshot old = lg==this.lg && caseChangingStrategy==this.caseChangingStrategy ? previous : null;
+		Snapshot next = new Snapshot(inputText, input.size());
+
+		ErrorRecorder recorder = new ErrorRecorder(errorListener, next.errors);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(recorder);
+		Pair<TokenSource, CharStream> source = new Pair<>(lexer, input);
+
+		int restart = 0;
+		int suffixStart = Integer.MAX_VALUE;
+		int delta = 0;
+		if ( old!=null ) {
+			// in code points, like the indexes of the char stream and of tokens
+			int prefix = commonPrefixLength(old.text, inputText);
+			int suffix = commonSuffixLength(old.text, inputText, prefix);
+			suffixStart = next.size - inputText.codePointCount(inputText.length() - suffix, inputText.length());
+			delta = next.size - old.size;
+			restart = old.firstTokenLookingAt(old.text.codePointCount(0, prefix));
+
+			next.appendPrefix(old, restart, source, lexer, input, errorListener);
+			old.restoreLexerState(restart, lexer);
+		}
+
+		while ( true ) {
+			int callStart = input.index();
+			if ( callStart>=suffixStart ) {
+				int j = old.callStarts.binarySearch(callStart - delta);
+				if ( j>=restart && old.hasSameLexerState(j, lexer) ) {
+					int lineDelta = lexer.getLine() - old.lines.get(j);
+					int columnDelta = lexer.getCharPositionInLine() - old.columns.get(j);
+					next.appendShiftedSuffix(old, j, delta, lineDelta, columnDelta,
+											 source, lexer, input, errorListener);
+					break;
+				}
+			}
+
+			int mode = lexer._mode;
+			IntegerStack modeStack = lexer._modeStack.isEmpty() ? null : new IntegerStack(lexer._modeStack);
+			int line = lexer.getLine();
+			int column = lexer.getCharPositionInLine();
+			input.lookahead = callStart - 1;
+			recorder.tokenIndex = next.tokens.size();
+
+			Token t = lexer.nextToken();
+			((WritableToken) t).setTokenIndex(next.tokens.size());
+			next.add(t, callStart, line, column, mode, modeStack, input.lookahead);
+			if ( t.getType()==Token.EOF ) {
+				break;
+			}
+			ProgressManager.checkCanceled();
+		}
+
+		this.lg = lg;
+		this.caseChangingStrategy = caseChangingStrategy;
+		this.previous = next;
+
+		return new TokenStreamSubset(lexer, next.tokens);
+	}
+
+	/** Forget about the previous run, next call to {@link #tokenize} will lex everything. */
+	public synchronized void reset() {
+		lg = null;
+		caseChangingStrategy = null;
+		previous = null;
+	}
+
+	/** In chars, never ending in the middle of a surrogate pair */
+	static int commonPrefixLength(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		int i = 0;
+		while ( i<n && a.charAt(i)==b.charAt(i) ) {
+			i++;
+		}
+		if ( i>0 && Character.isHighSurrogate(a.charAt(i-1)) ) {
+			i--;
+		}
+		return i;
+	}
+
+	/** In chars, never starting in the middle of a surrogate pair */
+	static int commonSuffixLength(String a, String b, int prefixLength) {
+		int n = Math.min(a.length(), b.length()) - prefixLength;
+		int i = 0;
+		while ( i<n && a.charAt(a.length()-1-i)==b.charAt(b.length()-1-i) ) {
+			i++;
+		}
+		if ( i>0 && Character.isLowSurrogate(a.charAt(a.length()-i)) ) {
+			i--;
+		}
+		return i;
+	}
+
+	/** Everything we need to know about a lexing run to restart the lexer
+	 *  anywhere in it. Arrays are indexed by token index.
+	 */
+	private static class Snapshot {
+		final String text;
+		/** Length of {@link #text} in code points */
+		final int size;
+		final List<Token> tokens = new ArrayList<>();
+		/** Char index where the lexer started looking for each token; differs
+		 *  from the token start index when skipped input precedes it.
+		 */
+		final IntegerList callStarts = new IntegerList();
+		final IntegerList lines = new IntegerList();
+		final IntegerList columns = new IntegerList();
+		final IntegerList modes = new IntegerList();
+		/** Null entries stand for an empty mode stack, which is by far the common case */
+		final List<IntegerStack> modeStacks = new ArrayList<>();
+		/** Running max of the furthest char index the lexer looked at, so it can be binary searched */
+		final IntegerList lookaheads = new IntegerList();
+		final List<LexerError> errors = new ArrayList<>();
+
+		Snapshot(String text, int size) {
+			this.text = text;
+			this.size = size;
+		}
+
+		void add(Token t, int callStart, int line, int column, int mode, IntegerStack modeStack, int lookahead) {
+			tokens.add(t);
+			callStarts.add(callStart);
+			lines.add(line);
+			columns.add(column);
+			modes.add(mode);
+			modeStacks.add(modeStack);
+			if ( !lookaheads.isEmpty() ) {
+				lookahead = Math.max(lookahead, lookaheads.get(lookaheads.size()-1));
+			}
+			lookaheads.add(lookahead);
+		}
+
+		/** Index of the first token whose lexing looked at char {@code index} or beyond */
+		int firstTokenLookingAt(int index) {
+			int lo = 0;
+			int hi = lookaheads.size() - 1; // EOF always looks at the end of input
+			while ( lo<hi ) {
+				int mid = (lo + hi) >>> 1;
+				if ( lookaheads.get(mid)>=index ) {
+					hi = mid;
+				}
+				else {
+					lo = mid + 1;
+				}
+			}
+			return lo;
+		}
+
+		void restoreLexerState(int i, Lexer lexer) {
+			lexer.getInputStream().seek(callStarts.get(i));
+			lexer.setLine(lines.get(i));
+			lexer.setCharPositionInLine(columns.get(i));
+			lexer._mode = modes.get(i);
+			lexer._modeStack.clear();
+			IntegerStack modeStack = modeStacks.get(i);
+			if ( modeStack!=null ) {
+				lexer._modeStack.addAll(modeStack);
+			}
+		}
+
+		boolean hasSameLexerState(int i, Lexer lexer) {
+			if ( modes.get(i)!=lexer._mode ) {
+				return false;
+			}
+			IntegerStack modeStack = modeStacks.get(i);
+			if ( modeStack==null ) {
+				return lexer._modeStack.isEmpty();
+			}
+			return modeStack.equals(lexer._modeStack);
+		}
+
+		/** Reuse tokens [0..n) of {@code old}, their text didn't change. They're
+		 *  copied onto the new input so that the old one can be collected.
+		 */
+		void appendPrefix(Snapshot old, int n, Pair<TokenSource, CharStream> source,
+						  Lexer lexer, CharStream input, ANTLRErrorListener listener) {
+			TokenFactory<?> factory = lexer.getTokenFactory();
+			for (int i = 0; i<n; i++) {
+				Token o = old.tokens.get(i);
+				Token t = factory.create(source, o.getType(), null, o.getChannel(),
+										 o.getStartIndex(), o.getStopIndex(),
+										 o.getLine(), o.getCharPositionInLine());
+				((WritableToken) t).setTokenIndex(i);
+				tokens.add(t);
+				callStarts.add(old.callStarts.get(i));
+				lines.add(old.lines.get(i));
+				columns.add(old.columns.get(i));
+				modes.add(old.modes.get(i));
+				modeStacks.add(old.modeStacks.get(i));
+				lookaheads.add(old.lookaheads.get(i));
+			}
+			for (LexerError e : old.errors) {
+				if ( e.tokenIndex<n ) {
+					errors.add(e);
+					e.reportTo(listener, lexer, input);
+				}
+			}
+		}
+
+		/** Append tokens [from..] of {@code old}, moved to their new location in the input */
+		void appendShiftedSuffix(Snapshot old, int from,
+								 int delta, int lineDelta, int columnDelta,
+								 Pair<TokenSource, CharStream> source,
+								 Lexer lexer, CharStream input, ANTLRErrorListener listener) {
+			int firstLine = old.lines.get(from);
+			int indexDelta = tokens.size() - from;
+			TokenFactory<?> factory = lexer.getTokenFactory();
+
+			for (int i = from; i<old.tokens.size(); i++) {
+				Token o = old.tokens.get(i);
+				int column = o.getLine()==firstLine ? o.getCharPositionInLine() + columnDelta : o.getCharPositionInLine();
+				Token t = factory.create(source, o.getType(), null, o.getChannel(),
+										 o.getStartIndex() + delta, o.getStopIndex() + delta,
+										 o.getLine() + lineDelta, column);
+				((WritableToken) t).setTokenIndex(tokens.size());
+
+				int callColumn = old.lines.get(i)==firstLine ? old.columns.get(i) + columnDelta : old.columns.get(i);
+				add(t, old.callStarts.get(i) + delta, old.lines.get(i) + lineDelta, callColumn,
+					old.modes.get(i), old.modeStacks.get(i), old.lookaheads.get(i) + delta);
+			}
+
+			for (LexerError e : old.errors) {
+				if ( e.tokenIndex>=from ) {
+					int column = e.line==firstLine ? e.column + columnDelta : e.column;
+					int startIndex = e.startIndex>=0 ? e.startIndex + delta : e.startIndex;
+					LexerError shifted = new LexerError(e.tokenIndex + indexDelta, startIndex,
+														e.line + lineDelta, column, e.msg);
+					errors.add(shifted);
+					shifted.reportTo(listener, lexer, input);
+				}
+			}
+		}
+	}
+
+	private static class LexerError {
+		final int tokenIndex;
+		final int startIndex;
+		final int line;
+		final int column;
+		final String msg;
+
+		LexerError(int tokenIndex, int startIndex, int line, int column, String msg) {
+			this.tokenIndex = tokenIndex;
+			this.startIndex = startIndex;
+			this.line = line;
+			this.column = column;
+			this.msg = msg;
+		}
+
+		void reportTo(ANTLRErrorListener listener, Lexer lexer, CharStream input) {
+			LexerNoViableAltException e = new LexerNoViableAltException(lexer, input, startIndex, null);
+			listener.syntaxError(lexer, null, line, column, msg, e);
+		}
+	}
+
+	/** Remembers lexer errors along with the token being lexed, then forwards them */
+	private static class ErrorRecorder extends BaseErrorListener {
+		final ANTLRErrorListener delegate;
+		final List<LexerError> errors;
+		int tokenIndex;
+
+		ErrorRecorder(ANTLRErrorListener delegate, List<LexerError> errors) {
+			this.delegate = delegate;
+			this.errors = errors;
+		}
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+								int line, int charPositionInLine,
+								String msg, RecognitionException e) {
+			int startIndex = e instanceof LexerNoViableAltException ?
+				((LexerNoViableAltException) e).getStartIndex() :
+				-1;
+			errors.add(new LexerError(tokenIndex, startIndex, line, charPositionInLine, msg));
+			delegate.syntaxError(recognizer, offendingSymbol, line, charPositionInLine, msg, e);
+		}
+	}
+
+	/** Tracks the furthest char index the lexer looked at. A token depends on
+	 *  all of these chars, not only on the ones it matched.
+	 */
+	private static class LookaheadTrackingCharStream implements CharStream {
+		final CharStream stream;
+		int lookahead;
+
+		LookaheadTrackingCharStream(CharStream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public int LA(int i) {
+			if ( i>0 ) {
+				int index = stream.index() + i - 1;
+				if ( index>lookahead ) {
+					lookahead = index;
+				}
+			}
+			return stream.LA(i);
+		}
+
+		@Override
+		public String getText(Interval interval) {
+			return stream.getText(interval);
+		}
+
+		@Override
+		public void consume() {
+			stream.consume();
+		}
+
+		@Override
+		public int mark() {
+			return stream.mark();
+		}
+
+		@Override
+		public void release(int marker) {
+			stream.release(marker);
+		}
+
+		@Override
+		public int index() {
+			return stream.index();
+		}
+
+		@Override
+		public void seek(int index) {
+			stream.seek(index);
+		}
+
+		@Override
+		public int size() {
+			return stream.size();
+		}
+
+		@Override
+		public String getSourceName() {
+			return stream.getSourceName();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/** Token stream used to preview input files that are too big to keep all their
+ *  tokens in memory. Only the tokens the parser might still look at are
+ *  buffered; we just count the others.
+ */
+public class LargeInputTokenStream extends UnbufferedTokenStream<Token> {
+	// No initializers here: super() already adds the first token
+	private int numberOfTokens;
+	private Token lastToken;
+
+	public LargeInputTokenStream(TokenSource tokenSource) {
+		super(tokenSource);
+	}
+
+	@Override
+	protected void add(Token t) {
+		super.add(t);
+		numberOfTokens++;
+		lastToken = t;
+	}
+
+	/** Number of tokens fetched so far, including EOF once the whole input has been parsed */
+	public int getNumberOfTokens() {
+		return numberOfTokens;
+	}
+
+	public Token getLastToken() {
+		return lastToken;
+	}
+
+	/** Error messages ask for the text of tokens that may already be gone from
+	 *  the buffer, so get it straight from the input instead.
+	 */
+	@Override
+	public String getText(Token start, Token stop) {
+		if ( start==null || stop==null ) {
+			return "";
+		}
+		int startIndex = start.getStartIndex();
+		int stopIndex = stop.getType()==Token.EOF ? stop.getStartIndex()-1 : stop.getStopIndex();
+		return getTokenSource().getInputStream().getText(Interval.of(startIndex, stopIndex));
+	}
+}
@@ -0,0 +1,60 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.tool.LexerGrammar;
+
+import java.util.Arrays;
+
+/** The lexer counterpart of {@link ParserATNCache}: the ATN and DFA of a lexer
+ *  grammar, shared by all the lexer interpreters created for a preview window
+ *  so that big inputs get lexed with a warm DFA, like generated lexers do.
+ *
+ *  Must be thrown away as soon as the {@link LexerGrammar} it was created for
+ *  is replaced, or when the case-changing strategy changes.
+ */
+public class LexerATNCache {
+	public final LexerGrammar lg;
+	public final CaseChangingStrategy caseChangingStrategy;
+
+	/** Holds the deserialized ATN and the names we need to create other interpreters */
+	private final LexerInterpreter prototype;
+	private final DFA[] decisionToDFA;
+	private final PredictionContextCache sharedContextCache = new PredictionContextCache();
+
+	public LexerATNCache(LexerGrammar lg, CaseChangingStrategy caseChangingStrategy) {
+		this.lg = lg;
+		this.caseChangingStrategy = caseChangingStrategy;
+		this.prototype = lg.createLexerInterpreter(CharStreams.fromString(""));
+
+		ATN atn = prototype.getATN();
+		this.decisionToDFA = new DFA[atn.getNumberOfDecisions()];
+		for (int i = 0; i < decisionToDFA.length; i++) {
+			decisionToDFA[i] = new DFA(atn.getDecisionState(i), i);
+		}
+	}
+
+	public boolean isFor(LexerGrammar lg, CaseChangingStrategy caseChangingStrategy) {
+		return this.lg==lg && this.caseChangingStrategy==caseChangingStrategy;
+	}
+
+	/** Create a lexer for {@code input}, which must already have the case-changing strategy applied. */
+	public LexerInterpreter createLexerInterpreter(CharStream input) {
+		LexerInterpreter lexer = new LexerInterpreter(
+			prototype.getGrammarFileName(),
+			prototype.getVocabulary(),
+			Arrays.asList(prototype.getRuleNames()),
+			Arrays.asList(prototype.getChannelNames()),
+			Arrays.asList(prototype.getModeNames()),
+			prototype.getATN(),
+			input
+		);
+		lexer.setInterpreter(new LexerATNSimulator(lexer, prototype.getATN(), decisionToDFA, sharedContextCache));
+		return lexer;
+	}
+}
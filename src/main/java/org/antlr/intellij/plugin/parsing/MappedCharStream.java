@@ -0,0 +1,218 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.IntegerList;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A read-only {@link CharStream} over a memory-mapped UTF-8 file, indexed by
+ *  code point like {@link org.antlr.v4.runtime.CodePointCharStream}, but without
+ *  ever decoding the whole file on the heap. Used to preview huge input files.
+ *
+ *  A single pass over the file counts code points and remembers the byte offset
+ *  of every {@link #CHECKPOINT_INTERVAL}th one, so that seeking anywhere only
+ *  needs to decode a few bytes. Pure ASCII files don't even need that.
+ *
+ *  Malformed UTF-8 sequences are read as one U+FFFD per invalid byte.
+ */
+public class MappedCharStream implements CharStream, Closeable {
+	static final int CHECKPOINT_INTERVAL = 1024;
+
+	/** Null once closed */
+	private MappedByteBuffer bytes;
+	private final int numBytes;
+	private final String sourceName;
+
+	private final int size;
+	/** Byte offset of code point i*CHECKPOINT_INTERVAL; null for pure ASCII input */
+	private final IntegerList checkpoints;
+
+	/** Current code point index, and its byte offset */
+	private int p = 0;
+	private int bytePos = 0;
+
+	public MappedCharStream(Path file, String sourceName) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if ( length>Integer.MAX_VALUE ) {
+				throw new IOException("File is too large to be previewed (" + length + " bytes): " + file);
+			}
+			this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		this.numBytes = bytes.capacity();
+		this.sourceName = sourceName;
+
+		IntegerList offsets = new IntegerList();
+		boolean ascii = true;
+		int n = 0;
+		int i = 0;
+		while ( i<numBytes ) {
+			if ( n%CHECKPOINT_INTERVAL==0 ) {
+				offsets.add(i);
+			}
+			int len = sequenceLength(i);
+			if ( len>1 || (bytes.get(i) & 0x80)!=0 ) {
+				ascii = false;
+			}
+			i += len;
+			n++;
+		}
+		this.size = n;
+		this.checkpoints = ascii ? null : offsets;
+	}
+
+	/** Byte offset of code point {@code index}, which must be in [0..size] */
+	private int byteOffsetOf(int index) {
+		if ( checkpoints==null ) {
+			return index;
+		}
+		if ( index==p ) {
+			return bytePos;
+		}
+		int cp;
+		int offset;
+		int checkpoint = index / CHECKPOINT_INTERVAL;
+		if ( index>p && p/CHECKPOINT_INTERVAL==checkpoint ) {
+			cp = p; // walk forward from where we are, it's closer
+			offset = bytePos;
+		}
+		else if ( checkpoint<checkpoints.size() ) {
+			cp = checkpoint * CHECKPOINT_INTERVAL;
+			offset = checkpoints.get(checkpoint);
+		}
+		else { // index==size, a multiple of CHECKPOINT_INTERVAL
+			return numBytes;
+		}
+		while ( cp<index ) {
+			offset += sequenceLength(offset);
+			cp++;
+		}
+		return offset;
+	}
+
+	/** Number of bytes of the UTF-8 sequence at {@code offset}, 1 if it's malformed */
+	private int sequenceLength(int offset) {
+		int lead = bytes.get(offset) & 0xFF;
+		int len;
+		if ( lead<0x80 ) return 1;
+		else if ( lead>=0xC2 && lead<=0xDF ) len = 2;
+		else if ( lead>=0xE0 && lead<=0xEF ) len = 3;
+		else if ( lead>=0xF0 && lead<=0xF4 ) len = 4;
+		else return 1;
+
+		if ( offset+len>numBytes ) {
+			return 1;
+		}
+		for (int i = 1; i<len; i++) {
+			if ( (bytes.get(offset+i) & 0xC0)!=0x80 ) {
+				return 1;
+			}
+		}
+		return len;
+	}
+
+	private int decode(int offset) {
+		int len = sequenceLength(offset);
+		int lead = bytes.get(offset) & 0xFF;
+		if ( len==1 ) {
+			return lead<0x80 ? lead : 0xFFFD;
+		}
+		int c = lead & (0xFF >> (len + 1));
+		for (int i = 1; i<len; i++) {
+			c = (c << 6) | (bytes.get(offset+i) & 0x3F);
+		}
+		return c;
+	}
+
+	/** The code point at {@code index}, which must be in [0..size) */
+	public int codePointAt(int index) {
+		return decode(byteOffsetOf(index));
+	}
+
+	@Override
+	public void consume() {
+		if ( p>=size ) {
+			assert LA(1)==IntStream.EOF;
+			throw new IllegalStateException("cannot consume EOF");
+		}
+		bytePos += checkpoints==null ? 1 : sequenceLength(bytePos);
+		p++;
+	}
+
+	@Override
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		int index = i>0 ? p + i - 1 : p + i;
+		if ( index<0 || index>=size ) {
+			return IntStream.EOF;
+		}
+		return i==1 ? decode(bytePos) : codePointAt(index);
+	}
+
+	@Override
+	public int mark() {
+		return -1; // everything is always available
+	}
+
+	@Override
+	public void release(int marker) {
+	}
+
+	@Override
+	public int index() {
+		return p;
+	}
+
+	@Override
+	public void seek(int index) {
+		index = Math.max(0, Math.min(index, size));
+		bytePos = byteOffsetOf(index);
+		p = index;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String getSourceName() {
+		return sourceName!=null && !sourceName.isEmpty() ? sourceName : UNKNOWN_SOURCE_NAME;
+	}
+
+	@Override
+	public String getText(Interval interval) {
+		int start = Math.min(interval.a, size);
+		int stop = Math.min(interval.b, size - 1);
+		StringBuilder buf = new StringBuilder(Math.max(0, stop - start + 1));
+		int offset = byteOffsetOf(start);
+		for (int i = start; i<=stop; i++) {
+			buf.appendCodePoint(decode(offset));
+			offset += sequenceLength(offset);
+		}
+		return buf.toString();
+	}
+
+	/** Drops the mapped buffer, so that the file is unmapped as soon as the
+	 *  buffer is garbage collected even if this stream is still referenced.
+	 *  The stream can't be read anymore afterwards.
+	 */
+	@Override
+	public void close() {
+		bytes = null;
+	}
+
+	@Override
+	public String toString() {
+		return getSourceName();
+	}
+}
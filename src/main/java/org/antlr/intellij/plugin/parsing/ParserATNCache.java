@@ -0,0 +1,33 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.tool.Grammar;
+
+/** The prediction data of a parser grammar that can be shared by all
+ *  {@link PreviewParser}s created for that grammar, like generated parsers
+ *  share their static {@code _decisionToDFA} and {@code _sharedContextCache}.
+ *  Reusing it from one parse to the next means the interpreter doesn't have
+ *  to rebuild its DFA from scratch on every keystroke.
+ *
+ *  Must be thrown away as soon as the {@link Grammar} it was created for
+ *  is replaced.
+ */
+public class ParserATNCache {
+	public final Grammar g;
+	public final ATN atn;
+	public final DFA[] decisionToDFA;
+	public final PredictionContextCache sharedContextCache = new PredictionContextCache();
+
+	public ParserATNCache(Grammar g) {
+		this.g = g;
+		this.atn = new ATNDeserializer().deserialize(ATNSerializer.getSerialized(g.getATN()).toArray());
+		this.decisionToDFA = new DFA[atn.getNumberOfDecisions()];
+		for (int i = 0; i < decisionToDFA.length; i++) {
+			decisionToDFA[i] = new DFA(atn.getDecisionState(i), i);
+		}
+	}
+}
@@ -5,13 +5,35 @@ import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 public class ParsingResult {
+	public static final String LL_EXACT_AMBIG_DETECTION_MODE = "LL, exact ambiguity detection";
+	public static final String SLL_MODE = "SLL";
+	public static final String LL_AFTER_SLL_FAILURE_MODE = "LL (SLL failed)";
+
 	public Parser parser;
 	public ParseTree tree;
 	public SyntaxErrorListener syntaxErrorListener;
+	/** Which prediction mode produced this tree (and the profiling data, if any) */
+	public String predictionMode;
+	/** Non-null if the parse was stopped by its {@link PreviewParseBudget}; the tree is then partial */
+	public String budgetExceededMessage;
+	/** The memory-mapped input of a large input file, to be closed when this result is dropped */
+	public MappedCharStream mappedInput;
 
 	public ParsingResult(Parser parser, ParseTree tree, SyntaxErrorListener syntaxErrorListener) {
+		this(parser, tree, syntaxErrorListener, null);
+	}
+
+	public ParsingResult(Parser parser, ParseTree tree, SyntaxErrorListener syntaxErrorListener, String predictionMode) {
 		this.parser = parser;
 		this.tree = tree;
 		this.syntaxErrorListener = syntaxErrorListener;
+		this.predictionMode = predictionMode;
+	}
+
+	/** Unmaps the input of a large input file; the result can't be used afterwards */
+	public void release() {
+		if ( mappedInput!=null ) {
+			mappedInput.close();
+		}
 	}
 }
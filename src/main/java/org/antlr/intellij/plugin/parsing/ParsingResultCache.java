@@ -0,0 +1,182 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.intellij.plugin.Utils;
+import org.antlr.v4.runtime.TokenStream;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/** Recently computed preview {@link ParsingResult}s, so that switching back to
+ *  a grammar, or to a start rule we already tried, doesn't reparse the same
+ *  input again.
+ *
+ *  This is an LRU cache bounded both by number of entries and by a rough
+ *  estimate of the memory held by the results (tokens and parse tree nodes).
+ *  Results are also softly referenced, so the GC can evict them first if
+ *  memory gets tight.
+ */
+public class ParsingResultCache {
+	public static final int DEFAULT_MAX_ENTRIES = 32;
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	/** Rough memory used per token: the token, its parse tree node and a share of the rule nodes */
+	private static final int BYTES_PER_TOKEN = 200;
+
+	private final int maxEntries;
+	private final long maxBytes;
+
+	/** In access order, least recently used first */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	public ParsingResultCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	public ParsingResultCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/** What a preview parse depends on */
+	public static class Key {
+		final String grammarFileName;
+		/** Bumped whenever the grammar objects of the preview are reloaded */
+		final long grammarVersion;
+		final String startRuleName;
+		final CaseChangingStrategy caseChangingStrategy;
+		final boolean fastMode;
+		final int inputLength;
+		final long inputHash;
+
+		public Key(String grammarFileName, long grammarVersion, String startRuleName,
+				   CaseChangingStrategy caseChangingStrategy, boolean fastMode, CharSequence input) {
+			this.grammarFileName = grammarFileName;
+			this.grammarVersion = grammarVersion;
+			this.startRuleName = startRuleName;
+			this.caseChangingStrategy = caseChangingStrategy;
+			this.fastMode = fastMode;
+			this.inputLength = input.length();
+			this.inputHash = Utils.fnv1aHash(input);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this==o ) return true;
+			if ( !(o instanceof Key) ) return false;
+			Key key = (Key) o;
+			return grammarVersion==key.grammarVersion &&
+				fastMode==key.fastMode &&
+				inputLength==key.inputLength &&
+				inputHash==key.inputHash &&
+				grammarFileName.equals(key.grammarFileName) &&
+				Objects.equals(startRuleName, key.startRuleName) &&
+				caseChangingStrategy==key.caseChangingStrategy;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(grammarFileName, grammarVersion, startRuleName, caseChangingStrategy, fastMode, inputHash);
+		}
+	}
+
+	/** A cached result and how long it took to compute it */
+	public static class Hit {
+		public final ParsingResult result;
+		public final long parseTime_ns;
+
+		Hit(ParsingResult result, long parseTime_ns) {
+			this.result = result;
+			this.parseTime_ns = parseTime_ns;
+		}
+	}
+
+	private static class Entry {
+		final SoftReference<ParsingResult> result;
+		final long parseTime_ns;
+		final long bytes;
+
+		Entry(ParsingResult result, long parseTime_ns, long bytes) {
+			this.result = new SoftReference<>(result);
+			this.parseTime_ns = parseTime_ns;
+			this.bytes = bytes;
+		}
+	}
+
+	/** The result cached for {@code key}, or null. If {@code needProfile}, only
+	 *  results that have profiling data will do.
+	 */
+	public synchronized Hit get(Key key, boolean needProfile) {
+		Entry entry = entries.get(key);
+		if ( entry==null ) {
+			return null;
+		}
+		ParsingResult result = entry.result.get();
+		if ( result==null ) { // collected
+			remove(key);
+			return null;
+		}
+		if ( needProfile && result.parser.getParseInfo()==null ) {
+			return null;
+		}
+		return new Hit(result, entry.parseTime_ns);
+	}
+
+	public synchronized void put(Key key, ParsingResult result, long parseTime_ns) {
+		if ( result.budgetExceededMessage!=null ) {
+			return; // partial result, depends on the budget settings too
+		}
+		if ( result.mappedInput!=null ) {
+			return; // would keep a whole large input file mapped
+		}
+		long size = estimateSize(result);
+		if ( size>maxBytes ) {
+			return;
+		}
+		remove(key);
+		entries.put(key, new Entry(result, parseTime_ns, size));
+		bytes += size;
+
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while ( it.hasNext() && (entries.size()>maxEntries || bytes>maxBytes) ) {
+			bytes -= it.next().getValue().bytes;
+			it.remove();
+		}
+	}
+
+	/** Forget all the results computed with the grammars of {@code grammarFileName} */
+	public synchronized void invalidate(String grammarFileName) {
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while ( it.hasNext() ) {
+			Map.Entry<Key, Entry> e = it.next();
+			if ( e.getKey().grammarFileName.equals(grammarFileName) ) {
+				bytes -= e.getValue().bytes;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void remove(Key key) {
+		Entry old = entries.remove(key);
+		if ( old!=null ) {
+			bytes -= old.bytes;
+		}
+	}
+
+	private static long estimateSize(ParsingResult result) {
+		TokenStream tokens = result.parser.getInputStream();
+		return (long) tokens.size() * BYTES_PER_TOKEN;
+	}
+}
@@ -4,13 +4,14 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.LocalFileSystem;
-import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.PluginIgnoreMissingTokensFileErrorManager;
+import org.antlr.intellij.plugin.adaptors.SharedPredictionCache;
 import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarProperties;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
@@ -21,6 +22,7 @@ import org.antlr.v4.parse.ANTLRParser;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.misc.Utils;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
@@ -36,11 +38,15 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 
 import static org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore.getGrammarProperties;
 
 public class ParsingUtils {
+	/** Only the first syntax errors of a large input file are kept, the others are just counted */
+	public static final int MAX_LARGE_INPUT_FILE_ERRORS = 1000;
+
 	public static Grammar BAD_PARSER_GRAMMAR;
 	public static LexerGrammar BAD_LEXER_GRAMMAR;
 
@@ -182,6 +188,7 @@ public class ParsingUtils {
 		ANTLRv4Lexer lexer = new ANTLRv4Lexer(input);
 		CommonTokenStream tokens = new TokenStreamSubset(lexer);
 		ANTLRv4Parser parser = new ANTLRv4Parser(tokens);
+		SharedPredictionCache.getInstance().install(parser);
 
 		SyntaxErrorListener listener = new SyntaxErrorListener();
 		parser.removeErrorListeners();
@@ -189,8 +196,13 @@ public class ParsingUtils {
 		lexer.removeErrorListeners();
 		lexer.addErrorListener(listener);
 
-		ParseTree t = parser.grammarSpec();
-		return new ParsingResult(parser, t, listener);
+		try {
+			ParseTree t = parser.grammarSpec();
+			return new ParsingResult(parser, t, listener);
+		}
+		finally {
+			SharedPredictionCache.trim();
+		}
 	}
 
 	public static ParsingResult parseText(Grammar g,
@@ -199,6 +211,27 @@ public class ParsingUtils {
 										  final VirtualFile grammarFile,
 										  String inputText,
 										  Project project) {
+		return parseText(g, lg, startRuleName, grammarFile, inputText, project, null, false, true);
+	}
+
+	/** Same as above, but if {@code previewState} is not null, tokens from the
+	 *  previous parse that are not affected by edits to the input are reused,
+	 *  and so are the lexer and parser DFAs.
+	 *
+	 *  In {@code fastMode}, the input is parsed with SLL prediction first, and
+	 *  reparsed with full LL only if that fails. Otherwise, we always use full LL
+	 *  with exact ambiguity detection. Profiling data is only collected if
+	 *  {@code profile} is true.
+	 */
+	public static ParsingResult parseText(Grammar g,
+										  LexerGrammar lg,
+										  String startRuleName,
+										  final VirtualFile grammarFile,
+										  String inputText,
+										  Project project,
+										  @Nullable PreviewState previewState,
+										  boolean fastMode,
+										  boolean profile) {
 		if ( g==null || lg==null ) {
 			ANTLRv4PluginController.LOG.info("parseText can't parse: missing lexer or parser no Grammar object for " +
 					(grammarFile != null ? grammarFile.getName() : "<unknown file>"));
@@ -206,15 +239,53 @@ public class ParsingUtils {
 		}
 
 		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
-		CharStream input = grammarProperties.getCaseChangingStrategy()
-				.applyTo(CharStreams.fromString(inputText, grammarFile.getPath()));
-		LexerInterpreter lexEngine;
-		lexEngine = lg.createLexerInterpreter(input);
 		SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
+		CommonTokenStream tokens;
+		if ( previewState!=null && lg!=BAD_LEXER_GRAMMAR ) {
+			LexerATNCache lexerATNCache = previewState.getLexerATNCache(lg, grammarProperties.getCaseChangingStrategy());
+			tokens = previewState.incrementalLexer.tokenize(lexerATNCache, grammarFile.getPath(), inputText,
+															syntaxErrorListener);
+		}
+		else {
+			CharStream input = grammarProperties.getCaseChangingStrategy()
+					.applyTo(CharStreams.fromString(inputText, grammarFile.getPath()));
+			LexerInterpreter lexEngine;
+			lexEngine = lg.createLexerInterpreter(input);
+			lexEngine.removeErrorListeners();
+			lexEngine.addErrorListener(syntaxErrorListener);
+			tokens = new TokenStreamSubset(lexEngine);
+		}
+		ParserATNCache parserATNCache = previewState!=null && g!=BAD_PARSER_GRAMMAR ? previewState.getParserATNCache(g) : null;
+		PreviewParseBudget budget = PreviewParseBudget.of(grammarProperties);
+		return parseText(g, lg, startRuleName, syntaxErrorListener, tokens, 0, parserATNCache, budget, fastMode, profile);
+	}
+
+	/** Parse one of many inputs that may be parsed concurrently, e.g. by
+	 *  {@link RunRuleOnSampleDirectory}. The lexer and parser DFAs are shared
+	 *  by all the threads, but not the tokens of a previous parse. Profiling
+	 *  data is always collected.
+	 */
+	public static ParsingResult parseSampleText(Grammar g,
+												LexerGrammar lg,
+												String startRuleName,
+												final VirtualFile grammarFile,
+												VirtualFile inputFile,
+												String inputText,
+												Project project,
+												LexerATNCache lexerATNCache,
+												ParserATNCache parserATNCache) {
+		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
+		SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
+		CharStream input = grammarProperties.getCaseChangingStrategy()
+				.applyTo(CharStreams.fromString(inputText, inputFile.getPath()));
+		LexerInterpreter lexEngine = lexerATNCache.createLexerInterpreter(input);
 		lexEngine.removeErrorListeners();
 		lexEngine.addErrorListener(syntaxErrorListener);
 		CommonTokenStream tokens = new TokenStreamSubset(lexEngine);
-		return parseText(g, lg, startRuleName, syntaxErrorListener, tokens, 0);
+		tokens.fill();
+
+		PreviewParseBudget budget = PreviewParseBudget.of(grammarProperties);
+		return parseText(g, lg, startRuleName, syntaxErrorListener, tokens, 0, parserATNCache, budget, true, true);
 	}
 
 	private static ParsingResult parseText(Grammar g,
@@ -222,7 +293,11 @@ public class ParsingUtils {
 										  String startRuleName,
 										  SyntaxErrorListener syntaxErrorListener,
 										  TokenStream tokens,
-										  int startIndex) {
+										  int startIndex,
+										  @Nullable ParserATNCache parserATNCache,
+										  PreviewParseBudget budget,
+										  boolean fastMode,
+										  boolean profile) {
 		String grammarFileName = g.fileName;
 		if (!new File(grammarFileName).exists()) {
 			ANTLRv4PluginController.LOG.info("parseText grammar doesn't exist "+grammarFileName);
@@ -233,25 +308,172 @@ public class ParsingUtils {
 			return null;
 		}
 
-		tokens.seek(startIndex);
+		Rule start = g.getRule(startRuleName);
+		if ( start==null ) {
+			return null; // can't find start rule
+		}
 
-		PreviewParser parser = new PreviewParser(g, tokens);
-		parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
-		parser.setProfile(true);
+		if ( fastMode ) {
+			// Stage 1: SLL, bail out on the first syntax error without reporting it
+			tokens.seek(startIndex);
+			PreviewParser parser = createPreviewParser(g, tokens, parserATNCache, budget, PredictionMode.SLL, profile);
+			parser.removeErrorListeners();
+			parser.setErrorHandler(new BailErrorStrategy());
+			try {
+				ParseTree t = parser.parse(start.index);
+				if ( t!=null ) {
+					return new ParsingResult(parser, t, syntaxErrorListener, ParsingResult.SLL_MODE);
+				}
+			}
+			catch (PreviewParseBudget.ParseBudgetExceededException e) {
+				return budgetExceeded(parser, syntaxErrorListener, ParsingResult.SLL_MODE, e);
+			}
+			catch (ParseCancellationException e) {
+				// either a real syntax error or SLL was too weak, try again with full LL
+			}
+		}
 
+		tokens.seek(startIndex);
+		PredictionMode mode = fastMode ? PredictionMode.LL : PredictionMode.LL_EXACT_AMBIG_DETECTION;
+		PreviewParser parser = createPreviewParser(g, tokens, parserATNCache, budget, mode, profile);
 		parser.removeErrorListeners();
 		parser.addErrorListener(syntaxErrorListener);
 
+		String modeName = fastMode ? ParsingResult.LL_AFTER_SLL_FAILURE_MODE : ParsingResult.LL_EXACT_AMBIG_DETECTION_MODE;
+		ParseTree t;
+		try {
+			t = parser.parse(start.index);
+		}
+		catch (PreviewParseBudget.ParseBudgetExceededException e) {
+			return budgetExceeded(parser, syntaxErrorListener, modeName, e);
+		}
+
+		if ( t!=null ) {
+			return new ParsingResult(parser, t, syntaxErrorListener, modeName);
+		}
+		return null;
+	}
+
+	/** Keep what we have parsed so far so the user can see where it went wrong */
+	private static ParsingResult budgetExceeded(PreviewParser parser,
+												SyntaxErrorListener syntaxErrorListener,
+												String predictionMode,
+												PreviewParseBudget.ParseBudgetExceededException e) {
+		ParsingResult result = new ParsingResult(parser, parser.getPartialParseTree(), syntaxErrorListener, predictionMode);
+		result.budgetExceededMessage = e.getMessage();
+		return result;
+	}
+
+	/** Parse an input file that is too big to be loaded in an editor, reading it
+	 *  straight from disk through a {@link MappedCharStream}. Tokens aren't kept
+	 *  in memory and no parse tree is built: the result only carries the syntax
+	 *  errors and, if {@code profile} is true, the profiling data.
+	 */
+	public static ParsingResult parseLargeInputFile(Grammar g,
+													LexerGrammar lg,
+													String startRuleName,
+													final VirtualFile grammarFile,
+													VirtualFile inputFile,
+													Project project,
+													PreviewState previewState,
+													boolean fastMode,
+													boolean profile) throws IOException {
+		if ( g==null || lg==null || g==BAD_PARSER_GRAMMAR || lg==BAD_LEXER_GRAMMAR ) {
+			ANTLRv4PluginController.LOG.info("parseLargeInputFile can't parse: missing lexer or parser no Grammar object for " +
+					(grammarFile != null ? grammarFile.getName() : "<unknown file>"));
+			return null;
+		}
 		Rule start = g.getRule(startRuleName);
 		if ( start==null ) {
 			return null; // can't find start rule
 		}
-		ParseTree t = parser.parse(start.index);
 
-		if ( t!=null ) {
-			return new ParsingResult(parser, t, syntaxErrorListener);
+		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
+		LexerATNCache lexerATNCache = previewState.getLexerATNCache(lg, grammarProperties.getCaseChangingStrategy());
+		ParserATNCache parserATNCache = previewState.getParserATNCache(g);
+		MappedCharStream mappedInput = new MappedCharStream(Paths.get(inputFile.getPath()), inputFile.getPath());
+		CharStream input = grammarProperties.getCaseChangingStrategy().applyTo(mappedInput);
+		PreviewParseBudget budget = PreviewParseBudget.of(grammarProperties);
+
+		ParsingResult result = parseLargeInput(input, start, lexerATNCache, parserATNCache, budget, fastMode, profile);
+		result.mappedInput = mappedInput;
+		return result;
+	}
+
+	private static ParsingResult parseLargeInput(CharStream input,
+												 Rule start,
+												 LexerATNCache lexerATNCache,
+												 ParserATNCache parserATNCache,
+												 PreviewParseBudget budget,
+												 boolean fastMode,
+												 boolean profile) {
+		if ( fastMode ) {
+			SyntaxErrorListener lexerErrorListener = new CappedSyntaxErrorListener(MAX_LARGE_INPUT_FILE_ERRORS);
+			PreviewParser parser = createLargeInputFileParser(input, lexerATNCache, parserATNCache, budget,
+															  lexerErrorListener, PredictionMode.SLL, profile);
+			parser.removeErrorListeners();
+			parser.setErrorHandler(new BailErrorStrategy());
+			try {
+				ParseTree t = parser.parse(start.index);
+				return new ParsingResult(parser, t, lexerErrorListener, ParsingResult.SLL_MODE);
+			}
+			catch (PreviewParseBudget.ParseBudgetExceededException e) {
+				return budgetExceeded(parser, lexerErrorListener, ParsingResult.SLL_MODE, e);
+			}
+			catch (ParseCancellationException e) {
+				// either a real syntax error or SLL was too weak, try again with full LL
+			}
 		}
-		return null;
+
+		SyntaxErrorListener syntaxErrorListener = new CappedSyntaxErrorListener(MAX_LARGE_INPUT_FILE_ERRORS);
+		PredictionMode mode = fastMode ? PredictionMode.LL : PredictionMode.LL_EXACT_AMBIG_DETECTION;
+		PreviewParser parser = createLargeInputFileParser(input, lexerATNCache, parserATNCache, budget,
+														  syntaxErrorListener, mode, profile);
+		parser.removeErrorListeners();
+		parser.addErrorListener(syntaxErrorListener);
+
+		String modeName = fastMode ? ParsingResult.LL_AFTER_SLL_FAILURE_MODE : ParsingResult.LL_EXACT_AMBIG_DETECTION_MODE;
+		try {
+			ParseTree t = parser.parse(start.index);
+			return new ParsingResult(parser, t, syntaxErrorListener, modeName);
+		}
+		catch (PreviewParseBudget.ParseBudgetExceededException e) {
+			return budgetExceeded(parser, syntaxErrorListener, modeName, e);
+		}
+	}
+
+	private static PreviewParser createLargeInputFileParser(CharStream input,
+															LexerATNCache lexerATNCache,
+															ParserATNCache parserATNCache,
+															PreviewParseBudget budget,
+															SyntaxErrorListener lexerErrorListener,
+															PredictionMode mode,
+															boolean profile) {
+		input.seek(0);
+		LexerInterpreter lexEngine = lexerATNCache.createLexerInterpreter(input);
+		lexEngine.removeErrorListeners();
+		lexEngine.addErrorListener(lexerErrorListener);
+
+		PreviewParser parser = new PreviewParser(parserATNCache, new LargeInputTokenStream(lexEngine));
+		parser.disableTokenStateTracking();
+		parser.setBuildParseTree(false);
+		parser.setBudget(budget);
+		parser.getInterpreter().setPredictionMode(mode);
+		parser.setProfile(profile);
+		return parser;
+	}
+
+	private static PreviewParser createPreviewParser(Grammar g,
+													 TokenStream tokens,
+													 @Nullable ParserATNCache parserATNCache,
+													 PreviewParseBudget budget,
+													 PredictionMode mode,
+													 boolean profile) {
+		PreviewParser parser = parserATNCache!=null ? new PreviewParser(parserATNCache, tokens) : new PreviewParser(g, tokens);
+		parser.setBudget(budget);
+		parser.getInterpreter().setPredictionMode(mode);
+		parser.setProfile(profile);
+		return parser;
 	}
 
 	public static Tool createANTLRToolForLoadingGrammars(ANTLRv4GrammarProperties grammarProperties) {
@@ -265,61 +487,73 @@ public class ParsingUtils {
 		return antlr;
 	}
 
-	/** Get lexer and parser grammars */
+	/** Get lexer and parser grammars. Can be cancelled if run under a
+	 *  progress indicator, also while the tool processes the grammar.
+	 */
 	public static Grammar[] loadGrammars(VirtualFile grammarFile, Project project) {
 		ANTLRv4PluginController.LOG.info("loadGrammars "+grammarFile.getPath()+" "+project.getName());
-		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile));
-		LoadGrammarsToolListener listener = (LoadGrammarsToolListener)antlr.getListeners().get(0);
+		GrammarAnalysis analysis = GrammarAnalysisService.getInstance(project).analyze(grammarFile);
 
 		ConsoleView console = ANTLRv4PluginController.getInstance(project).getConsole();
-		Grammar g = loadGrammar(grammarFile, antlr);
-		if (g == null) {
-			reportBadGrammar(grammarFile, console);
-			return null;
-		}
-
-		// see if a lexer is hanging around somewhere; don't want implicit token defs to make us bail
-		LexerGrammar lg = null;
-		if ( g.getType()==ANTLRParser.PARSER ) {
-			lg = loadLexerGrammarFor(g, project);
-			if ( lg!=null ) {
-				g.importVocab(lg);
+		Grammar g = analysis.getGrammar();
+		if ( analysis.hasErrors() ) {
+			if ( g==null && analysis.getErrorMessages().isEmpty() ) {
+				reportBadGrammar(grammarFile, console);
 			}
 			else {
-				lg = BAD_LEXER_GRAMMAR;
+				String msg = Utils.join(analysis.getErrorMessages().iterator(), "\n");
+				console.print(msg+"\n", ConsoleViewContentType.ERROR_OUTPUT);
 			}
-		}
-
-		antlr.process(g, false);
-		if ( listener.grammarErrorMessages.size()!=0 ) {
-			String msg = Utils.join(listener.grammarErrorMessages.iterator(), "\n");
-			console.print(msg+"\n", ConsoleViewContentType.ERROR_OUTPUT);
 			return null; // upon error, bail
 		}
 
+		ProgressManager.checkCanceled();
+
 		// Examine's Grammar AST constructed by v3 for a v4 grammar.
 		// Use ANTLR v3's ANTLRParser not ANTLRv4Parser from this plugin
+		Grammar[] grammars;
+		LexerGrammar lg;
 		switch ( g.getType() ) {
 			case ANTLRParser.PARSER :
+				// the lexer as the preview loaded it, see below
+				lg = loadLexerGrammarFor(g, project);
+				if ( lg==null ) {
+					lg = BAD_LEXER_GRAMMAR;
+				}
 				ANTLRv4PluginController.LOG.info("loadGrammars parser "+g.name);
-				return new Grammar[] {lg, g};
+				grammars = new Grammar[] {lg, g};
+				break;
 			case ANTLRParser.LEXER :
+				lg = analysis.getLexerGrammar();
 				ANTLRv4PluginController.LOG.info("loadGrammars lexer "+g.name);
-				lg = (LexerGrammar)g;
-				return new Grammar[] {lg, null};
+				grammars = new Grammar[] {lg, null};
+				break;
 			case ANTLRParser.COMBINED :
-				lg = g.getImplicitLexer();
+				lg = analysis.getLexerGrammar();
 				if ( lg==null ) {
 					String msg = "No implicit lexer grammar found in combined grammar " + g.name
 						+ ". Did you mean to declare a `parser grammar` instead?\n";
 					console.print(msg, ConsoleViewContentType.ERROR_OUTPUT);
-					lg = BAD_LEXER_GRAMMAR;
+					return new Grammar[] {BAD_LEXER_GRAMMAR, g};
 				}
 				ANTLRv4PluginController.LOG.info("loadGrammars combined: "+lg.name+", "+g.name);
-				return new Grammar[] {lg, g};
+				grammars = new Grammar[] {lg, g};
+				break;
+			default :
+				ANTLRv4PluginController.LOG.info("loadGrammars invalid grammar type "+g.getTypeString()+" for "+g.name);
+				return null;
 		}
-		ANTLRv4PluginController.LOG.info("loadGrammars invalid grammar type "+g.getTypeString()+" for "+g.name);
-		return null;
+
+		// if no rule changed since last time, keep the grammars the preview already warmed up
+		ProcessedGrammarCache processedGrammarCache = ProcessedGrammarCache.getInstance(project);
+		LexerGrammar usedLexer = g.getType()==ANTLRParser.PARSER ? lg : null;
+		Grammar[] previous = processedGrammarCache.get(grammarFile, analysis.getFingerprint(), g.tool.libDirectory, usedLexer);
+		if ( previous!=null ) {
+			ANTLRv4PluginController.LOG.info("loadGrammars "+g.name+" unchanged since last processed");
+			return previous;
+		}
+		processedGrammarCache.put(grammarFile, analysis.getFingerprint(), g.tool.libDirectory, usedLexer, grammars);
+		return grammars;
 	}
 
 	private static void reportBadGrammar(VirtualFile grammarFile, ConsoleView console) {
@@ -327,22 +561,6 @@ public class ParsingUtils {
 		console.print(msg+"\n", ConsoleViewContentType.ERROR_OUTPUT);
 	}
 
-	@Nullable
-	private static Grammar loadGrammar(VirtualFile grammarFile, Tool antlr) {
-		// basically here I am mimicking the loadGrammar() method from Tool
-		// so that I can check for an empty AST coming back.
-		GrammarRootAST grammarRootAST = parseGrammar(antlr, grammarFile);
-		if ( grammarRootAST==null ) {
-			return null;
-		}
-
-		// Create a grammar from the AST so we can figure out what type it is
-		Grammar g = antlr.createGrammar(grammarRootAST);
-		g.fileName = grammarFile.getPath();
-
-		return g;
-	}
-
 	public static GrammarRootAST parseGrammar(Tool antlr, VirtualFile grammarFile) {
 		try {
 			Document document = FileDocumentManager.getInstance().getDocument(grammarFile);
@@ -363,51 +581,32 @@ public class ParsingUtils {
 	 *  	V given tokenVocab=V in grammar or
 	 *   	XLexer given XParser.g4 filename or
 	 *     	XLexer given grammar name X
+	 *
+	 *  The lexer grammar is loaded like any other grammar, so it comes from
+	 *  the shared {@link GrammarAnalysisService} and is the same instance for
+	 *  all the parser grammars using it.
 	 */
 	public static LexerGrammar loadLexerGrammarFor(Grammar g, Project project) {
-		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, g.fileName));
-		LoadGrammarsToolListener listener = (LoadGrammarsToolListener)antlr.getListeners().get(0);
-		LexerGrammar lg = null;
-		VirtualFile lexerGrammarFile;
-
-		String vocabName = g.getOptionString("tokenVocab");
-		if ( vocabName!=null ) {
-			VirtualFile grammarFile = LocalFileSystem.getInstance().findFileByIoFile(new File(g.fileName));
-			lexerGrammarFile = VfsUtil.findRelativeFile(grammarFile == null ? null : grammarFile.getParent(), vocabName + ".g4");
+		VirtualFile lexerGrammarFile = LocalFileSystem.getInstance().findFileByIoFile(new File(getLexerGrammarFileName(g)));
+		if ( lexerGrammarFile==null || !lexerGrammarFile.exists() || lexerGrammarFile.getPath().equals(g.fileName) ) {
+			return null;
 		}
-		else {
-			lexerGrammarFile = LocalFileSystem.getInstance().findFileByIoFile(new File(getLexerNameFromParserFileName(g.fileName)));
+		Grammar[] grammars = loadGrammars(lexerGrammarFile, project);
+		if ( grammars==null || grammars[1]!=null || !(grammars[0] instanceof LexerGrammar) ) {
+			ANTLRv4PluginController.LOG.info("File "+lexerGrammarFile+" isn't a lexer grammar");
+			return null;
 		}
+		return (LexerGrammar) grammars[0];
+	}
 
-		if ( lexerGrammarFile != null && lexerGrammarFile.exists() ) {
-			ConsoleView console = ANTLRv4PluginController.getInstance(project).getConsole();
-
-			try {
-				lg = (LexerGrammar) loadGrammar(lexerGrammarFile, antlr);
-				if ( lg!=null ) {
-					antlr.process(lg, false);
-				}
-				else {
-					reportBadGrammar(lexerGrammarFile, console);
-				}
-			}
-			catch (ClassCastException cce) {
-				ANTLRv4PluginController.LOG.error("File "+lexerGrammarFile+" isn't a lexer grammar", cce);
-			}
-			catch (Exception e) {
-				String msg = null;
-				if ( listener.grammarErrorMessages.size()!=0 ) {
-					msg = ": "+listener.grammarErrorMessages.toString();
-				}
-				ANTLRv4PluginController.LOG.error("File "+lexerGrammarFile+" couldn't be parsed as a lexer grammar"+msg, e);
-			}
-			if ( listener.grammarErrorMessages.size()!=0 ) {
-				lg = null;
-				String msg = Utils.join(listener.grammarErrorMessages.iterator(), "\n");
-				console.print(msg+"\n", ConsoleViewContentType.ERROR_OUTPUT);
-			}
+	/** The file loadLexerGrammarFor() looks for, whether it exists or not */
+	@NotNull
+	public static String getLexerGrammarFileName(Grammar g) {
+		String vocabName = g.getOptionString("tokenVocab");
+		if ( vocabName!=null ) {
+			return new File(new File(g.fileName).getParentFile(), vocabName+".g4").getPath();
 		}
-		return lg;
+		return getLexerNameFromParserFileName(g.fileName);
 	}
 
 	@NotNull
@@ -0,0 +1,75 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarProperties;
+import org.antlr.v4.runtime.Token;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the resources a single preview parse may use, as configured in the
+ * {@link ANTLRv4GrammarProperties} of the grammar. A limit of 0 means no limit.
+ * The clock starts when the budget is created, so a budget covers every stage
+ * of a parse (e.g. SLL then LL in fast parsing mode).
+ */
+public class PreviewParseBudget {
+	public static final PreviewParseBudget UNLIMITED = new PreviewParseBudget(0, 0, 0);
+
+	private final long maxNanos;
+	private final int maxParseTreeNodes;
+	private final int maxTokens;
+
+	private final long startTime = System.nanoTime();
+
+	public PreviewParseBudget(int maxSeconds, int maxParseTreeNodes, int maxTokens) {
+		this.maxNanos = TimeUnit.SECONDS.toNanos(maxSeconds);
+		this.maxParseTreeNodes = maxParseTreeNodes;
+		this.maxTokens = maxTokens;
+	}
+
+	public static PreviewParseBudget of(ANTLRv4GrammarProperties grammarProperties) {
+		return new PreviewParseBudget(
+				grammarProperties.getPreviewTimeBudget(),
+				grammarProperties.getPreviewMaxParseTreeNodes(),
+				grammarProperties.getPreviewMaxTokens()
+		);
+	}
+
+	void checkTime(PreviewParser parser) {
+		if ( maxNanos>0 && System.nanoTime()-startTime>maxNanos ) {
+			throw exceeded(parser.getCurrentToken(), "parsing took more than "+TimeUnit.NANOSECONDS.toSeconds(maxNanos)+" s");
+		}
+	}
+
+	void checkParseTreeNodes(PreviewParser parser, int numberOfParseTreeNodes) {
+		if ( maxParseTreeNodes>0 && numberOfParseTreeNodes>maxParseTreeNodes ) {
+			throw exceeded(parser.getCurrentToken(), "the parse tree has more than "+maxParseTreeNodes+" nodes");
+		}
+	}
+
+	void checkTokens(Token matched) {
+		if ( maxTokens>0 && matched.getTokenIndex()>=maxTokens ) {
+			throw exceeded(matched, "the input has more than "+maxTokens+" tokens");
+		}
+	}
+
+	private static ParseBudgetExceededException exceeded(Token token, String reason) {
+		String message = String.format("Preview budget exceeded at token %d (line %d:%d): %s",
+									   token.getTokenIndex(), token.getLine(), token.getCharPositionInLine(), reason);
+		return new ParseBudgetExceededException(message, token);
+	}
+
+	/** Stops the preview parser; what has been parsed so far is still shown */
+	public static class ParseBudgetExceededException extends RuntimeException {
+		private final Token token;
+
+		public ParseBudgetExceededException(String message, Token token) {
+			super(message);
+			this.token = token;
+		}
+
+		/** The token being parsed when the budget was exceeded */
+		public Token getToken() {
+			return token;
+		}
+	}
+}
@@ -6,17 +6,26 @@ import org.antlr.v4.runtime.atn.*;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.GrammarParserInterpreter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class PreviewParser extends GrammarParserInterpreter {
-	/** Map each preview editor token to the grammar ATN state used to match it.
-	 *  Saves us having to create special token subclass and token factory.
+	/** The grammar ATN state used to match each preview editor token, indexed
+	 *  by token index; {@link ATNState#INVALID_STATE_NUMBER} for tokens that
+	 *  were not matched (hidden or error tokens). Saves us having to create
+	 *  special token subclass and token factory, and boxing an Integer per token.
+	 *  Null if we don't need to track it, e.g. for large input files.
 	 */
-	public Map<Token, Integer> inputTokenToStateMap = new HashMap<>();
+	private int[] tokenIndexToState = newTokenIndexToState(16);
 
 	private final LexerWatchdog lexerWatchdog;
 
+	private PreviewParseBudget budget = PreviewParseBudget.UNLIMITED;
+	private int numberOfParseTreeNodes;
+	private int decisionsSinceTimeCheck;
+
+	/** Only look at the clock every so many decisions */
+	private static final int TIME_CHECK_INTERVAL = 128;
+
 	protected int lastSuccessfulMatchState = ATNState.INVALID_STATE_NUMBER; // not sure about error nodes
 
 	public PreviewParser(Grammar g, ATN atn, TokenStream input) {
@@ -28,21 +37,63 @@ public class PreviewParser extends GrammarParserInterpreter {
 		this(g, new ATNDeserializer().deserialize(ATNSerializer.getSerialized(g.getATN()).toArray()), input);
 	}
 
+	/** Create a parser that predicts using the DFA cached across parses of {@code cache.g} */
+	public PreviewParser(ParserATNCache cache, TokenStream input) {
+		this(cache.g, cache.atn, input);
+		setInterpreter(new ParserATNSimulator(this, cache.atn, cache.decisionToDFA, cache.sharedContextCache));
+	}
+
 	@Override
 	public void reset() {
 		super.reset();
-		if ( inputTokenToStateMap!=null ) inputTokenToStateMap.clear();
+		if ( tokenIndexToState!=null ) Arrays.fill(tokenIndexToState, ATNState.INVALID_STATE_NUMBER);
 		lastSuccessfulMatchState = ATNState.INVALID_STATE_NUMBER;
+		numberOfParseTreeNodes = 0;
+	}
+
+	public void setBudget(PreviewParseBudget budget) {
+		this.budget = budget;
+	}
+
+	/** The tree built so far, if parsing was stopped by an exception. Contexts
+	 *  of left-recursive rules are only attached to their parent when the rule
+	 *  is exited, so we attach those that are still in progress here.
+	 */
+	public ParserRuleContext getPartialParseTree() {
+		ParserRuleContext ctx = getContext();
+		if ( ctx==null ) {
+			return null;
+		}
+		while ( ctx.getParent()!=null ) {
+			ParserRuleContext parent = ctx.getParent();
+			if ( getBuildParseTree() && (parent.children==null || !parent.children.contains(ctx)) ) {
+				if ( parent.children!=null ) {
+					// drop the previous iterations of the recursion, they are now children of ctx
+					ParserRuleContext p = parent;
+					parent.children.removeIf(child -> child.getParent()!=p);
+				}
+				parent.addChild(ctx);
+			}
+			ctx = parent;
+		}
+		return ctx;
 	}
 
 	@Override
 	protected InterpreterRuleContext createInterpreterRuleContext(ParserRuleContext parent, int invokingStateNumber, int ruleIndex) {
+		if ( getBuildParseTree() ) {
+			budget.checkParseTreeNodes(this, ++numberOfParseTreeNodes);
+		}
 		return new PreviewInterpreterRuleContext(parent, invokingStateNumber, ruleIndex);
 	}
 
 	@Override
 	protected int visitDecisionState(DecisionState p) {
 		ProgressManager.checkCanceled();
+		if ( ++decisionsSinceTimeCheck==TIME_CHECK_INTERVAL ) {
+			decisionsSinceTimeCheck = 0;
+			budget.checkTime(this);
+		}
 
 		int predictedAlt = super.visitDecisionState(p);
 		if ( p.getNumberOfTransitions()>1 ) {
@@ -61,7 +112,11 @@ public class PreviewParser extends GrammarParserInterpreter {
 
 		Token t = super.match(ttype);
 		// track which ATN state matches each token
-		inputTokenToStateMap.put(t, getState());
+		setATNStateForToken(t, getState());
+		budget.checkTokens(t);
+		if ( getBuildParseTree() ) {
+			budget.checkParseTreeNodes(this, ++numberOfParseTreeNodes);
+		}
 		lastSuccessfulMatchState = getState();
 		return t;
 	}
@@ -71,8 +126,47 @@ public class PreviewParser extends GrammarParserInterpreter {
 	public Token matchWildcard() throws RecognitionException {
 		lexerWatchdog.checkLexerIsNotStuck();
 
-		inputTokenToStateMap.put(_input.LT(1), getState());
+		setATNStateForToken(_input.LT(1), getState());
+		budget.checkTokens(_input.LT(1));
+		if ( getBuildParseTree() ) {
+			budget.checkParseTreeNodes(this, ++numberOfParseTreeNodes);
+		}
 		lastSuccessfulMatchState = getState();
 		return super.matchWildcard();
 	}
+
+	/** Stop recording the ATN state matching each token, when nobody will ask */
+	public void disableTokenStateTracking() {
+		tokenIndexToState = null;
+	}
+
+	/** The grammar ATN state that matched {@code t}, or
+	 *  {@link ATNState#INVALID_STATE_NUMBER} if it wasn't matched by the parser.
+	 */
+	public int getATNStateForToken(Token t) {
+		int i = t.getTokenIndex();
+		if ( tokenIndexToState==null || i<0 || i>=tokenIndexToState.length ) {
+			return ATNState.INVALID_STATE_NUMBER;
+		}
+		return tokenIndexToState[i];
+	}
+
+	protected void setATNStateForToken(Token t, int atnState) {
+		int i = t.getTokenIndex();
+		if ( tokenIndexToState==null || i<0 ) { // conjured up by error recovery
+			return;
+		}
+		if ( i>=tokenIndexToState.length ) {
+			int[] bigger = newTokenIndexToState(Math.max(i+1, tokenIndexToState.length*2));
+			System.arraycopy(tokenIndexToState, 0, bigger, 0, tokenIndexToState.length);
+			tokenIndexToState = bigger;
+		}
+		tokenIndexToState[i] = atnState;
+	}
+
+	private static int[] newTokenIndexToState(int size) {
+		int[] states = new int[size];
+		Arrays.fill(states, ATNState.INVALID_STATE_NUMBER);
+		return states;
+	}
 }
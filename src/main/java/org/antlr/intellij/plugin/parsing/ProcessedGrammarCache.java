@@ -0,0 +1,124 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** The last grammars processed for each file, with the {@link GrammarFingerprint}
+ *  of the text they were processed from. Saving a grammar whose rules didn't
+ *  change (comments, formatting, or an undo) reuses them instead of running
+ *  the whole ANTLR analysis again, and the preview keeps its warmed-up DFA.
+ *
+ *  The ANTLR tool numbers ATN states, decisions and token types across the
+ *  whole grammar, so processed rules can't be spliced into a new grammar;
+ *  when any rule changes, everything is processed again.
+ */
+public class ProcessedGrammarCache {
+	public static final Logger LOG = Logger.getInstance("ProcessedGrammarCache");
+
+	private static class Entry {
+		final GrammarFingerprint fingerprint;
+		final String libDir;
+		/** The lexer used for a parser grammar; another instance means it changed */
+		final WeakReference<LexerGrammar> lexer;
+		/** Modification stamps of imported grammars */
+		final Map<String, Long> importStamps;
+		final SoftReference<Grammar[]> grammars;
+
+		Entry(GrammarFingerprint fingerprint, String libDir, LexerGrammar lexer,
+			  Map<String, Long> importStamps, Grammar[] grammars) {
+			this.fingerprint = fingerprint;
+			this.libDir = libDir;
+			this.lexer = lexer!=null ? new WeakReference<>(lexer) : null;
+			this.importStamps = importStamps;
+			this.grammars = new SoftReference<>(grammars);
+		}
+	}
+
+	/** Like the analyses these grammars come from, keep only a few, and softly */
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size()>GrammarAnalysisService.MAX_ENTRIES;
+		}
+	};
+
+	public static ProcessedGrammarCache getInstance(Project project) {
+		return ServiceManager.getService(project, ProcessedGrammarCache.class);
+	}
+
+	/** The grammars processed from {@code grammarFile} last time, if they would
+	 *  be the same as processing the grammar with {@code fingerprint} now.
+	 */
+	@Nullable
+	public Grammar[] get(VirtualFile grammarFile, GrammarFingerprint fingerprint, String libDir,
+						 @Nullable LexerGrammar lexer) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(grammarFile.getPath());
+		}
+		if ( entry==null ) {
+			return null;
+		}
+		if ( !entry.fingerprint.sameHeader(fingerprint) ) {
+			LOG.info("reprocessing "+grammarFile.getName()+": header changed");
+			return null;
+		}
+		Set<String> changedRules = fingerprint.getChangedRules(entry.fingerprint);
+		if ( !changedRules.isEmpty() ) {
+			LOG.info("reprocessing "+grammarFile.getName()+": rules changed "+changedRules);
+			return null;
+		}
+		LexerGrammar entryLexer = entry.lexer!=null ? entry.lexer.get() : null;
+		if ( entryLexer!=lexer || !Objects.equals(entry.libDir, libDir) ) {
+			return null;
+		}
+		for (Map.Entry<String, Long> stamp : entry.importStamps.entrySet()) {
+			VirtualFile file = LocalFileSystem.getInstance().findFileByPath(stamp.getKey());
+			if ( file==null || GrammarAnalysisService.getModificationStamp(file)!=stamp.getValue() ) {
+				return null;
+			}
+		}
+		return entry.grammars.get();
+	}
+
+	/** Remember grammars successfully processed from {@code grammarFile} */
+	public void put(VirtualFile grammarFile, GrammarFingerprint fingerprint, String libDir,
+					@Nullable LexerGrammar lexer, Grammar[] grammars) {
+		Map<String, Long> importStamps = new HashMap<>();
+		Grammar main = grammars[1]!=null ? grammars[1] : grammars[0];
+		List<Grammar> imports = main.getAllImportedGrammars();
+		if ( imports!=null ) {
+			for (Grammar imported : imports) {
+				VirtualFile file = imported.fileName!=null ? LocalFileSystem.getInstance().findFileByPath(imported.fileName) : null;
+				if ( file==null ) {
+					return; // can't tell when it changes
+				}
+				importStamps.put(file.getPath(), GrammarAnalysisService.getModificationStamp(file));
+			}
+		}
+		synchronized (entries) {
+			entries.put(grammarFile.getPath(), new Entry(fingerprint, libDir, lexer, importStamps, grammars));
+		}
+	}
+
+	public void invalidate(String grammarFileName) {
+		synchronized (entries) {
+			entries.remove(grammarFileName);
+		}
+	}
+}
@@ -8,46 +8,53 @@ import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import org.antlr.intellij.adaptor.lexer.RuleIElementType;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
-import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
 import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarProperties;
-import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
-import org.antlr.intellij.plugin.preview.PreviewState;
 import org.antlr.intellij.plugin.psi.AtAction;
-import org.antlr.intellij.plugin.psi.GrammarSpecNode;
+import org.antlr.intellij.plugin.psi.GrammarHeader;
+import org.antlr.intellij.plugin.validation.GrammarIssue;
 import org.antlr.v4.Tool;
+import org.antlr.v4.codegen.CodeGenPipeline;
 import org.antlr.v4.codegen.CodeGenerator;
 import org.antlr.v4.runtime.misc.Utils;
+import org.antlr.v4.tool.ANTLRToolListener;
+import org.antlr.v4.tool.ErrorType;
 import org.antlr.v4.tool.Grammar;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.stringtemplate.v4.misc.Misc;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.regex.Pattern;
 
-import static com.intellij.psi.util.PsiTreeUtil.getChildOfType;
 import static org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore.getGrammarProperties;
-import static org.antlr.intellij.plugin.psi.MyPsiUtils.findChildrenOfType;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
-// learned how to do from Grammar-Kit by Gregory Shrago
-public class RunANTLROnGrammarFile extends Task.Modal {
+/** Generate the recognizer of a grammar in the background. A generation
+ *  superseded by a newer one for the same grammar can be {@link #cancel()}ed,
+ *  see {@link ANTLRv4PluginController#runANTLRTool(RunANTLROnGrammarFile)}.
+ *
+ *  Learned how to do from Grammar-Kit by Gregory Shrago.
+ */
+public class RunANTLROnGrammarFile extends Task.Backgroundable {
 	public static final Logger LOG = Logger.getInstance("RunANTLROnGrammarFile");
 	public static final String OUTPUT_DIR_NAME = "gen" ;
 	public static final String groupDisplayId = "ANTLR 4 Parser Generation";
@@ -58,6 +65,9 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 	private final Project project;
 	private final boolean forceGeneration;
 
+	private volatile boolean cancelled = false;
+	private volatile ProgressIndicator indicator;
+
 	public RunANTLROnGrammarFile(VirtualFile grammarFile,
 								 @Nullable final Project project,
 								 @NotNull final String title,
@@ -72,88 +82,128 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 
 	@Override
 	public void run(@NotNull ProgressIndicator indicator) {
+		this.indicator = indicator;
+		if ( cancelled ) { // cancelled while waiting for its turn
+			indicator.cancel();
+		}
+		indicator.checkCanceled();
 		indicator.setIndeterminate(true);
 		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
 		boolean autogen = grammarProperties.shouldAutoGenerateParser();
-		if ( forceGeneration || (autogen && isGrammarStale(grammarProperties)) ) {
-			ReadAction.run(() -> antlr(grammarFile));
+		// most likely already analyzed for the annotator or the preview
+		GrammarAnalysis analysis = analyze(project, grammarFile);
+		if ( forceGeneration || autogen ) {
+			List<String> args = getANTLRArgsAsList(project, grammarFile);
+			List<GrammarAnalysis> analyses = addLexerAnalysis(project, grammarFile, args, analysis);
+			String key = nonBlockingRead(() -> GenerationCache.computeKey(args, analyses));
+			if ( forceGeneration || isGrammarStale(key) ) {
+				antlr(args, analyses, key);
+				return;
+			}
 		}
-		else {
+		// is lexer file? gen .tokens file no matter what as tokens might have changed;
+		// a parser that feeds off of that file will need to see the changes.
+		Grammar g = analysis.getGrammar();
+		if ( g!=null && g.isLexer() && !analysis.hasErrors() ) {
+			ConsoleView console = ANTLRv4PluginController.getInstance(project).getConsole();
+			generate((DiffAwareTool) g.tool, console, () -> CodeGenerator.create(g).writeVocabFile());
+		}
+	}
+
+	@Override
+	public void onFinished() {
+		if ( project!=null && !project.isDisposed() ) {
 			ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
-			final PreviewState previewState = controller.getPreviewState(grammarFile);
-			// is lexer file? gen .tokens file no matter what as tokens might have changed;
-			// a parser that feeds off of that file will need to see the changes.
-			if ( previewState.g==null && previewState.lg!=null) {
-				Grammar g = previewState.lg;
-				String language = g.getOptionString(ANTLRv4GrammarProperties.PROP_LANGUAGE);
-				Tool tool = ParsingUtils.createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile));
-				CodeGenerator gen = CodeGenerator.create(tool, g, language);
-				gen.writeVocabFile();
+			if ( controller!=null ) {
+				controller.generationFinished(this);
 			}
 		}
 	}
 
-	// TODO: lots of duplication with antlr() function.
-	private boolean isGrammarStale(ANTLRv4GrammarProperties grammarProperties) {
-		String sourcePath = grammarProperties.resolveLibDir(project, getParentDir(grammarFile));
-		String fullyQualifiedInputFileName = sourcePath+File.separator+grammarFile.getName();
-
-		ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
-		final PreviewState previewState = controller.getPreviewState(grammarFile);
-		Grammar g = previewState.getMainGrammar();
-		// Grammar should be updated in the preview state before calling this function
-		if ( g==null ) {
-			return false;
+	/** Stop the generation, or don't start it if it's still queued */
+	public void cancel() {
+		cancelled = true;
+		ProgressIndicator indicator = this.indicator;
+		if ( indicator!=null ) {
+			indicator.cancel();
 		}
+	}
 
-		String language = g.getOptionString(ANTLRv4GrammarProperties.PROP_LANGUAGE);
-		CodeGenerator generator = CodeGenerator.create(null, g, language);
-		String recognizerFileName = generator.getRecognizerFileName();
-
-		VirtualFile contentRoot = getContentRoot(project, grammarFile);
-		String package_ = grammarProperties.getPackage();
-		String outputDirName = grammarProperties.resolveOutputDirName(project, contentRoot, package_);
-		String fullyQualifiedOutputFileName = outputDirName+File.separator+recognizerFileName;
+	public VirtualFile getGrammarFile() {
+		return grammarFile;
+	}
 
-		File inF = new File(fullyQualifiedInputFileName);
-		File outF = new File(fullyQualifiedOutputFileName);
-		boolean stale = inF.lastModified()>outF.lastModified();
-		LOG.info((!stale ? "not" : "") + "stale: " + fullyQualifiedInputFileName + " -> " + fullyQualifiedOutputFileName);
+	/** Was the grammar changed, or its imports, its lexer or the tool arguments,
+	 *  since code was generated for it? Timestamps aren't enough: a checkout
+	 *  touches files that didn't change and the arguments aren't in any file.
+	 */
+	private boolean isGrammarStale(String key) {
+		boolean stale = !GenerationCache.getInstance(project).isUpToDate(grammarFile.getPath(), key);
+		LOG.info((!stale ? "not" : "") + "stale: " + grammarFile.getPath());
 		return stale;
 	}
 
-	/** Run ANTLR tool on file according to preferences in intellij for this file.
-	 *  Returns set of generated files or empty set if error.
- 	 */
-	private void antlr(VirtualFile vfile) {
-		if ( vfile==null ) return;
-
-		LOG.info("antlr(\""+vfile.getPath()+"\")");
-		List<String> args = getANTLRArgsAsList(project, vfile);
-
-		String sourcePath = getParentDir(vfile);
-		String fullyQualifiedInputFileName = sourcePath+File.separator+vfile.getName();
+	/** Add the grammar file to {@code args} and, if there's a lexer next to
+	 *  it, the lexer too, as the grammar surely uses it if it exists. Returns
+	 *  the analyses to generate code from, lexer first like the tool sorts them.
+	 */
+	static List<GrammarAnalysis> addLexerAnalysis(Project project, VirtualFile grammarFile,
+												  List<String> args, GrammarAnalysis analysis) {
+		String sourcePath = getParentDir(grammarFile);
+		String fullyQualifiedInputFileName = sourcePath+File.separator+grammarFile.getName();
 		args.add(fullyQualifiedInputFileName); // add grammar file last
 
+		List<GrammarAnalysis> analyses = new ArrayList<>();
 		String lexerGrammarFileName = ParsingUtils.getLexerNameFromParserFileName(fullyQualifiedInputFileName);
-		if ( new File(lexerGrammarFileName).exists() ) {
-			// build the lexer too as the grammar surely uses it if it exists
+		VirtualFile lexerGrammarFile = LocalFileSystem.getInstance().findFileByIoFile(new File(lexerGrammarFileName));
+		if ( lexerGrammarFile!=null && lexerGrammarFile.exists() ) {
 			args.add(lexerGrammarFileName);
+			analyses.add(analyze(project, lexerGrammarFile));
 		}
+		analyses.add(analysis);
+		return analyses;
+	}
 
+	/** Run ANTLR tool on file according to preferences in intellij for this file.
+	 *  Code is generated from the shared analyses of the grammars, which were
+	 *  done with the same arguments, instead of running the whole tool again.
+	 *  Code is generated without a read action so that the editor isn't
+	 *  blocked meanwhile. A newer generation cancels it before the next
+	 *  generated file, see {@link DiffAwareTool#getOutputFileWriter}. What was
+	 *  generated is recorded under {@code key} in the {@link GenerationCache}.
+ 	 */
+	private void antlr(List<String> args, List<GrammarAnalysis> analyses, String key) {
+		LOG.info("antlr(\""+grammarFile.getPath()+"\")");
 		LOG.info("args: " + Utils.join(args.iterator(), " "));
 
-		Tool antlr = new Tool(args.toArray(new String[args.size()]));
-
 		ConsoleView console = ANTLRv4PluginController.getInstance(project).getConsole();
 		String timeStamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Calendar.getInstance().getTime());
 		console.print(timeStamp+": antlr4 "+Misc.join(args.iterator(), " ")+"\n", ConsoleViewContentType.SYSTEM_OUTPUT);
-		antlr.removeListeners();
-		RunANTLRListener listener = new RunANTLRListener(antlr, console);
-		antlr.addListener(listener);
 
+		GenerationCache generationCache = GenerationCache.getInstance(project);
+		generationCache.invalidate(grammarFile.getPath());
+		boolean hasOutput = false;
+		boolean hasErrors = false;
+		List<File> outputFiles = new ArrayList<>();
 		try {
-			antlr.processGrammarsOnCommandLine();
+			for (GrammarAnalysis a : analyses) { // lexer first, like the tool sorts them
+				ProgressManager.checkCanceled();
+				if ( reportErrors(a, console) ) {
+					hasOutput = true;
+					hasErrors = true;
+					break; // like the tool, don't generate anything if a grammar has errors
+				}
+				hasOutput |= generate(a, console);
+				DiffAwareTool tool = (DiffAwareTool) a.getGrammar().tool;
+				outputFiles.addAll(tool.getWrittenFiles());
+				outputFiles.addAll(tool.getUnchangedFiles());
+			}
+			if ( !hasErrors ) {
+				generationCache.generated(grammarFile.getPath(), key, outputFiles);
+			}
+		}
+		catch (ProcessCanceledException e) {
+			throw e; // a newer generation is coming
 		}
 		catch (Throwable e) {
 			StringWriter sw = new StringWriter();
@@ -162,19 +212,124 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 			String msg = sw.toString();
 			Notification notification =
 				new Notification(groupDisplayId,
-					"can't generate parser for " + vfile.getName(),
+					"can't generate parser for " + grammarFile.getName(),
 					e.toString(),
 					NotificationType.INFORMATION);
 			Notifications.Bus.notify(notification, project);
 			console.print(timeStamp + ": antlr4 " + msg + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
-			listener.hasOutput = true; // show console below
+			hasOutput = true; // show console below
 		}
 
-		if ( listener.hasOutput ) {
+		if ( hasOutput ) {
 			ANTLRv4PluginController.showConsoleWindow(project);
 		}
 	}
 
+	/** Analyze {@code grammarFile}, or get its up-to-date analysis, see {@link #nonBlockingRead} */
+	static GrammarAnalysis analyze(Project project, VirtualFile grammarFile) {
+		return nonBlockingRead(() -> GrammarAnalysisService.getInstance(project).analyze(grammarFile));
+	}
+
+	/** Run {@code computation} in a read action that gives way to write
+	 *  actions: typing in the editor cancels it the next time it checks for
+	 *  cancellation, and it starts over once the document is updated. The
+	 *  analysis checks as the tool goes through rules and decisions, see
+	 *  {@link DiffAwareTool#log}. On the EDT, as in tests, it's a plain read action.
+	 */
+	static <T> T nonBlockingRead(Computable<T> computation) {
+		if ( ApplicationManager.getApplication().isDispatchThread() ) {
+			return ReadAction.compute(computation::compute);
+		}
+		return ReadAction.nonBlocking(computation::compute).executeSynchronously();
+	}
+
+	/** Print the errors preventing code generation from {@code analysis}, if any */
+	static boolean reportErrors(GrammarAnalysis analysis, ConsoleView console) {
+		List<String> pluginErrors = getPluginErrors(analysis);
+		if ( analysis.getGrammar()!=null && analysis.getErrorMessages().isEmpty() && pluginErrors.isEmpty() ) {
+			return false;
+		}
+		print(analysis.getWarningMessages(), console, ConsoleViewContentType.NORMAL_OUTPUT);
+		print(pluginErrors, console, ConsoleViewContentType.ERROR_OUTPUT);
+		print(analysis.getErrorMessages(), console, ConsoleViewContentType.ERROR_OUTPUT);
+		return true;
+	}
+
+	/** Generate the code of an analyzed grammar without errors. Returns
+	 *  whether anything worth showing the console for was printed.
+	 */
+	static boolean generate(GrammarAnalysis analysis, ConsoleView console) {
+		boolean hasOutput = print(analysis.getWarningMessages(), console, ConsoleViewContentType.NORMAL_OUTPUT);
+		Grammar g = analysis.getGrammar();
+		hasOutput |= generate((DiffAwareTool) g.tool, console, () -> {
+			if ( g.isCombined() ) {
+				generateRecognizer(g.getImplicitLexer());
+			}
+			generateRecognizer(g);
+		});
+		return hasOutput;
+	}
+
+	/** Generate the code of an analyzed grammar, the way the tool does in
+	 *  processNonCombinedGrammar() when asked to generate code.
+	 */
+	private static void generateRecognizer(Grammar g) {
+		try (Writer writer = g.tool.getOutputFileWriter(g, g.name+".interp")) {
+			writer.write(Tool.generateInterpreterData(g));
+		}
+		catch (IOException ioe) {
+			g.tool.errMgr.toolError(ErrorType.CANNOT_WRITE_FILE, ioe);
+		}
+		new CodeGenPipeline(g, CodeGenerator.create(g)).process();
+	}
+
+	/** Run {@code generation} with the tool of a shared analysis, reporting
+	 *  to the console instead of to the analysis, then list the files that
+	 *  were actually written. Returns whether the tool reported anything.
+	 */
+	private static boolean generate(DiffAwareTool tool, ConsoleView console, Runnable generation) {
+		synchronized (tool) {
+			List<ANTLRToolListener> analysisListeners = new ArrayList<>(tool.getListeners());
+			RunANTLRListener listener = new RunANTLRListener(tool, console);
+			tool.removeListeners();
+			tool.addListener(listener);
+			tool.startGeneration();
+			try {
+				generation.run();
+			}
+			finally {
+				tool.removeListeners();
+				analysisListeners.forEach(tool::addListener);
+			}
+			for (File f : tool.getWrittenFiles()) {
+				console.print("wrote "+f.getPath()+"\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+			}
+			int unchanged = tool.getUnchangedFiles().size();
+			if ( unchanged>0 ) {
+				console.print(unchanged+" generated file(s) unchanged\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+			}
+			return listener.hasOutput;
+		}
+	}
+
+	/** Issues found by the plugin rather than the tool, like an unknown target language */
+	private static List<String> getPluginErrors(GrammarAnalysis analysis) {
+		List<String> errors = new ArrayList<>();
+		for (GrammarIssue issue : analysis.getIssues()) {
+			if ( issue.getMsg()==null ) {
+				errors.add(issue.getAnnotation());
+			}
+		}
+		return errors;
+	}
+
+	private static boolean print(List<String> messages, ConsoleView console, ConsoleViewContentType type) {
+		for (String msg : messages) {
+			console.print(msg+"\n", type);
+		}
+		return !messages.isEmpty();
+	}
+
 	public static List<String> getANTLRArgsAsList(Project project, VirtualFile vfile) {
 		Map<String,String> argMap = getANTLRArgs(project, vfile);
 		List<String> args = new ArrayList<>();
@@ -242,21 +397,9 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 	private static boolean hasPackageDeclarationInHeader(Project project, VirtualFile grammarFile) {
 		return ApplicationManager.getApplication().runReadAction((Computable<Boolean>) () -> {
 			PsiFile file = PsiManager.getInstance(project).findFile(grammarFile);
-			GrammarSpecNode grammarSpecNode = getChildOfType(file, GrammarSpecNode.class);
-
-			if ( grammarSpecNode != null ) {
-				RuleIElementType prequelElementType = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_prequelConstruct);
-
-				for ( PsiElement prequelConstruct : findChildrenOfType(grammarSpecNode, prequelElementType) ) {
-					AtAction atAction = getChildOfType(prequelConstruct, AtAction.class);
+			AtAction header = file!=null ? GrammarHeader.getInstance(file).findAction("header") : null;
 
-					if ( atAction!=null && atAction.getIdText().equals("header") ) {
-						return PACKAGE_DEFINITION_REGEX.matcher(atAction.getActionBlockText()).find();
-					}
-				}
-			}
-
-			return false;
+			return header!=null && PACKAGE_DEFINITION_REGEX.matcher(header.getActionBlockText()).find();
 		});
 	}
 
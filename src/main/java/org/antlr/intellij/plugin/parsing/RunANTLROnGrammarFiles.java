@@ -0,0 +1,176 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.v4.Tool;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.ast.GrammarAST;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Generate the recognizers of many grammars in one background task. Grammars
+ *  are generated after the grammars they depend on (tokenVocab, the implicit
+ *  XLexer.g4 of an XParser.g4, and imports), so lexers come first; grammars
+ *  that don't depend on each other are generated concurrently on a bounded pool.
+ *  It's queued with the generations on save, see
+ *  {@link ANTLRv4PluginController#runANTLRTool(RunANTLROnGrammarFiles)}, and
+ *  records what it generates in the {@link GenerationCache} like them.
+ */
+public class RunANTLROnGrammarFiles extends Task.Backgroundable {
+	public static final Logger LOG = Logger.getInstance("RunANTLROnGrammarFiles");
+
+	/** Leave a core for the UI */
+	private static final int MAX_WORKERS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()-1));
+
+	private final List<VirtualFile> grammarFiles;
+
+	public RunANTLROnGrammarFiles(Project project, List<VirtualFile> grammarFiles) {
+		super(project, "Generating "+grammarFiles.size()+" ANTLR recognizers", true);
+		this.grammarFiles = grammarFiles;
+	}
+
+	public List<VirtualFile> getGrammarFiles() {
+		return grammarFiles;
+	}
+
+	@Override
+	public void run(@NotNull ProgressIndicator indicator) {
+		indicator.setIndeterminate(true);
+		indicator.setText("Ordering grammars");
+		Map<String, VirtualFile> filesByPath = new LinkedHashMap<>();
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		for (VirtualFile grammarFile : grammarFiles) {
+			indicator.checkCanceled();
+			filesByPath.put(grammarFile.getPath(), grammarFile);
+			graph.setDependencies(grammarFile.getPath(), RunANTLROnGrammarFile.nonBlockingRead(() -> getDependencies(grammarFile)));
+		}
+		List<List<String>> layers = graph.getLayers(filesByPath.keySet());
+
+		ConsoleView console = ANTLRv4PluginController.getInstance(myProject).getConsole();
+		String timeStamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(Calendar.getInstance().getTime());
+		console.print(timeStamp+": generating "+filesByPath.size()+" grammars\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+
+		indicator.setIndeterminate(false);
+		AtomicInteger done = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		AtomicBoolean hasOutput = new AtomicBoolean();
+		Queue<File> writtenFiles = new ConcurrentLinkedQueue<>();
+		GenerationCache generationCache = GenerationCache.getInstance(myProject);
+		ForkJoinPool pool = new ForkJoinPool(MAX_WORKERS);
+		try {
+			for (List<String> layer : layers) {
+				// the next layer may need the .tokens files written by this one
+				List<ForkJoinTask<?>> tasks = new ArrayList<>(layer.size());
+				for (String path : layer) {
+					VirtualFile grammarFile = filesByPath.get(path);
+					tasks.add(pool.submit(() -> ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+						indicator.checkCanceled();
+						indicator.setText2(grammarFile.getName());
+						GrammarAnalysis analysis = RunANTLROnGrammarFile.analyze(myProject, grammarFile);
+						// same key as when generated on save, so that saving doesn't generate it again
+						List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(myProject, grammarFile);
+						List<GrammarAnalysis> analyses = RunANTLROnGrammarFile.addLexerAnalysis(myProject, grammarFile, args, analysis);
+						String key = RunANTLROnGrammarFile.nonBlockingRead(() -> GenerationCache.computeKey(args, analyses));
+						generationCache.invalidate(path);
+						if ( RunANTLROnGrammarFile.reportErrors(analysis, console) ) {
+							hasOutput.set(true);
+							failed.incrementAndGet();
+						}
+						else {
+							if ( RunANTLROnGrammarFile.generate(analysis, console) ) {
+								hasOutput.set(true);
+							}
+							DiffAwareTool tool = (DiffAwareTool) analysis.getGrammar().tool;
+							writtenFiles.addAll(tool.getWrittenFiles());
+							List<File> outputFiles = new ArrayList<>(tool.getWrittenFiles());
+							outputFiles.addAll(tool.getUnchangedFiles());
+							generationCache.generated(path, key, outputFiles);
+						}
+						indicator.setFraction(done.incrementAndGet() / (double) filesByPath.size());
+					}, indicator)));
+				}
+				for (ForkJoinTask<?> task : tasks) {
+					task.join();
+				}
+			}
+		}
+		catch (ProcessCanceledException e) {
+			console.print("generation cancelled\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+		}
+		finally {
+			pool.shutdownNow();
+			// refresh from disk to see new files
+			LocalFileSystem.getInstance().refreshIoFiles(writtenFiles, true, false, null);
+		}
+
+		if ( hasOutput.get() ) {
+			ANTLRv4PluginController.showConsoleWindow(myProject);
+		}
+		String content = failed.get()==0 ? writtenFiles.size()+" files written" : failed.get()+" grammars have errors";
+		Notification notification =
+			new Notification(RunANTLROnGrammarFile.groupDisplayId,
+							 (done.get()-failed.get())+" of "+filesByPath.size()+" recognizers generated",
+							 content,
+							 failed.get()==0 ? NotificationType.INFORMATION : NotificationType.WARNING);
+		Notifications.Bus.notify(notification, myProject);
+	}
+
+	/** What the grammar uses, from its header only: the lexer grammar it
+	 *  gets its vocabulary from and the grammars it imports. Imports are
+	 *  looked up with the same arguments, hence lib directory, as when the
+	 *  grammar is analyzed, see {@link GrammarAnalysisService}.
+	 */
+	private List<String> getDependencies(VirtualFile grammarFile) {
+		List<String> dependencies = new ArrayList<>();
+		List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(myProject, grammarFile);
+		Tool antlr = new Tool(args.toArray(new String[0]));
+		antlr.removeListeners(); // errors are reported when the grammar is analyzed
+		if ( !args.contains("-lib") ) {
+			antlr.libDirectory = grammarFile.getParent().getPath();
+		}
+		GrammarRootAST ast = ParsingUtils.parseGrammar(antlr, grammarFile);
+		if ( ast==null ) {
+			return dependencies;
+		}
+		Grammar g = antlr.createGrammar(ast);
+		g.fileName = grammarFile.getPath();
+		if ( g.getType()==ANTLRParser.PARSER ) {
+			dependencies.add(ParsingUtils.getLexerGrammarFileName(g));
+		}
+		GrammarAST imports = (GrammarAST) ast.getFirstChildWithType(ANTLRParser.IMPORT);
+		if ( imports!=null ) {
+			for (int i = 0; i<imports.getChildCount(); i++) {
+				GrammarAST imported = (GrammarAST) imports.getChild(i);
+				// import X or import Y=X
+				String name = imported.getType()==ANTLRParser.ASSIGN ? imported.getChild(1).getText() : imported.getText();
+				File importedFile = antlr.getImportedGrammarFile(g, name+".g4");
+				if ( importedFile!=null ) {
+					dependencies.add(importedFile.getAbsolutePath());
+				}
+			}
+		}
+		return dependencies;
+	}
+}
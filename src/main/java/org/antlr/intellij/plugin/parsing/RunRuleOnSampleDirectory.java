@@ -0,0 +1,195 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.preview.InputPanel;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore.getGrammarProperties;
+
+/** Parse every file of a directory (recursively) with a start rule, the same
+ *  way the preview window does, and report a {@link SampleResult} per file.
+ *  Files are parsed concurrently on a bounded pool; all the parsers share the
+ *  ATN and DFA of the grammar.
+ */
+public class RunRuleOnSampleDirectory extends Task.Backgroundable {
+	public static final Logger LOG = Logger.getInstance("RunRuleOnSampleDirectory");
+
+	/** Leave a core for the UI */
+	private static final int MAX_WORKERS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()-1));
+
+	private final VirtualFile grammarFile;
+	private final String startRuleName;
+	private final VirtualFile sampleDirectory;
+	/** Called from worker threads as soon as each file has been parsed */
+	private final Consumer<SampleResult> resultConsumer;
+
+	public static final String PASS = "pass";
+	public static final String FAIL = "fail";
+
+	public static class SampleResult {
+		public final VirtualFile file;
+		public final String status;
+		public final int numberOfErrors;
+		public final int numberOfTokens;
+		public final double parseTimeMS;
+		/** Decision where the parser spent the most time predicting, e.g. "expr (3)" */
+		public final String worstDecision;
+
+		public SampleResult(VirtualFile file, String status, int numberOfErrors, int numberOfTokens,
+							double parseTimeMS, String worstDecision) {
+			this.file = file;
+			this.status = status;
+			this.numberOfErrors = numberOfErrors;
+			this.numberOfTokens = numberOfTokens;
+			this.parseTimeMS = parseTimeMS;
+			this.worstDecision = worstDecision;
+		}
+
+		public boolean passed() {
+			return PASS.equals(status);
+		}
+	}
+
+	public RunRuleOnSampleDirectory(Project project,
+									VirtualFile grammarFile,
+									String startRuleName,
+									VirtualFile sampleDirectory,
+									Consumer<SampleResult> resultConsumer) {
+		super(project, "Testing rule "+startRuleName+" on "+sampleDirectory.getName(), true);
+		this.grammarFile = grammarFile;
+		this.startRuleName = startRuleName;
+		this.sampleDirectory = sampleDirectory;
+		this.resultConsumer = resultConsumer;
+	}
+
+	@Override
+	public void run(@NotNull ProgressIndicator indicator) {
+		indicator.setIndeterminate(true);
+		indicator.setText("Loading "+grammarFile.getName());
+		Grammar[] grammars = ReadAction.compute(() -> ParsingUtils.loadGrammars(grammarFile, myProject));
+		if ( grammars==null || grammars[0]==null || grammars[1]==null ) {
+			LOG.info("can't test "+startRuleName+": bad lexer or parser grammar "+grammarFile.getPath());
+			return; // errors are already in the tool output window
+		}
+		LexerGrammar lg = (LexerGrammar) grammars[0];
+		Grammar g = grammars[1];
+		if ( lg==ParsingUtils.BAD_LEXER_GRAMMAR || g.getRule(startRuleName)==null ) {
+			return;
+		}
+
+		List<VirtualFile> samples = new ArrayList<>();
+		VfsUtilCore.iterateChildrenRecursively(sampleDirectory, null, f -> {
+			if ( !f.isDirectory() ) samples.add(f);
+			return true;
+		});
+
+		LexerATNCache lexerATNCache = new LexerATNCache(lg, getGrammarProperties(myProject, grammarFile).getCaseChangingStrategy());
+		ParserATNCache parserATNCache = new ParserATNCache(g);
+
+		indicator.setIndeterminate(false);
+		AtomicInteger done = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(MAX_WORKERS);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(samples.size());
+			for (VirtualFile sample : samples) {
+				tasks.add(pool.submit(() -> ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+					indicator.checkCanceled();
+					SampleResult result;
+					try {
+						result = parseSample(g, lg, sample, lexerATNCache, parserATNCache);
+					}
+					catch (ProcessCanceledException e) {
+						throw e;
+					}
+					catch (RuntimeException e) {
+						LOG.warn("can't parse "+sample.getPath(), e);
+						result = new SampleResult(sample, "interpreter failed: "+e, 0, 0, 0, "");
+					}
+					resultConsumer.accept(result);
+					indicator.setFraction(done.incrementAndGet() / (double) samples.size());
+					indicator.setText2(sample.getName());
+				}, indicator)));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+		catch (ProcessCanceledException e) {
+			// user cancelled, keep what we have
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private SampleResult parseSample(Grammar g, LexerGrammar lg, VirtualFile sample,
+									 LexerATNCache lexerATNCache, ParserATNCache parserATNCache) {
+		if ( InputPanel.isLargeInputFile(sample) ) {
+			return new SampleResult(sample, "skipped, too large to preview", 0, 0, 0, "");
+		}
+		String text;
+		try {
+			text = VfsUtilCore.loadText(sample);
+		}
+		catch (IOException e) {
+			return new SampleResult(sample, "can't read: "+e.getMessage(), 0, 0, 0, "");
+		}
+
+		long start = System.nanoTime();
+		ParsingResult result = ParsingUtils.parseSampleText(g, lg, startRuleName, grammarFile, sample, text,
+															 myProject, lexerATNCache, parserATNCache);
+		double parseTimeMS = (System.nanoTime()-start)/(1000.0*1000.0);
+		if ( result==null ) {
+			return new SampleResult(sample, FAIL, 0, 0, parseTimeMS, "");
+		}
+
+		int numberOfErrors = result.syntaxErrorListener.getSyntaxErrors().size();
+		String status;
+		if ( result.budgetExceededMessage!=null ) {
+			status = result.budgetExceededMessage;
+		}
+		else {
+			status = numberOfErrors==0 ? PASS : FAIL;
+		}
+		return new SampleResult(sample, status, numberOfErrors, result.parser.getInputStream().size(),
+								parseTimeMS, getWorstDecision(result));
+	}
+
+	private static String getWorstDecision(ParsingResult result) {
+		ParseInfo parseInfo = result.parser.getParseInfo();
+		if ( parseInfo==null ) {
+			return "";
+		}
+		DecisionInfo worst = null;
+		for (DecisionInfo decisionInfo : parseInfo.getDecisionInfo()) {
+			if ( worst==null || decisionInfo.timeInPrediction>worst.timeInPrediction ) {
+				worst = decisionInfo;
+			}
+		}
+		if ( worst==null || worst.invocations==0 ) {
+			return "";
+		}
+		int ruleIndex = result.parser.getATN().getDecisionState(worst.decision).ruleIndex;
+		return String.format("%s (%d)", result.parser.getRuleNames()[ruleIndex], worst.decision);
+	}
+}
@@ -5,6 +5,8 @@ import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenSource;
 
+import java.util.List;
+
 /** This TokenStream is just a {@link CommonTokenStream} that can be
  *  cut off at a particular index, such as the cursor in an IDE. I
  *  had to override more than I wanted to get this to work, but it seems okay.
@@ -20,6 +22,15 @@ public class TokenStreamSubset extends CommonTokenStream {
 		super(tokenSource);
 	}
 
+	/** Create a stream whose buffer is already filled with {@code tokens},
+	 *  which must end with EOF. The token source is never asked for more.
+	 */
+	public TokenStreamSubset(TokenSource tokenSource, List<Token> tokens) {
+		super(tokenSource);
+		this.tokens.addAll(tokens);
+		this.fetchedEOF = true;
+	}
+
 	public void setIndexOfLastToken(int indexOfLastToken) {
 //		System.out.println("setIndexOfLastToken("+indexOfLastToken+")");
 		if ( indexOfLastToken<0 ) {
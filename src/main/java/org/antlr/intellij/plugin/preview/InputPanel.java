@@ -20,6 +20,8 @@ import com.intellij.openapi.ui.ComponentWithBrowseButton;
 import com.intellij.openapi.ui.TextComponentAccessor;
 import com.intellij.openapi.ui.TextFieldWithBrowseButton;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.ui.JBColor;
@@ -28,6 +30,7 @@ import org.antlr.intellij.adaptor.parser.SyntaxError;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.Icons;
 import org.antlr.intellij.plugin.actions.MyActionUtils;
+import org.antlr.intellij.plugin.parsing.CappedSyntaxErrorListener;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
 import org.antlr.intellij.plugin.parsing.PreviewParser;
 import org.antlr.intellij.plugin.profiler.ProfilerPanel;
@@ -44,7 +47,10 @@ import org.antlr.v4.tool.ast.GrammarAST;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -60,6 +66,8 @@ public class InputPanel {
 	private static final int ERROR_LAYER = HighlighterLayer.ERROR;
 	private static final String missingStartRuleLabelText = "%s start rule: <select from navigator or grammar>";
 	private static final String startRuleLabelText = "%s start rule: %s";
+	/** Input files at least this big are parsed from disk instead of being loaded in an editor */
+	public static final long LARGE_INPUT_FILE_SIZE = 10 * 1024 * 1024;
 
 	private JRadioButton inputRadioButton;
 	private JRadioButton fileRadioButton;
@@ -89,6 +97,9 @@ public class InputPanel {
 
 	private final List<CaretListener> caretListeners = new ArrayList<>();
 
+	/** Errors listed in the console for a large input file, by line */
+	private List<SyntaxError> largeInputFileErrors = Collections.emptyList();
+
 	public InputPanel(final PreviewPanel previewPanel) {
 		WrappedFlowLayout layout = new WrappedFlowLayout(5, 0);
 		layout.setAlignment(FlowLayout.CENTER);
@@ -129,6 +140,15 @@ public class InputPanel {
 		resetStartRuleLabel();
 
 		editorMouseListener = new PreviewEditorMouseListener(this);
+
+		errorConsole.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if ( e.getClickCount()==2 ) {
+					showLargeInputFileErrorAt(errorConsole.viewToModel2D(e.getPoint()));
+				}
+			}
+		});
 	}
 
 	private void onFileChosen(VirtualFile chosenFile) {
@@ -149,6 +169,7 @@ public class InputPanel {
 
 		// wipe old and make new one
 		if ( previewState!=null ) {
+			previewState.largeInputFile = false;
 			releaseEditor(previewState);
 			createManualInputPreviewEditor(previewState);
 		}
@@ -187,6 +208,12 @@ public class InputPanel {
 			return;
 		}
 
+		if (isLargeInputFile(inputFile)) {
+			selectLargeInputFile(inputFile);
+			return;
+		}
+		previewState.largeInputFile = false;
+
 		Document inputDocument = FileDocumentManager.getInstance().getDocument(inputFile);
 
 		if (inputDocument == null) {
@@ -213,6 +240,39 @@ public class InputPanel {
 		previewPanel.updateParseTreeFromDoc(currentGrammarFile);
 	}
 
+	public static boolean isLargeInputFile(VirtualFile inputFile) {
+		return inputFile.isInLocalFileSystem() &&
+			   (inputFile.getLength()>=LARGE_INPUT_FILE_SIZE || FileUtilRt.isTooLarge(inputFile.getLength()));
+	}
+
+	/** Don't even try to load a huge file in an editor; it is parsed straight from disk */
+	private void selectLargeInputFile(VirtualFile inputFile) {
+		ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(previewPanel.project);
+
+		releaseEditor(previewState);
+		previewState.largeInputFile = true;
+
+		VirtualFile currentGrammarFile = controller != null ? controller.getCurrentGrammarFile() : null;
+		if (currentGrammarFile == null) {
+			return;
+		}
+
+		JTextArea message = new JTextArea(String.format(
+			"%s is too large to be shown in an editor (%s).\n\n" +
+			"It is parsed straight from disk without building the parse tree. " +
+			"Syntax errors are listed below, double-click one to see where it is. " +
+			"See the Profiler tab for statistics.",
+			inputFile.getName(), StringUtil.formatFileSize(inputFile.getLength())
+		));
+		message.setEditable(false);
+		message.setLineWrap(true);
+		message.setWrapStyleWord(true);
+		setEditorComponent(message);
+		clearErrorConsole();
+
+		previewPanel.updateParseTreeFromDoc(currentGrammarFile);
+	}
+
 	public Editor createPreviewEditor(final VirtualFile grammarFile, Document doc, boolean readOnly) {
 		LOG.info("createEditor: create new editor for "+grammarFile.getPath()+" "+previewPanel.project.getName());
 		final EditorFactory factory = EditorFactory.getInstance();
@@ -293,7 +353,7 @@ public class InputPanel {
 			return null;
 		}
 		Editor editor = previewState.getInputEditor();
-		if ( editor==null ) {
+		if ( editor==null && !previewState.largeInputFile ) {
 			createManualInputPreviewEditor(previewState); // ensure we always have an input window
 			editor = previewState.getInputEditor();
 		}
@@ -359,6 +419,10 @@ public class InputPanel {
 		errorConsole.insert(msg+'\n', errorConsole.getText().length());
 	}
 
+	public void displayMessageInParseErrorConsole(String msg) {
+		errorConsole.insert(msg+'\n', errorConsole.getText().length());
+	}
+
 	public void clearParseErrors() {
 		Editor editor = getInputEditor();
 		if ( editor==null ) return;
@@ -406,6 +470,10 @@ public class InputPanel {
 	 * to the preview input window.
 	 */
 	public void showParseErrors(final List<SyntaxError> errors) {
+		if ( previewState!=null && previewState.largeInputFile ) {
+			showLargeInputFileErrors(errors);
+			return;
+		}
 		if ( errors.size()==0 ) {
 			clearInputEditorHighlighters();
 			return;
@@ -416,6 +484,45 @@ public class InputPanel {
 		}
 	}
 
+	/**
+	 * There is no editor to annotate, so just list the first errors in the console
+	 */
+	private void showLargeInputFileErrors(List<SyntaxError> errors) {
+		clearErrorConsole();
+		largeInputFileErrors = errors;
+		int n = Math.min(errors.size(), ParsingUtils.MAX_LARGE_INPUT_FILE_ERRORS);
+		for (int i = 0; i<n; i++) {
+			displayErrorInParseErrorConsole(errors.get(i));
+		}
+		int errorCount = errors.size();
+		if ( previewState.parsingResult!=null &&
+			 previewState.parsingResult.syntaxErrorListener instanceof CappedSyntaxErrorListener ) {
+			errorCount = ((CappedSyntaxErrorListener) previewState.parsingResult.syntaxErrorListener).getErrorCount();
+		}
+		if ( errorCount>n ) {
+			errorConsole.append("... and "+(errorCount-n)+" more errors\n");
+		}
+	}
+
+	private void showLargeInputFileErrorAt(int consoleOffset) {
+		if ( previewState==null || !previewState.largeInputFile || previewState.parsingResult==null ) {
+			return;
+		}
+		int line;
+		try {
+			line = errorConsole.getLineOfOffset(consoleOffset);
+		}
+		catch (BadLocationException e) {
+			return;
+		}
+		if ( line>=Math.min(largeInputFileErrors.size(), ParsingUtils.MAX_LARGE_INPUT_FILE_ERRORS) ) {
+			return;
+		}
+		CharStream input = previewState.parsingResult.parser.getInputStream().getTokenSource().getInputStream();
+		LargeInputFileViewer.showErrorLocation(previewPanel.project, previewState.inputFile, input,
+											   largeInputFileErrors.get(line), errorConsole);
+	}
+
 	/**
 	 * Show token information if the ctrl-key is down and mouse movement occurs
 	 */
@@ -551,8 +658,8 @@ public class InputPanel {
 		}
 
 		PreviewParser parser = (PreviewParser) previewState.parsingResult.parser;
-		Integer atnState = parser.inputTokenToStateMap.get(tokenUnderCursor);
-		if ( atnState==null ) { // likely an error token
+		int atnState = parser.getATNStateForToken(tokenUnderCursor);
+		if ( atnState==ATNState.INVALID_STATE_NUMBER ) { // likely an error token
 			//LOG.error("no ATN state for input token " + tokenUnderCursor);
 			return;
 		}
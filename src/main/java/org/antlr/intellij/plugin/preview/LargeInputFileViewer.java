@@ -0,0 +1,115 @@
+package org.antlr.intellij.plugin.preview;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.*;
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopup;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.JBColor;
+import org.antlr.intellij.adaptor.parser.SyntaxError;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.LexerNoViableAltException;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.awt.*;
+
+/** Shows the lines surrounding a syntax error of a large input file in a
+ *  read-only popup, since there is no editor for such files in the preview.
+ *  Only the excerpt is read from the input stream.
+ */
+public class LargeInputFileViewer {
+	private static final int CONTEXT_LINES = 20;
+	/** Don't read forever if the file has (very) long lines */
+	private static final int MAX_CONTEXT_CHARS = 10_000;
+
+	public static void showErrorLocation(Project project, VirtualFile inputFile, CharStream input,
+										 SyntaxError e, Component owner) {
+		int a, b; // Start and stop index, in code points
+		RecognitionException cause = e.getException();
+		if ( cause instanceof LexerNoViableAltException ) {
+			a = ((LexerNoViableAltException) cause).getStartIndex();
+			b = a+1;
+		}
+		else {
+			Token offendingToken = e.getOffendingSymbol();
+			a = offendingToken.getStartIndex();
+			b = Math.max(a, offendingToken.getStopIndex()+1);
+		}
+
+		a = Math.min(a, input.size());
+		b = Math.min(b, input.size());
+
+		// Offsets in the document are in UTF-16 chars, without \r
+		String before = StringUtil.convertLineSeparators(
+			input.getText(Interval.of(Math.max(0, a-MAX_CONTEXT_CHARS), a-1))
+		);
+		String error = StringUtil.convertLineSeparators(input.getText(Interval.of(a, b-1)));
+		String after = StringUtil.convertLineSeparators(
+			input.getText(Interval.of(b, Math.min(input.size(), b+MAX_CONTEXT_CHARS)-1))
+		);
+
+		// Keep CONTEXT_LINES full lines before and after the error
+		int linesBefore = 0;
+		int from = before.length();
+		while ( from>0 && !(before.charAt(from-1)=='\n' && linesBefore==CONTEXT_LINES) ) {
+			if ( before.charAt(from-1)=='\n' ) linesBefore++;
+			from--;
+		}
+		before = before.substring(from);
+		int linesAfter = 0;
+		int to = 0;
+		while ( to<after.length() && !(after.charAt(to)=='\n' && linesAfter==CONTEXT_LINES) ) {
+			if ( after.charAt(to)=='\n' ) linesAfter++;
+			to++;
+		}
+		after = after.substring(0, to);
+
+		int errorStart = before.length();
+		int errorStop = errorStart+error.length();
+
+		EditorFactory factory = EditorFactory.getInstance();
+		Document doc = factory.createDocument(before+error+after);
+		doc.setReadOnly(true);
+		Editor viewer = factory.createViewer(doc, project);
+		viewer.getSettings().setLineNumbersShown(false);
+		viewer.getSettings().setWhitespacesShown(true);
+
+		TextAttributes attr = new TextAttributes();
+		attr.setForegroundColor(JBColor.RED);
+		attr.setEffectColor(JBColor.RED);
+		attr.setEffectType(EffectType.WAVE_UNDERSCORE);
+		errorStop = Math.min(Math.max(errorStop, errorStart+1), doc.getTextLength());
+		viewer.getMarkupModel().addRangeHighlighter(errorStart, errorStop,
+													HighlighterLayer.ERROR, attr,
+													HighlighterTargetArea.EXACT_RANGE);
+
+		int firstLine = e.getLine()-linesBefore;
+		int lastLine = e.getLine()+StringUtil.countNewLines(error)+linesAfter;
+		String title = String.format("%s, lines %d-%d: %s", inputFile.getName(), firstLine, lastLine,
+									 InputPanel.getErrorDisplayString(e));
+		JBPopup popup = JBPopupFactory.getInstance()
+				.createComponentPopupBuilder(viewer.getComponent(), viewer.getContentComponent())
+				.setTitle(StringUtil.shortenTextWithEllipsis(title, 150, 0))
+				.setResizable(true)
+				.setMovable(true)
+				.setRequestFocus(true)
+				.setMinSize(new Dimension(600, 300))
+				.createPopup();
+		Disposer.register(popup, () -> factory.releaseEditor(viewer));
+		popup.showInCenterOf(owner);
+
+		ApplicationManager.getApplication().invokeLater(() -> {
+			viewer.getCaretModel().moveToOffset(Math.min(errorStart, doc.getTextLength()));
+			viewer.getScrollingModel().scrollToCaret(ScrollType.CENTER);
+		});
+	}
+}
@@ -0,0 +1,165 @@
+package org.antlr.intellij.plugin.preview;
+
+import org.abego.treelayout.TreeForTreeLayout;
+import org.abego.treelayout.TreeLayout;
+import org.antlr.v4.runtime.tree.Tree;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Map;
+
+/** The node boxes of a laid out parse tree, flattened into arrays so that
+ *  painting a very large tree only walks the part that intersects the viewport.
+ *
+ *  Nodes are numbered breadth-first, so the children of node i are the
+ *  contiguous range firstChild[i]..firstChild[i+1]-1. Each node also knows the
+ *  bounds of its whole subtree, which makes the tree its own bounding volume
+ *  hierarchy: a subtree that doesn't intersect the clip is skipped without
+ *  looking at its nodes.
+ */
+public class ParseTreeLayoutIndex {
+	/** What to paint, in tree coordinates. Edges are all reported before boxes */
+	public interface Painter {
+		void edge(int parent, int child);
+		void box(int node);
+		/** Subtree too small on screen to be readable, paint it as a single block */
+		void collapsedSubtree(int node);
+	}
+
+	public final Tree[] nodes;
+	private final int[] firstChild;
+
+	private final double[] x;
+	private final double[] y;
+	private final double[] width;
+	private final double[] height;
+
+	// Subtree bounds; subtrees start at the top of their root node
+	private final double[] subtreeMinX;
+	private final double[] subtreeMaxX;
+	private final double[] subtreeMaxY;
+
+	/** Node indexes of boxes to paint, reused across paints (EDT only) */
+	private int[] boxesToPaint = new int[256];
+
+	public ParseTreeLayoutIndex(TreeLayout<Tree> layout) {
+		TreeForTreeLayout<Tree> tree = layout.getTree();
+		Map<Tree, Rectangle2D.Double> bounds = layout.getNodeBounds();
+		int n = bounds.size();
+
+		nodes = new Tree[n];
+		firstChild = new int[n+1];
+		int[] parent = new int[n];
+		nodes[0] = tree.getRoot();
+		parent[0] = -1;
+		int next = 1;
+		for (int i = 0; i<n; i++) {
+			firstChild[i] = next;
+			for (Tree child : tree.getChildren(nodes[i])) {
+				nodes[next] = child;
+				parent[next] = i;
+				next++;
+			}
+		}
+		firstChild[n] = next;
+
+		x = new double[n];
+		y = new double[n];
+		width = new double[n];
+		height = new double[n];
+		subtreeMinX = new double[n];
+		subtreeMaxX = new double[n];
+		subtreeMaxY = new double[n];
+		for (int i = 0; i<n; i++) {
+			Rectangle2D.Double box = bounds.get(nodes[i]);
+			x[i] = box.x;
+			y[i] = box.y;
+			width[i] = box.width;
+			height[i] = box.height;
+			subtreeMinX[i] = box.x;
+			subtreeMaxX[i] = box.x+box.width;
+			subtreeMaxY[i] = box.y+box.height;
+		}
+		// children come after their parent, so going backwards merges whole subtrees
+		for (int i = n-1; i>0; i--) {
+			int p = parent[i];
+			subtreeMinX[p] = Math.min(subtreeMinX[p], subtreeMinX[i]);
+			subtreeMaxX[p] = Math.max(subtreeMaxX[p], subtreeMaxX[i]);
+			subtreeMaxY[p] = Math.max(subtreeMaxY[p], subtreeMaxY[i]);
+		}
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public double centerX(int node) {
+		return x[node]+width[node]/2;
+	}
+
+	public double minY(int node) {
+		return y[node];
+	}
+
+	public double maxY(int node) {
+		return y[node]+height[node];
+	}
+
+	public Rectangle2D.Double getSubtreeBounds(int node) {
+		return new Rectangle2D.Double(subtreeMinX[node], y[node],
+									  subtreeMaxX[node]-subtreeMinX[node], subtreeMaxY[node]-y[node]);
+	}
+
+	/** Report what intersects {@code clip} (everything if null). Subtrees
+	 *  narrower and shorter than {@code minSubtreeExtent} are collapsed.
+	 */
+	public void paint(Rectangle2D clip, double minSubtreeExtent, Painter painter) {
+		if ( nodes.length==0 ) {
+			return;
+		}
+		int boxes = 0;
+		int[] stack = new int[64];
+		int sp = 0;
+		stack[sp++] = 0;
+		while ( sp>0 ) {
+			int i = stack[--sp];
+			boolean hasChildren = firstChild[i]<firstChild[i+1];
+			if ( hasChildren &&
+				 subtreeMaxX[i]-subtreeMinX[i]<minSubtreeExtent &&
+				 subtreeMaxY[i]-y[i]<minSubtreeExtent )
+			{
+				painter.collapsedSubtree(i);
+				continue;
+			}
+			if ( clip==null || clip.intersects(x[i], y[i], width[i], height[i]) ) {
+				if ( boxes==boxesToPaint.length ) {
+					boxesToPaint = Arrays.copyOf(boxesToPaint, boxes*2);
+				}
+				boxesToPaint[boxes++] = i;
+			}
+			double x1 = centerX(i);
+			double y1 = maxY(i);
+			// push in reverse so that we paint left to right, like TreeViewer
+			for (int c = firstChild[i+1]-1; c>=firstChild[i]; c--) {
+				// an edge can cross the viewport even if neither of its ends is visible
+				if ( clip==null || clip.intersectsLine(x1, y1, centerX(c), minY(c)) ) {
+					painter.edge(i, c);
+				}
+				if ( clip==null || intersectsSubtree(clip, c) ) {
+					if ( sp==stack.length ) {
+						stack = Arrays.copyOf(stack, sp*2);
+					}
+					stack[sp++] = c;
+				}
+			}
+		}
+		for (int b = 0; b<boxes; b++) {
+			painter.box(boxesToPaint[b]);
+		}
+	}
+
+	private boolean intersectsSubtree(Rectangle2D clip, int node) {
+		return clip.intersects(subtreeMinX[node], y[node],
+							   subtreeMaxX[node]-subtreeMinX[node], subtreeMaxY[node]-y[node]);
+	}
+}
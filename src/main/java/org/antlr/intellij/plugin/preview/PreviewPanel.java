@@ -19,6 +19,7 @@ import com.intellij.ui.components.JBTabbedPane;
 import com.intellij.util.ui.update.MergingUpdateQueue;
 import com.intellij.util.ui.update.Update;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.LargeInputTokenStream;
 import org.antlr.intellij.plugin.parsing.ParsingResult;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
 import org.antlr.intellij.plugin.parsing.PreviewParser;
@@ -71,6 +72,8 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 
 	public ProfilerPanel profilerPanel;
 
+	private JBTabbedPane tabbedPane;
+
 	/**
 	 * Indicates if the preview should be automatically refreshed after grammar changes.
 	 */
@@ -81,6 +84,9 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 	private boolean buildTree = true;
 	private boolean buildHierarchy = true;
 
+	/** Parse with SLL first and only profile when the Profiler tab is visible */
+	private boolean fastParsingMode = false;
+
 	private ActionToolbar buttonBar;
 	private final CancelParserAction cancelParserAction = new CancelParserAction();
 
@@ -206,13 +212,34 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 			}
 		};
 
+		ToggleAction fastParsingModeBtn = new ToggleAction("Fast Parsing Mode",
+				"Parse with SLL first, fall back to full LL on syntax errors; exact profiling only while the Profiler tab is visible",
+				AllIcons.Actions.Lightning) {
+			@Override
+			public boolean isSelected(@NotNull AnActionEvent e) {
+				return fastParsingMode;
+			}
+
+			@Override
+			public void setSelected(@NotNull AnActionEvent e, boolean state) {
+				fastParsingMode = state;
+				reparseCurrentInput();
+			}
+
+			@Override
+			public @NotNull ActionUpdateThread getActionUpdateThread() {
+				return ActionUpdateThread.BGT;
+			}
+		};
+
 		DefaultActionGroup actionGroup = new DefaultActionGroup(
 				refreshAction,
 				cancelParserAction,
 				scrollFromSourceBtn,
 				scrollToSourceBtn,
 				autoBuildTree,
-				autoBuildHier
+				autoBuildHier,
+				fastParsingModeBtn
 		);
 
 		return ActionManager.getInstance().createActionToolbar(PREVIEW_WINDOW_ID, actionGroup, false);
@@ -227,8 +254,16 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 		return profilerPanel;
 	}
 
+	public boolean isFastParsingMode() {
+		return fastParsingMode;
+	}
+
+	public boolean isProfilerTabSelected() {
+		return tabbedPane.getSelectedComponent()==profilerPanel.getComponent();
+	}
+
 	private JTabbedPane createParseTreeAndProfileTabbedPanel() {
-		JBTabbedPane tabbedPane = new JBTabbedPane();
+		tabbedPane = new JBTabbedPane();
 
 		LOG.info("createParseTreePanel" + " " + project.getName());
 		Pair<UberTreeViewer, JPanel> pair = createParseTreePanel();
@@ -243,6 +278,16 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 		profilerPanel = new ProfilerPanel(project, this);
 		tabbedPane.addTab("Profiler", profilerPanel.getComponent());
 
+		// In fast mode, the last parse didn't collect exact profiling data
+		tabbedPane.addChangeListener(e -> {
+			PreviewState previewState = inputPanel.previewState;
+			if ( fastParsingMode && isProfilerTabSelected() &&
+				 previewState!=null && previewState.parsingResult!=null &&
+				 !ParsingResult.LL_EXACT_AMBIG_DETECTION_MODE.equals(previewState.parsingResult.predictionMode) ) {
+				reparseCurrentInput();
+			}
+		});
+
 		return tabbedPane;
 	}
 
@@ -423,7 +468,10 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 	private void updateTreeViewer(final PreviewState preview, final ParsingResult result) {
 //		long start = System.nanoTime();
 //		System.out.println("START updateTreeViewer "+Thread.currentThread().getName());
-		if (result.parser instanceof PreviewParser) {
+		if (result.parser.getInputStream() instanceof LargeInputTokenStream) {
+			showError("The parse tree is not built for large input files");
+		}
+		else if (result.parser instanceof PreviewParser) {
 			AltLabelTextProvider provider = new AltLabelTextProvider(result.parser, preview.g);
 			if(buildTree) {
 				treeViewer.setTreeTextProvider(provider);
@@ -477,6 +525,23 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 			return;
 		}
 
+		VirtualFile inputFile = previewState.inputFile;
+		if ( previewState.largeInputFile && inputFile!=null ) {
+			updateQueue.queue(new Update(this) {
+				@Override
+				public boolean canEat(Update update) {
+					return true;
+				}
+				@Override
+				public void run() {
+					inputPanel.clearErrorConsole();
+					controller.startParsing();
+					controller.parseLargeInputFile(grammarFile, inputFile);
+				}
+			});
+			return;
+		}
+
 		Editor editor = inputPanel.getInputEditor();
 		if ( editor==null ) return;
 		final String inputText = editor.getDocument().getText();
@@ -498,6 +563,13 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 		});
 	}
 
+	private void reparseCurrentInput() {
+		PreviewState previewState = inputPanel.previewState;
+		if ( previewState!=null && previewState.startRuleName!=null ) {
+			ApplicationManager.getApplication().invokeLater(() -> updateParseTreeFromDoc(previewState.grammarFile));
+		}
+	}
+
 	public InputPanel getInputPanel() {
 		return inputPanel;
 	}
@@ -522,6 +594,9 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 				updateTreeViewer(previewState, previewState.parsingResult);
 				profilerPanel.setProfilerData(previewState, duration);
 				inputPanel.showParseErrors(previewState.parsingResult.syntaxErrorListener.getSyntaxErrors());
+				if ( previewState.parsingResult.budgetExceededMessage!=null ) {
+					inputPanel.displayMessageInParseErrorConsole(previewState.parsingResult.budgetExceededMessage);
+				}
 			}
 			else if (previewState.startRuleName == null) {
 				indicateNoStartRuleInParseTreePane();
@@ -578,7 +653,7 @@ public class PreviewPanel extends JPanel implements ParsingResultSelectionListen
 		// click in input pane which then tried to select entire token like a string. Now,
 		// text is selected in input pane only when a mouse event occurs in hierarchy pane.
 		Editor editor = inputPanel.getInputEditor();
-		if ( startIndex>=0 && stopIndex+1 <= editor.getDocument().getTextLength() ) {
+		if ( editor!=null && startIndex>=0 && stopIndex+1 <= editor.getDocument().getTextLength() ) {
 			SelectionModel selectionModel = editor.getSelectionModel();
 			selectionModel.removeSelection();
 			selectionModel.setSelection(startIndex, stopIndex + 1);
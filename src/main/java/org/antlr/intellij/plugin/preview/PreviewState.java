@@ -5,6 +5,10 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.parsing.CaseChangingStrategy;
+import org.antlr.intellij.plugin.parsing.IncrementalLexer;
+import org.antlr.intellij.plugin.parsing.LexerATNCache;
+import org.antlr.intellij.plugin.parsing.ParserATNCache;
 import org.antlr.intellij.plugin.parsing.ParsingResult;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.LexerGrammar;
@@ -28,12 +32,27 @@ public class PreviewState {
 	public VirtualFile grammarFile;
 	public Grammar g;
 	public LexerGrammar lg;
+	/** Changes whenever g and lg are reloaded, to tell cached parsing results apart */
+	public long grammarVersion;
 	public String startRuleName;
 	public CharSequence manualInputText = ""; // save input when switching grammars
 	public VirtualFile inputFile; 	// save input file when switching grammars
+	/** inputFile is too big for an editor, it is parsed straight from disk
+	 *  and there is no input editor. See {@link InputPanel#isLargeInputFile}.
+	 */
+	public boolean largeInputFile;
 
 	public ParsingResult parsingResult;
 
+	/** Tokens of the last parsed input, reused to lex only what changed upon edits */
+	public final IncrementalLexer incrementalLexer = new IncrementalLexer();
+
+	/** Prediction DFA of g, shared across parses. Must be reset whenever g is replaced. */
+	public ParserATNCache parserATNCache;
+
+	/** Lexer DFA of lg, shared across parses. Must be reset whenever lg is replaced. */
+	public LexerATNCache lexerATNCache;
+
 	/** The current input editor (inputEditor or fileEditor) for this grammar
 	 *  in InputPanel. This can be null when a PreviewState and InputPanel
 	 *  are created out of sync. Depends on order IDE opens files vs
@@ -55,6 +74,20 @@ public class PreviewState {
 		this.inputEditor = inputEditor;
 	}
 
+	public synchronized ParserATNCache getParserATNCache(Grammar g) {
+		if ( parserATNCache==null || parserATNCache.g!=g ) {
+			parserATNCache = new ParserATNCache(g);
+		}
+		return parserATNCache;
+	}
+
+	public synchronized LexerATNCache getLexerATNCache(LexerGrammar lg, CaseChangingStrategy caseChangingStrategy) {
+		if ( lexerATNCache==null || !lexerATNCache.isFor(lg, caseChangingStrategy) ) {
+			lexerATNCache = new LexerATNCache(lg, caseChangingStrategy);
+		}
+		return lexerATNCache;
+	}
+
 	public Grammar getMainGrammar() {
 		return g!=null ? g : lg;
 	}
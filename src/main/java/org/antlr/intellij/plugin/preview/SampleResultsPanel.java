@@ -0,0 +1,146 @@
+package org.antlr.intellij.plugin.preview;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.table.JBTable;
+import org.antlr.intellij.plugin.parsing.RunRuleOnSampleDirectory.SampleResult;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Lists the results of {@link org.antlr.intellij.plugin.parsing.RunRuleOnSampleDirectory}
+ *  as they come in. Double-click a row to open the file.
+ */
+public class SampleResultsPanel extends JPanel {
+	private static final String[] columnNames = {
+		"File", "Result", "Errors", "Tokens", "Parse time (ms)", "Worst decision"
+	};
+
+	private final Project project;
+	private final VirtualFile sampleDirectory;
+	private final SampleResultsTableModel model = new SampleResultsTableModel();
+	private final JBLabel summaryLabel = new JBLabel();
+
+	public SampleResultsPanel(Project project, VirtualFile sampleDirectory) {
+		super(new BorderLayout());
+		this.project = project;
+		this.sampleDirectory = sampleDirectory;
+
+		JBTable table = new JBTable(model);
+		table.setAutoCreateRowSorter(true);
+		table.getColumnModel().getColumn(1).setCellRenderer(new DefaultTableCellRenderer() {
+			@Override
+			public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+				Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+				SampleResult result = model.results.get(table.convertRowIndexToModel(row));
+				if ( !isSelected ) {
+					c.setForeground(result.passed() ? table.getForeground() : JBColor.RED);
+				}
+				return c;
+			}
+		});
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int row = table.rowAtPoint(e.getPoint());
+				if ( e.getClickCount()==2 && row>=0 ) {
+					VirtualFile file = model.results.get(table.convertRowIndexToModel(row)).file;
+					new OpenFileDescriptor(project, file).navigate(true);
+				}
+			}
+		});
+
+		add(summaryLabel, BorderLayout.NORTH);
+		add(ScrollPaneFactory.createScrollPane(table), BorderLayout.CENTER);
+		updateSummary();
+	}
+
+	/** Can be called from any thread */
+	public void addResult(SampleResult result) {
+		ApplicationManager.getApplication().invokeLater(() -> {
+			model.add(result);
+			updateSummary();
+		});
+	}
+
+	private void updateSummary() {
+		int failed = 0;
+		for (SampleResult r : model.results) {
+			if ( !r.passed() ) failed++;
+		}
+		summaryLabel.setText(String.format("%s: %d files, %d failed", sampleDirectory.getPresentableUrl(),
+										   model.results.size(), failed));
+	}
+
+	private class SampleResultsTableModel extends AbstractTableModel {
+		private final List<SampleResult> results = new ArrayList<>();
+
+		void add(SampleResult result) {
+			results.add(result);
+			fireTableRowsInserted(results.size()-1, results.size()-1);
+		}
+
+		@Override
+		public int getRowCount() {
+			return results.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			switch (columnIndex) {
+				case 2:
+				case 3:
+					return Integer.class;
+				case 4:
+					return BigDecimal.class;
+				default:
+					return String.class;
+			}
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			SampleResult result = results.get(row);
+			switch (col) {
+				case 0:
+					String path = VfsUtilCore.getRelativePath(result.file, sampleDirectory);
+					return path!=null ? path : result.file.getName();
+				case 1:
+					return result.status;
+				case 2:
+					return result.numberOfErrors;
+				case 3:
+					return result.numberOfTokens;
+				case 4:
+					return BigDecimal.valueOf(result.parseTimeMS).setScale(3, RoundingMode.HALF_DOWN);
+				case 5:
+					return result.worstDecision;
+			}
+			return "n/a";
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package org.antlr.intellij.plugin.preview;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.ui.DarculaColors;
 import com.intellij.ui.Gray;
 import com.intellij.ui.JBColor;
+import org.abego.treelayout.TreeLayout;
+import org.abego.treelayout.util.DefaultConfiguration;
 import org.antlr.intellij.plugin.parsing.PreviewInterpreterRuleContext;
 import org.antlr.v4.gui.TreeViewer;
 import org.antlr.v4.runtime.ParserRuleContext;
@@ -11,11 +14,29 @@ import org.antlr.v4.runtime.tree.Tree;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
 import java.util.List;
 
+/** A {@link TreeViewer} with Darcula colors. Trees bigger than
+ *  {@link #LARGE_TREE_NODES} are laid out in the background, and each repaint
+ *  only draws the nodes that intersect the viewport, collapsing subtrees that
+ *  are too small to be read when zoomed far out.
+ */
 public class UberTreeViewer extends TreeViewer {
+	public static final int LARGE_TREE_NODES = 10_000;
+
+	/** Subtrees smaller than this on screen (in pixels) are painted as a single block */
+	private static final int MIN_SUBTREE_PIXELS = 6;
+	/** Text smaller than this on screen (in pixels) isn't painted */
+	private static final int MIN_TEXT_PIXELS = 4;
+
 	private final boolean highlightUnreachedNodes;
 
+	/** Only set for large trees, which are painted by {@link #paintVisibleNodes} */
+	private ParseTreeLayoutIndex layoutIndex;
+	/** Incremented by each setTree(), to drop layouts of trees that were replaced meanwhile */
+	private int treeGeneration;
+
 	public UberTreeViewer(List<String> ruleNames, Tree tree, boolean highlightUnreachedNodes) {
 		super(ruleNames, tree);
 		this.highlightUnreachedNodes = highlightUnreachedNodes;
@@ -23,7 +44,11 @@ public class UberTreeViewer extends TreeViewer {
 
 	@Override
 	protected void paintBox(Graphics g, Tree tree) {
-		customPaintBox(g, tree);
+		paintBox(g, tree, true);
+	}
+
+	private void paintBox(Graphics g, Tree tree, boolean paintText) {
+		customPaintBox(g, tree, paintText);
 
 		Rectangle2D.Double box = getBoundsOfNode(tree);
 		if ( tree instanceof PreviewInterpreterRuleContext ) {
@@ -37,7 +62,7 @@ public class UberTreeViewer extends TreeViewer {
 	}
 
 	// Customized version of super.paintBox() that supports Darcula colors
-	private void customPaintBox(Graphics g, Tree tree) {
+	private void customPaintBox(Graphics g, Tree tree, boolean paintText) {
 		Rectangle2D.Double box = getBoundsOfNode(tree);
 		// draw the box in the background
 		boolean ruleFailedAndMatchedNothing = false;
@@ -63,6 +88,9 @@ public class UberTreeViewer extends TreeViewer {
 		}
 
 		// draw the text on top of the box (possibly multiple lines)
+		if ( !paintText ) {
+			return;
+		}
 		if ( tree instanceof ErrorNode || ruleFailedAndMatchedNothing ) {
 			g.setColor(Gray._64);
 		}
@@ -80,10 +108,102 @@ public class UberTreeViewer extends TreeViewer {
 		}
 	}
 
+	@Override
+	public void paint(Graphics g) {
+		if ( layoutIndex==null ) {
+			super.paint(g);
+			return;
+		}
+		// let TreeViewer set up the scaled graphics but not walk the whole tree
+		TreeLayout<Tree> layout = treeLayout;
+		treeLayout = null;
+		try {
+			super.paint(g);
+		}
+		finally {
+			treeLayout = layout;
+		}
+		paintVisibleNodes((Graphics2D) g);
+	}
+
+	/** Paint the part of a large tree in the clip, {@code g} is already scaled */
+	private void paintVisibleNodes(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+
+		ParseTreeLayoutIndex index = layoutIndex;
+		boolean paintText = getFontMetrics(font).getHeight() * scale>=MIN_TEXT_PIXELS;
+		Color edgeColor = g.getColor();
+		index.paint(g.getClipBounds(), MIN_SUBTREE_PIXELS / scale, new ParseTreeLayoutIndex.Painter() {
+			@Override
+			public void edge(int parent, int child) {
+				g.setColor(edgeColor);
+				g.drawLine((int) index.centerX(parent), (int) index.maxY(parent),
+						   (int) index.centerX(child), (int) index.minY(child));
+			}
+
+			@Override
+			public void box(int node) {
+				paintBox(g, index.nodes[node], paintText);
+			}
+
+			@Override
+			public void collapsedSubtree(int node) {
+				Rectangle2D.Double r = index.getSubtreeBounds(node);
+				g.setColor(JBColor.GRAY);
+				g.fillRect((int) r.x, (int) r.y, Math.max(1, (int) r.width), Math.max(1, (int) r.height));
+			}
+		});
+	}
+
 	@Override
 	public void setTree(Tree root) {
 		setTextColor(JBColor.BLACK);
-		super.setTree(root);
+		int generation = ++treeGeneration;
+		layoutIndex = null;
+		if ( root==null || !hasMoreNodesThan(root, LARGE_TREE_NODES) ) {
+			super.setTree(root);
+			return;
+		}
+
+		// Laying out hundreds of thousands of nodes takes seconds, don't freeze the UI meanwhile
+		treeLayout = null;
+		repaint();
+		ApplicationManager.getApplication().executeOnPooledThread(() -> {
+			TreeLayout<Tree> layout = new TreeLayout<>(getTreeLayoutAdaptor(root),
+													   new VariableExtentProvide(this),
+													   new DefaultConfiguration<>(gapBetweenLevels, gapBetweenNodes),
+													   true);
+			ParseTreeLayoutIndex index = new ParseTreeLayoutIndex(layout);
+			ApplicationManager.getApplication().invokeLater(() -> {
+				if ( generation!=treeGeneration ) {
+					return; // another tree was set meanwhile
+				}
+				treeLayout = layout;
+				layoutIndex = index;
+				Dimension size = layout.getBounds().getBounds().getSize();
+				setPreferredSize(new Dimension((int) (size.width * scale), (int) (size.height * scale)));
+				revalidate();
+				repaint();
+			});
+		});
+	}
+
+	private static boolean hasMoreNodesThan(Tree root, int max) {
+		int n = 0;
+		ArrayDeque<Tree> work = new ArrayDeque<>();
+		work.push(root);
+		while ( !work.isEmpty() ) {
+			Tree t = work.pop();
+			if ( ++n>max ) {
+				return true;
+			}
+			for (int i = 0; i<t.getChildCount(); i++) {
+				work.push(t.getChild(i));
+			}
+		}
+		return false;
 	}
 
 	public boolean hasTree() {
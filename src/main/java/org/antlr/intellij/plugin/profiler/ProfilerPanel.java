@@ -14,6 +14,7 @@ import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.table.JBTable;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.LargeInputTokenStream;
 import org.antlr.intellij.plugin.preview.InputPanel;
 import org.antlr.intellij.plugin.preview.PreviewPanel;
 import org.antlr.intellij.plugin.preview.PreviewState;
@@ -52,6 +53,7 @@ public class ProfilerPanel {
 	protected JLabel predictionTimeField;
 	protected JLabel lookaheadBurdenField;
 	protected JLabel cacheMissRateField;
+	protected JLabel predictionModeField;
 	protected JLabel inputSizeField;
 	protected JLabel numTokensField;
 	protected JCheckBox expertCheckBox;
@@ -129,33 +131,55 @@ public class ProfilerPanel {
 		this.previewState = previewState;
 		Parser parser = previewState.parsingResult.parser;
 		ParseInfo parseInfo = parser.getParseInfo();
-		updateTableModelPerExpertCheckBox(parseInfo,parser);
+		String predictionMode = previewState.parsingResult.predictionMode;
+		predictionModeField.setText(predictionMode!=null ? predictionMode : "-");
 		double parseTimeMS = parseTime_ns/(1000.0*1000.0);
 		// microsecond decimal precision
 		NumberFormat formatter = new DecimalFormat("#.###");
 		parseTimeField.setText(formatter.format(parseTimeMS));
-		double predTimeMS = parseInfo.getTotalTimeInPrediction()/(1000.0*1000.0);
-		predictionTimeField.setText(
-			String.format("%s = %3.2f%%", formatter.format(predTimeMS), 100*(predTimeMS)/parseTimeMS)
-		                           );
 		TokenStream tokens = parser.getInputStream();
-		int numTokens = tokens.size();
-		Token lastToken = tokens.get(numTokens-1);
-		int numChar = lastToken.getStopIndex();
-		int numLines = lastToken.getLine();
-		if ( lastToken.getType()==Token.EOF ) {
-			if ( numTokens<=1 ) {
-				numLines = 0;
-			}
-			else {
-				Token secondToLastToken = tokens.get(numTokens-2);
-				numLines = secondToLastToken.getLine();
+		int numTokens;
+		int numChar;
+		int numLines;
+		if ( tokens instanceof LargeInputTokenStream ) { // old tokens are gone, we only have counts
+			LargeInputTokenStream largeTokens = (LargeInputTokenStream) tokens;
+			numTokens = largeTokens.getNumberOfTokens();
+			numChar = largeTokens.getTokenSource().getInputStream().size();
+			numLines = largeTokens.getLastToken().getLine();
+		}
+		else {
+			numTokens = tokens.size();
+			Token lastToken = tokens.get(numTokens-1);
+			numChar = lastToken.getStopIndex();
+			numLines = lastToken.getLine();
+			if ( lastToken.getType()==Token.EOF ) {
+				if ( numTokens<=1 ) {
+					numLines = 0;
+				}
+				else {
+					Token secondToLastToken = tokens.get(numTokens-2);
+					numLines = secondToLastToken.getLine();
+				}
 			}
 		}
 		inputSizeField.setText(String.format("%d char, %d lines",
 		                                     numChar,
 		                                     numLines));
 		numTokensField.setText(String.valueOf(numTokens));
+
+		if ( parseInfo==null ) { // fast parsing mode and the profiler wasn't visible
+			profilerDataTable.setModel(new DefaultTableModel());
+			predictionTimeField.setText("-");
+			lookaheadBurdenField.setText("-");
+			cacheMissRateField.setText("-");
+			return;
+		}
+
+		updateTableModelPerExpertCheckBox(parseInfo,parser);
+		double predTimeMS = parseInfo.getTotalTimeInPrediction()/(1000.0*1000.0);
+		predictionTimeField.setText(
+			String.format("%s = %3.2f%%", formatter.format(predTimeMS), 100*(predTimeMS)/parseTimeMS)
+		                           );
 		double look =
 			parseInfo.getTotalSLLLookaheadOps()+
 				parseInfo.getTotalLLLookaheadOps();
@@ -202,7 +226,11 @@ public class ProfilerPanel {
 		CommonToken startToken = (CommonToken) tokens.get(region.a);
 		CommonToken stopToken = (CommonToken) tokens.get(region.b);
 		JBColor effectColor = JBColor.darkGray;
-		DecisionInfo decisionInfo = previewState.parsingResult.parser.getParseInfo().getDecisionInfo()[decision];
+		ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
+		if ( parseInfo==null ) {
+			return;
+		}
+		DecisionInfo decisionInfo = parseInfo.getDecisionInfo()[decision];
 		if ( decisionInfo.predicateEvals.size()>0 ) {
 			effectColor = new JBColor(PREDEVAL_COLOR, AMBIGUITY_COLOR);
 		}
@@ -238,6 +266,9 @@ public class ProfilerPanel {
 		}
 
 		Editor inputEditor = previewState.getInputEditor();
+		if ( inputEditor==null ) { // large input files are not shown in an editor
+			return;
+		}
 		ScrollingModel scrollingModel = inputEditor.getScrollingModel();
 		CaretModel caretModel = inputEditor.getCaretModel();
 		MarkupModel markupModel = inputEditor.getMarkupModel();
@@ -245,6 +276,9 @@ public class ProfilerPanel {
 		InputPanel.clearDecisionEventHighlighters(inputEditor);
 
 		ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
+		if ( parseInfo==null ) {
+			return;
+		}
 		DecisionInfo decisionInfo = parseInfo.getDecisionInfo()[decision];
 
 		Token firstToken = null;
@@ -333,6 +367,9 @@ public class ProfilerPanel {
 				return c;
 			}
 			ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
+			if ( parseInfo==null ) {
+				return c;
+			}
 			int decision = profilerDataTable.convertRowIndexToModel(row);
 			DecisionInfo[] decisions = parseInfo.getDecisionInfo();
 			if ( decision>=decisions.length ) {
@@ -361,6 +398,10 @@ public class ProfilerPanel {
 				return;
 			}
 			ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
+			if (parseInfo == null) {
+				// parsed in fast mode without profiling
+				return;
+			}
 			updateTableModelPerExpertCheckBox(parseInfo,previewState.parsingResult.parser);
 		});
 		profilerDataTable = new ProfilerJBTable();
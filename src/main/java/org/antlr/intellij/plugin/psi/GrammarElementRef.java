@@ -1,20 +1,27 @@
 package org.antlr.intellij.plugin.psi;
 
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReferenceBase;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.IncorrectOperationException;
 import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
+import org.antlr.intellij.plugin.resolve.GrammarSummary;
+import org.antlr.intellij.plugin.resolve.GrammarSymbolIndex;
 import org.antlr.intellij.plugin.resolve.ImportResolver;
 import org.antlr.intellij.plugin.resolve.TokenVocabResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A reference to a grammar element (parser rule, lexer rule or lexical mode).
@@ -30,17 +37,46 @@ public class GrammarElementRef extends PsiReferenceBase<GrammarElementRefNode> {
 
 	/**
 	 * Using for completion. Returns list of rules and tokens; the prefix
-	 * of current element is used as filter by IDEA later.
+	 * of current element is used as filter by IDEA later. Names defined
+	 * in imported grammars and the tokenVocab grammar come from the
+	 * {@link GrammarSymbolIndex}, without parsing those grammars.
 	 */
 	@NotNull
 	@Override
 	public Object[] getVariants() {
 		RulesNode rules = PsiTreeUtil.getContextOfType(myElement, RulesNode.class);
+		if ( rules==null ) {
+			return ArrayUtil.EMPTY_OBJECT_ARRAY;
+		}
 		// find all rule defs (token, parser)
-		Collection<? extends RuleSpecNode> ruleSpecNodes =
-				PsiTreeUtil.findChildrenOfAnyType(rules, ParserRuleSpecNode.class, LexerRuleSpecNode.class);
+		PsiFile file = rules.getContainingFile();
+		List<Object> variants = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for (RuleSpecNode definition : RuleSpecIndex.getDefinitions(file)) {
+			if ( (definition instanceof ParserRuleSpecNode || definition instanceof LexerRuleSpecNode) &&
+				 PsiTreeUtil.isAncestor(rules, definition, true) )
+			{
+				variants.add(definition);
+				names.add(definition.getName());
+			}
+		}
+
+		ImportResolver.getImportedDefinitions(file).forEach((name, definingFile) -> {
+			if ( names.add(name) ) {
+				variants.add(LookupElementBuilder.create(name).withTypeText(definingFile.getName()));
+			}
+		});
+		PsiFile tokenVocabFile = TokenVocabResolver.findTokenVocabFile(file);
+		GrammarSummary vocabulary = tokenVocabFile!=null ? GrammarSymbolIndex.getSummary(tokenVocabFile) : null;
+		if ( vocabulary!=null ) {
+			for (String name : vocabulary.getVocabularyNames()) {
+				if ( names.add(name) ) {
+					variants.add(LookupElementBuilder.create(name).withTypeText(tokenVocabFile.getName()));
+				}
+			}
+		}
 
-		return ruleSpecNodes.toArray();
+		return variants.toArray();
 	}
 
 	/**
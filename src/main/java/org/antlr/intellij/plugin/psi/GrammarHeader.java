@@ -0,0 +1,195 @@
+package org.antlr.intellij.plugin.psi;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
+import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.v4.parse.ANTLRParser;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The grammar declaration and prequel constructs of a grammar file: type,
+ *  name, options, imports, channels and named actions. Built from the
+ *  children of the grammar spec before the rules, and cached until the file
+ *  changes, so that looking up an option doesn't walk the whole grammar.
+ */
+public class GrammarHeader {
+	private static final IElementType GRAMMAR_TYPE = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_grammarType);
+	private static final IElementType IDENTIFIER = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_identifier);
+	private static final IElementType PREQUEL_CONSTRUCT = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_prequelConstruct);
+	private static final IElementType OPTIONS_SPEC = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_optionsSpec);
+	private static final IElementType OPTION = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_option);
+	private static final IElementType OPTION_VALUE = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_optionValue);
+	private static final IElementType DELEGATE_GRAMMARS = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_delegateGrammars);
+	private static final IElementType DELEGATE_GRAMMAR = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_delegateGrammar);
+	private static final IElementType TOKENS_SPEC = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_tokensSpec);
+	private static final IElementType CHANNELS_SPEC = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_channelsSpec);
+	private static final IElementType ID_LIST = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_idList);
+	private static final IElementType RULES = ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_rules);
+	private static final IElementType LEXER = ANTLRv4TokenTypes.getTokenElementType(ANTLRv4Lexer.LEXER);
+	private static final IElementType PARSER = ANTLRv4TokenTypes.getTokenElementType(ANTLRv4Lexer.PARSER);
+
+	/** {@link ANTLRParser#LEXER}, {@link ANTLRParser#PARSER} or {@link ANTLRParser#COMBINED} */
+	private int type = ANTLRParser.COMBINED;
+	@Nullable
+	private String name;
+	/** Option name -> option value as written, the last one wins like in the tool */
+	private final Map<String, String> options = new LinkedHashMap<>();
+	/** Names of the imported grammars, in import order */
+	private final List<String> imports = new ArrayList<>();
+	private final List<String> channels = new ArrayList<>();
+	private final List<AtAction> actions = new ArrayList<>();
+	@Nullable
+	private PsiElement optionsSpec;
+	@Nullable
+	private PsiElement tokensSpec;
+
+	private GrammarHeader() {
+	}
+
+	public static GrammarHeader getInstance(@NotNull PsiFile file) {
+		return CachedValuesManager.getCachedValue(file, () ->
+			CachedValueProvider.Result.create(build(file), file)
+		);
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	@Nullable
+	public String getName() {
+		return name;
+	}
+
+	/** The value of option {@code optionName} as written, e.g. with quotes, or null if it isn't set */
+	@Nullable
+	public String getOption(String optionName) {
+		return options.get(optionName);
+	}
+
+	public Map<String, String> getOptions() {
+		return Collections.unmodifiableMap(options);
+	}
+
+	/** The name of the grammar given by the {@code tokenVocab} option, without quotes */
+	@Nullable
+	public String getTokenVocab() {
+		String tokenVocab = options.get("tokenVocab");
+		return tokenVocab!=null ? StringUtils.strip(tokenVocab, "'") : null;
+	}
+
+	public List<String> getImports() {
+		return Collections.unmodifiableList(imports);
+	}
+
+	public List<String> getChannels() {
+		return Collections.unmodifiableList(channels);
+	}
+
+	/** The first action named {@code actionName}, like {@code @header} or {@code @parser::members}, if any */
+	@Nullable
+	public AtAction findAction(String actionName) {
+		for (AtAction action : actions) {
+			if ( action.getIdText().equals(actionName) ) {
+				return action;
+			}
+		}
+		return null;
+	}
+
+	/** The first {@code options {...}} section, if any */
+	@Nullable
+	public PsiElement getOptionsSpec() {
+		return optionsSpec;
+	}
+
+	/** The first {@code tokens {...}} section, if any */
+	@Nullable
+	public PsiElement getTokensSpec() {
+		return tokensSpec;
+	}
+
+	private static GrammarHeader build(PsiFile file) {
+		GrammarHeader header = new GrammarHeader();
+		GrammarSpecNode grammar = PsiTreeUtil.getChildOfType(file, GrammarSpecNode.class);
+		if ( grammar==null ) {
+			return header;
+		}
+
+		for (PsiElement child = grammar.getFirstChild(); child!=null; child = child.getNextSibling()) {
+			IElementType childType = child.getNode().getElementType();
+			if ( childType==RULES ) {
+				break; // nothing of the header comes after the rules
+			}
+			if ( childType==GRAMMAR_TYPE ) {
+				if ( hasChildOfType(child, LEXER) ) header.type = ANTLRParser.LEXER;
+				else if ( hasChildOfType(child, PARSER) ) header.type = ANTLRParser.PARSER;
+			}
+			else if ( childType==IDENTIFIER && header.name==null ) {
+				header.name = child.getText();
+			}
+			else if ( childType==PREQUEL_CONSTRUCT && child.getFirstChild()!=null ) {
+				header.addPrequelConstruct(child.getFirstChild());
+			}
+		}
+		return header;
+	}
+
+	private void addPrequelConstruct(PsiElement construct) {
+		IElementType constructType = construct.getNode().getElementType();
+		if ( constructType==OPTIONS_SPEC ) {
+			if ( optionsSpec==null ) {
+				optionsSpec = construct;
+			}
+			for (PsiElement option : MyPsiUtils.collectChildrenOfType(construct, OPTION)) {
+				PsiElement optionName = MyPsiUtils.findChildOfType(option, IDENTIFIER);
+				PsiElement optionValue = MyPsiUtils.findChildOfType(option, OPTION_VALUE);
+				if ( optionName!=null && optionValue!=null ) {
+					options.put(optionName.getText(), optionValue.getText());
+				}
+			}
+		}
+		else if ( constructType==DELEGATE_GRAMMARS ) {
+			for (PsiElement delegate : MyPsiUtils.collectChildrenOfType(construct, DELEGATE_GRAMMAR)) {
+				PsiElement[] ids = MyPsiUtils.collectChildrenOfType(delegate, IDENTIFIER);
+				if ( ids.length>0 ) {
+					// import X or import Y=X
+					imports.add(ids[ids.length-1].getText());
+				}
+			}
+		}
+		else if ( constructType==TOKENS_SPEC ) {
+			if ( tokensSpec==null ) {
+				tokensSpec = construct;
+			}
+		}
+		else if ( constructType==CHANNELS_SPEC ) {
+			PsiElement idList = MyPsiUtils.findChildOfType(construct, ID_LIST);
+			if ( idList!=null ) {
+				for (PsiElement id : MyPsiUtils.collectChildrenOfType(idList, IDENTIFIER)) {
+					channels.add(id.getText());
+				}
+			}
+		}
+		else if ( construct instanceof AtAction ) {
+			actions.add((AtAction) construct);
+		}
+	}
+
+	private static boolean hasChildOfType(PsiElement element, IElementType type) {
+		return element.getNode().findChildByType(type)!=null;
+	}
+}
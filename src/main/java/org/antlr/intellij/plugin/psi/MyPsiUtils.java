@@ -10,12 +10,9 @@ import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.impl.PsiFileFactoryImpl;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
-import com.intellij.psi.util.PsiElementFilter;
 import com.intellij.psi.util.PsiTreeUtil;
 import org.antlr.intellij.plugin.ANTLRv4FileRoot;
 import org.antlr.intellij.plugin.ANTLRv4Language;
-import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
-import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
@@ -68,23 +65,13 @@ public class MyPsiUtils {
 	 * the given {@code grammar}.
 	 *
 	 * Rule specs can be either children of the {@link RulesNode}, or under one of the {@code mode}s defined in
-	 * the grammar. This means we have to walk the whole grammar to find matching candidates.
+	 * the grammar, so they are looked up by name in the {@link RuleSpecIndex} instead of walking the grammar.
 	 */
 	public static PsiElement findSpecNode(GrammarSpecNode grammar, final String ruleName) {
-		PsiElementFilter definitionFilter = element1 -> {
-			if (!(element1 instanceof RuleSpecNode)) {
-				return false;
-			}
-
-			GrammarElementRefNode id = ((RuleSpecNode) element1).getNameIdentifier();
-			return id != null && id.getText().equals(ruleName);
-		};
-
-		PsiElement[] ruleSpec = PsiTreeUtil.collectElements(grammar, definitionFilter);
-		if (ruleSpec.length > 0) {
-			return ruleSpec[0];
+		if ( grammar==null ) {
+			return null;
 		}
-		return null;
+		return RuleSpecIndex.findDefinition(grammar.getContainingFile(), ruleName);
 	}
 
 	public static PsiElement createLeafFromText(Project project, PsiElement context,
@@ -175,17 +162,7 @@ public class MyPsiUtils {
 
 	// Look for stuff like: options { tokenVocab=ANTLRv4Lexer; superClass=Foo; }
 	public static String findTokenVocabIfAny(ANTLRv4FileRoot file) {
-		String vocabName = null;
-		PsiElement[] options = collectNodesWithName(file, "option");
-		for (PsiElement o : options) {
-			PsiElement[] tokenVocab = collectChildrenWithText(o, "tokenVocab");
-			if ( tokenVocab.length>0 ) {
-				PsiElement optionNode = tokenVocab[0].getParent();// tokenVocab[0] is id node
-				PsiElement[] ids = collectChildrenOfType(optionNode, ANTLRv4TokenTypes.RULE_ELEMENT_TYPES.get(ANTLRv4Parser.RULE_optionValue));
-				vocabName = ids[0].getText();
-			}
-		}
-		return vocabName;
+		return GrammarHeader.getInstance(file).getOption("tokenVocab");
 	}
 
 	public static PsiElement findElement(PsiElement startNode, int offset) {
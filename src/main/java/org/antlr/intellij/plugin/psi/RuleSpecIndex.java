@@ -0,0 +1,197 @@
+package org.antlr.intellij.plugin.psi;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.antlr.intellij.plugin.ANTLRv4FileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/** Name -> offsets of the parser rules, lexer rules, tokens, channels and
+ *  modes defined with that name in a grammar file. Resolving a reference
+ *  looks its name up in the index and only finds the definition at that
+ *  offset, instead of walking the grammar for each reference; the walk,
+ *  which doesn't enter rule bodies, is done once when the file is indexed.
+ *
+ *  The offsets are those of the committed PSI, see {@link PsiDependentIndex}.
+ *  In dumb mode, or if the PSI changed since, the file is walked instead.
+ */
+public class RuleSpecIndex extends FileBasedIndexExtension<String, List<Integer>> implements PsiDependentIndex {
+	public static final ID<String, List<Integer>> NAME = ID.create("antlr.RuleSpecIndex");
+
+	@NotNull
+	@Override
+	public ID<String, List<Integer>> getName() {
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, List<Integer>, FileContent> getIndexer() {
+		return inputData -> {
+			Map<String, List<Integer>> offsetsByName = new HashMap<>();
+			for (RuleSpecNode definition : walk(inputData.getPsiFile())) {
+				GrammarElementRefNode id = definition.getNameIdentifier();
+				if ( id!=null ) {
+					offsetsByName.computeIfAbsent(id.getText(), name -> new ArrayList<>())
+						.add(id.getTextRange().getStartOffset());
+				}
+			}
+			return offsetsByName;
+		};
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor() {
+		return EnumeratorStringDescriptor.INSTANCE;
+	}
+
+	@NotNull
+	@Override
+	public DataExternalizer<List<Integer>> getValueExternalizer() {
+		return new DataExternalizer<List<Integer>>() {
+			@Override
+			public void save(@NotNull DataOutput out, List<Integer> offsets) throws IOException {
+				out.writeInt(offsets.size());
+				for (int offset : offsets) {
+					out.writeInt(offset);
+				}
+			}
+
+			@Override
+			public List<Integer> read(@NotNull DataInput in) throws IOException {
+				int n = in.readInt();
+				List<Integer> offsets = new ArrayList<>(n);
+				for (int i = 0; i<n; i++) {
+					offsets.add(in.readInt());
+				}
+				return offsets;
+			}
+		};
+	}
+
+	@Override
+	public int getVersion() {
+		return 1;
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter() {
+		return new DefaultFileTypeSpecificInputFilter(ANTLRv4FileType.INSTANCE);
+	}
+
+	@Override
+	public boolean dependsOnFileContent() {
+		return true;
+	}
+
+	/** The first definition of {@code name} in {@code file}, like the tool would use */
+	@Nullable
+	public static RuleSpecNode findDefinition(@NotNull PsiFile file, String name) {
+		Map<String, List<Integer>> offsetsByName = getOffsetsByName(file);
+		if ( offsetsByName!=null ) {
+			List<Integer> offsets = offsetsByName.get(name);
+			if ( offsets==null && !offsetsByName.isEmpty() ) {
+				return null;
+			}
+			RuleSpecNode definition = offsets!=null ? findDefinitionAt(file, offsets.get(0), name) : null;
+			if ( definition!=null ) {
+				return definition;
+			}
+		}
+		for (RuleSpecNode definition : getWalkedDefinitions(file)) {
+			GrammarElementRefNode id = definition.getNameIdentifier();
+			if ( id!=null && id.getText().equals(name) ) {
+				return definition;
+			}
+		}
+		return null;
+	}
+
+	/** All definitions of {@code file}, in grammar order */
+	public static List<RuleSpecNode> getDefinitions(@NotNull PsiFile file) {
+		Map<String, List<Integer>> offsetsByName = getOffsetsByName(file);
+		if ( offsetsByName==null || offsetsByName.isEmpty() ) {
+			return getWalkedDefinitions(file);
+		}
+		TreeMap<Integer, RuleSpecNode> definitions = new TreeMap<>();
+		for (Map.Entry<String, List<Integer>> entry : offsetsByName.entrySet()) {
+			for (int offset : entry.getValue()) {
+				RuleSpecNode definition = findDefinitionAt(file, offset, entry.getKey());
+				if ( definition==null ) {
+					return getWalkedDefinitions(file);
+				}
+				definitions.put(offset, definition);
+			}
+		}
+		return new ArrayList<>(definitions.values());
+	}
+
+	/** Name -> offsets from the index, or null in dumb mode and for files
+	 *  created from text. Empty for a file that isn't indexed, e.g. outside
+	 *  the project, which is then walked like a file without definitions.
+	 */
+	@Nullable
+	private static Map<String, List<Integer>> getOffsetsByName(PsiFile file) {
+		VirtualFile vfile = file.getVirtualFile();
+		if ( vfile==null || DumbService.isDumb(file.getProject()) ) {
+			return null;
+		}
+		return FileBasedIndex.getInstance().getFileData(NAME, vfile, file.getProject());
+	}
+
+	/** The definition whose name starts at {@code offset}, if it's still {@code name} */
+	@Nullable
+	private static RuleSpecNode findDefinitionAt(PsiFile file, int offset, String name) {
+		PsiElement leaf = file.findElementAt(offset);
+		RuleSpecNode definition = PsiTreeUtil.getParentOfType(leaf, RuleSpecNode.class);
+		if ( definition==null ) {
+			return null;
+		}
+		GrammarElementRefNode id = definition.getNameIdentifier();
+		if ( id==null || id.getTextRange().getStartOffset()!=offset || !id.getText().equals(name) ) {
+			return null;
+		}
+		return definition;
+	}
+
+	private static List<RuleSpecNode> getWalkedDefinitions(PsiFile file) {
+		return CachedValuesManager.getCachedValue(file, () ->
+			CachedValueProvider.Result.create(walk(file), file)
+		);
+	}
+
+	/** The definitions in grammar order, in one walk that doesn't enter rule bodies */
+	private static List<RuleSpecNode> walk(PsiFile file) {
+		List<RuleSpecNode> definitions = new ArrayList<>();
+		file.accept(new PsiRecursiveElementWalkingVisitor() {
+			@Override
+			public void visitElement(@NotNull PsiElement element) {
+				if ( element instanceof RuleSpecNode ) {
+					definitions.add((RuleSpecNode) element);
+					if ( !(element instanceof ModeSpecNode) ) {
+						return; // rules aren't defined in rule bodies, only in modes
+					}
+				}
+				super.visitElement(element);
+			}
+		});
+		return Collections.unmodifiableList(definitions);
+	}
+}
@@ -0,0 +1,200 @@
+package org.antlr.intellij.plugin.resolve;
+
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/** What other grammars need to know about a grammar file: its name and
+ *  type, the grammars it imports and gets its vocabulary from, and the
+ *  names it defines. This is what {@link GrammarSymbolIndex} stores for
+ *  each grammar file.
+ */
+public class GrammarSummary {
+	private final String name;
+	/** {@link ANTLRParser#LEXER}, {@link ANTLRParser#PARSER} or {@link ANTLRParser#COMBINED} */
+	private final int type;
+	/** Names of the imported grammars, in import order */
+	private final List<String> imports;
+	private final String tokenVocab;
+	/** Rules, fragments, tokens, channels and modes, visible to importing grammars */
+	private final Set<String> definedNames;
+	/** Non-fragment lexer rules and tokens, visible to grammars using this one as tokenVocab */
+	private final Set<String> vocabularyNames;
+
+	GrammarSummary(String name, int type, List<String> imports, @Nullable String tokenVocab,
+				   Set<String> definedNames, Set<String> vocabularyNames) {
+		this.name = name;
+		this.type = type;
+		this.imports = imports;
+		this.tokenVocab = tokenVocab;
+		this.definedNames = definedNames;
+		this.vocabularyNames = vocabularyNames;
+	}
+
+	public static GrammarSummary of(CharSequence text) {
+		ParseTree tree = ParsingUtils.parseANTLRGrammar(text.toString()).tree;
+		ANTLRv4Parser.GrammarSpecContext spec = (ANTLRv4Parser.GrammarSpecContext) tree;
+
+		int type = ANTLRParser.COMBINED;
+		if ( spec.grammarType()!=null ) {
+			if ( spec.grammarType().LEXER()!=null ) type = ANTLRParser.LEXER;
+			else if ( spec.grammarType().PARSER()!=null ) type = ANTLRParser.PARSER;
+		}
+		String name = spec.identifier()!=null ? spec.identifier().getText() : "";
+		List<String> imports = new ArrayList<>();
+		String tokenVocab = null;
+		Set<String> definedNames = new LinkedHashSet<>();
+		Set<String> vocabularyNames = new LinkedHashSet<>();
+
+		for (ANTLRv4Parser.PrequelConstructContext prequel : spec.prequelConstruct()) {
+			if ( prequel.optionsSpec()!=null ) {
+				for (ANTLRv4Parser.OptionContext option : prequel.optionsSpec().option()) {
+					if ( option.identifier()!=null && option.optionValue()!=null &&
+						 option.identifier().getText().equals("tokenVocab") )
+					{
+						tokenVocab = StringUtils.strip(option.optionValue().getText(), "'");
+					}
+				}
+			}
+			else if ( prequel.delegateGrammars()!=null ) {
+				for (ANTLRv4Parser.DelegateGrammarContext delegate : prequel.delegateGrammars().delegateGrammar()) {
+					List<ANTLRv4Parser.IdentifierContext> ids = delegate.identifier();
+					if ( !ids.isEmpty() ) {
+						// import X or import Y=X
+						imports.add(ids.get(ids.size()-1).getText());
+					}
+				}
+			}
+			else if ( prequel.tokensSpec()!=null && prequel.tokensSpec().idList()!=null ) {
+				for (ANTLRv4Parser.IdentifierContext id : prequel.tokensSpec().idList().identifier()) {
+					definedNames.add(id.getText());
+					vocabularyNames.add(id.getText());
+				}
+			}
+			else if ( prequel.channelsSpec()!=null && prequel.channelsSpec().idList()!=null ) {
+				for (ANTLRv4Parser.IdentifierContext id : prequel.channelsSpec().idList().identifier()) {
+					definedNames.add(id.getText());
+				}
+			}
+		}
+
+		if ( spec.rules()!=null ) {
+			for (ANTLRv4Parser.RuleSpecContext rule : spec.rules().ruleSpec()) {
+				if ( rule.parserRuleSpec()!=null && rule.parserRuleSpec().RULE_REF()!=null ) {
+					definedNames.add(rule.parserRuleSpec().RULE_REF().getText());
+				}
+				else if ( rule.lexerRule()!=null ) {
+					addLexerRule(rule.lexerRule(), definedNames, vocabularyNames);
+				}
+			}
+		}
+		for (ANTLRv4Parser.ModeSpecContext mode : spec.modeSpec()) {
+			if ( mode.identifier()!=null ) {
+				definedNames.add(mode.identifier().getText());
+			}
+			for (ANTLRv4Parser.LexerRuleContext rule : mode.lexerRule()) {
+				addLexerRule(rule, definedNames, vocabularyNames);
+			}
+		}
+
+		return new GrammarSummary(name, type, imports, tokenVocab, definedNames, vocabularyNames);
+	}
+
+	private static void addLexerRule(ANTLRv4Parser.LexerRuleContext rule, Set<String> definedNames, Set<String> vocabularyNames) {
+		if ( rule.TOKEN_REF()==null ) {
+			return;
+		}
+		definedNames.add(rule.TOKEN_REF().getText());
+		if ( rule.FRAGMENT()==null ) { // fragments are not visible to the parser
+			vocabularyNames.add(rule.TOKEN_REF().getText());
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public List<String> getImports() {
+		return imports;
+	}
+
+	@Nullable
+	public String getTokenVocab() {
+		return tokenVocab;
+	}
+
+	public Set<String> getDefinedNames() {
+		return definedNames;
+	}
+
+	public Set<String> getVocabularyNames() {
+		return vocabularyNames;
+	}
+
+	void save(DataOutput out) throws IOException {
+		out.writeUTF(name);
+		out.writeInt(type);
+		writeStrings(out, imports);
+		out.writeBoolean(tokenVocab!=null);
+		if ( tokenVocab!=null ) {
+			out.writeUTF(tokenVocab);
+		}
+		writeStrings(out, definedNames);
+		writeStrings(out, vocabularyNames);
+	}
+
+	static GrammarSummary read(DataInput in) throws IOException {
+		String name = in.readUTF();
+		int type = in.readInt();
+		List<String> imports = readStrings(in, new ArrayList<>());
+		String tokenVocab = in.readBoolean() ? in.readUTF() : null;
+		Set<String> definedNames = readStrings(in, new LinkedHashSet<>());
+		Set<String> vocabularyNames = readStrings(in, new LinkedHashSet<>());
+		return new GrammarSummary(name, type, imports, tokenVocab, definedNames, vocabularyNames);
+	}
+
+	private static void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static <T extends Collection<String>> T readStrings(DataInput in, T strings) throws IOException {
+		int n = in.readInt();
+		for (int i = 0; i<n; i++) {
+			strings.add(in.readUTF());
+		}
+		return strings;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if ( this==o ) return true;
+		if ( !(o instanceof GrammarSummary) ) return false;
+		GrammarSummary that = (GrammarSummary) o;
+		return type==that.type &&
+			name.equals(that.name) &&
+			imports.equals(that.imports) &&
+			Objects.equals(tokenVocab, that.tokenVocab) &&
+			definedNames.equals(that.definedNames) &&
+			vocabularyNames.equals(that.vocabularyNames);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, type, imports, tokenVocab, definedNames);
+	}
+}
@@ -0,0 +1,96 @@
+package org.antlr.intellij.plugin.resolve;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.antlr.intellij.plugin.ANTLRv4FileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+/** Grammar name -> {@link GrammarSummary} of each grammar file, so that
+ *  references to other grammars can be resolved without parsing and walking
+ *  each grammar of an import chain or the tokenVocab grammar.
+ */
+public class GrammarSymbolIndex extends FileBasedIndexExtension<String, GrammarSummary> {
+	public static final ID<String, GrammarSummary> NAME = ID.create("antlr.GrammarSymbolIndex");
+
+	@NotNull
+	@Override
+	public ID<String, GrammarSummary> getName() {
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, GrammarSummary, FileContent> getIndexer() {
+		return inputData -> {
+			GrammarSummary summary = GrammarSummary.of(inputData.getContentAsText());
+			return Collections.singletonMap(summary.getName(), summary);
+		};
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor() {
+		return EnumeratorStringDescriptor.INSTANCE;
+	}
+
+	@NotNull
+	@Override
+	public DataExternalizer<GrammarSummary> getValueExternalizer() {
+		return new DataExternalizer<GrammarSummary>() {
+			@Override
+			public void save(@NotNull DataOutput out, GrammarSummary value) throws IOException {
+				value.save(out);
+			}
+
+			@Override
+			public GrammarSummary read(@NotNull DataInput in) throws IOException {
+				return GrammarSummary.read(in);
+			}
+		};
+	}
+
+	@Override
+	public int getVersion() {
+		return 1;
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter() {
+		return new DefaultFileTypeSpecificInputFilter(ANTLRv4FileType.INSTANCE);
+	}
+
+	@Override
+	public boolean dependsOnFileContent() {
+		return true;
+	}
+
+	/** The summary of a grammar file, from the index, or from its text while indexing */
+	@Nullable
+	public static GrammarSummary getSummary(@NotNull PsiFile file) {
+		VirtualFile vfile = file.getVirtualFile();
+		if ( vfile==null || DumbService.isDumb(file.getProject()) ) {
+			return CachedValuesManager.getCachedValue(file, () ->
+				CachedValueProvider.Result.create(GrammarSummary.of(file.getViewProvider().getContents()), file)
+			);
+		}
+		Map<String, GrammarSummary> data = FileBasedIndex.getInstance().getFileData(NAME, vfile, file.getProject());
+		Iterator<GrammarSummary> summaries = data.values().iterator();
+		return summaries.hasNext() ? summaries.next() : null;
+	}
+}
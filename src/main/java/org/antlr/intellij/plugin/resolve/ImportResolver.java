@@ -1,18 +1,25 @@
 package org.antlr.intellij.plugin.resolve;
 
 import com.intellij.lang.ASTNode;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.intellij.plugin.psi.GrammarElementRefNode;
+import org.antlr.intellij.plugin.psi.GrammarHeader;
 import org.antlr.intellij.plugin.psi.GrammarSpecNode;
 import org.antlr.intellij.plugin.psi.MyPsiUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.antlr.intellij.plugin.ANTLRv4TokenTypes.RULE_ELEMENT_TYPES;
 import static org.antlr.intellij.plugin.resolve.TokenVocabResolver.findRelativeFile;
@@ -34,51 +41,55 @@ public class ImportResolver {
 		return node != null && node.getElementType() == RULE_ELEMENT_TYPES.get(ANTLRv4Parser.RULE_delegateGrammar);
 	}
 
+	/**
+	 * Finds the definition of {@code ruleName} in the grammars imported by {@code grammarFile}, directly or not.
+	 */
 	public static PsiElement resolveInImportedFiles(@NotNull PsiFile grammarFile, @NotNull String ruleName) {
-		return resolveInImportedFiles(grammarFile, ruleName, new ArrayList<>());
+		VirtualFile definingFile = getImportedDefinitions(grammarFile).get(ruleName);
+		if ( definingFile==null || !definingFile.isValid() ) {
+			return null;
+		}
+		PsiFile definingGrammar = grammarFile.getManager().findFile(definingFile);
+		GrammarSpecNode grammar = PsiTreeUtil.getChildOfType(definingGrammar, GrammarSpecNode.class);
+		return MyPsiUtils.findSpecNode(grammar, ruleName);
 	}
 
-	private static PsiElement resolveInImportedFiles(PsiFile grammarFile, String ruleName, List<PsiFile> visitedFiles) {
-		DelegateGrammarsVisitor visitor = new DelegateGrammarsVisitor();
-		grammarFile.accept(visitor);
+	/**
+	 * The names defined in the grammars imported by {@code grammarFile}, directly or not, and the file defining
+	 * them. Imports are searched depth-first in order, and the first definition wins. Computed from the
+	 * {@link GrammarSymbolIndex} once per PSI modification, so resolving a reference doesn't depend on the depth
+	 * of the import chain.
+	 */
+	public static Map<String, VirtualFile> getImportedDefinitions(@NotNull PsiFile grammarFile) {
+		return CachedValuesManager.getCachedValue(grammarFile, () -> {
+			Map<String, VirtualFile> definitions = new HashMap<>();
+			List<PsiFile> visitedFiles = new ArrayList<>();
+			visitedFiles.add(grammarFile);
+			List<String> imports = GrammarHeader.getInstance(grammarFile).getImports();
+			collectImportedDefinitions(grammarFile, imports, definitions, visitedFiles);
+			return CachedValueProvider.Result.create(definitions,
+				PsiModificationTracker.MODIFICATION_COUNT, VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS);
+		});
+	}
 
-		for ( PsiFile importedGrammar : visitor.importedGrammars ) {
-			if ( visitedFiles.contains(importedGrammar) ) {
+	private static void collectImportedDefinitions(PsiFile grammarFile, List<String> imports,
+												   Map<String, VirtualFile> definitions, List<PsiFile> visitedFiles) {
+		for ( String importedName : imports ) {
+			PsiFile importedGrammar = findRelativeFile(importedName, grammarFile);
+			if ( importedGrammar==null || visitedFiles.contains(importedGrammar) ) {
 				continue;
 			}
 			visitedFiles.add(importedGrammar);
 
-			GrammarSpecNode grammar = PsiTreeUtil.getChildOfType(importedGrammar, GrammarSpecNode.class);
-			PsiElement specNode = MyPsiUtils.findSpecNode(grammar, ruleName);
-
-			if ( specNode!=null ) {
-				return specNode;
-			}
-
-			// maybe the imported grammar also imports other grammars itself?
-			specNode = resolveInImportedFiles(importedGrammar, ruleName, visitedFiles);
-			if ( specNode!=null ) {
-				return specNode;
-			}
-		}
-
-		return null;
-	}
-
-	private static class DelegateGrammarsVisitor extends PsiRecursiveElementVisitor {
-
-		List<PsiFile> importedGrammars = new ArrayList<>();
-
-		@Override
-		public void visitElement(PsiElement element) {
-			if ( isImportStatement(element) ) {
-				PsiFile importedGrammar = findRelativeFile(element.getText(), element.getContainingFile());
-
-				if (importedGrammar != null) {
-					importedGrammars.add(importedGrammar);
+			GrammarSummary importedSummary = GrammarSymbolIndex.getSummary(importedGrammar);
+			if ( importedSummary!=null ) {
+				for ( String name : importedSummary.getDefinedNames() ) {
+					definitions.putIfAbsent(name, importedGrammar.getVirtualFile());
 				}
+
+				// maybe the imported grammar also imports other grammars itself?
+				collectImportedDefinitions(importedGrammar, importedSummary.getImports(), definitions, visitedFiles);
 			}
-			super.visitElement(element);
 		}
 	}
 }
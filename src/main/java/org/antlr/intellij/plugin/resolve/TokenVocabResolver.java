@@ -41,15 +41,16 @@ public class TokenVocabResolver {
 
 	/**
 	 * Tries to find a declaration named {@code ruleName} in the {@code tokenVocab} file if it exists.
+	 * The {@link GrammarSymbolIndex} tells whether it's there before the file is searched.
 	 */
 	@Nullable
 	public static PsiElement resolveInTokenVocab(GrammarElementRefNode reference, String ruleName) {
-		String tokenVocab = MyPsiUtils.findTokenVocabIfAny((ANTLRv4FileRoot) reference.getContainingFile());
+		PsiFile tokenVocabFile = findTokenVocabFile(reference.getContainingFile());
 
-		if (tokenVocab != null) {
-			PsiFile tokenVocabFile = findRelativeFile(tokenVocab, reference.getContainingFile());
+		if (tokenVocabFile != null) {
+			GrammarSummary vocabulary = GrammarSymbolIndex.getSummary(tokenVocabFile);
 
-			if (tokenVocabFile != null) {
+			if (vocabulary != null && vocabulary.getVocabularyNames().contains(ruleName)) {
 				GrammarSpecNode lexerGrammar = PsiTreeUtil.findChildOfType(tokenVocabFile, GrammarSpecNode.class);
 				PsiElement node = MyPsiUtils.findSpecNode(lexerGrammar, ruleName);
 
@@ -68,6 +69,20 @@ public class TokenVocabResolver {
 		return null;
 	}
 
+	/**
+	 * The grammar file named by the {@code tokenVocab} option of {@code grammarFile}, if any.
+	 */
+	@Nullable
+	public static PsiFile findTokenVocabFile(PsiFile grammarFile) {
+		String tokenVocab = GrammarHeader.getInstance(grammarFile).getTokenVocab();
+
+		if (tokenVocab != null) {
+			return findRelativeFile(tokenVocab, grammarFile);
+		}
+
+		return null;
+	}
+
 	private static boolean isOptionValue(PsiElement el) {
 		ASTNode node = el.getNode();
 		return node != null && node.getElementType() == RULE_ELEMENT_TYPES.get(ANTLRv4Parser.RULE_optionValue);
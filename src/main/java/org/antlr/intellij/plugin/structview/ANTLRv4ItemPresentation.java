@@ -3,14 +3,10 @@ package org.antlr.intellij.plugin.structview;
 import com.intellij.lang.ASTNode;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.util.PsiTreeUtil;
 import org.antlr.intellij.plugin.ANTLRv4FileRoot;
-import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
-import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.intellij.plugin.psi.GrammarElementRefNode;
-import org.antlr.intellij.plugin.psi.GrammarSpecNode;
+import org.antlr.intellij.plugin.psi.GrammarHeader;
 import org.antlr.intellij.plugin.psi.ModeSpecNode;
-import org.antlr.intellij.plugin.psi.MyPsiUtils;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
@@ -30,10 +26,9 @@ public class ANTLRv4ItemPresentation implements ItemPresentation {
 	@Override
 	public String getPresentableText() {
 		if (element instanceof ANTLRv4FileRoot) {
-			GrammarSpecNode gnode = PsiTreeUtil.findChildOfType(element, GrammarSpecNode.class);
-			PsiElement id = MyPsiUtils.findChildOfType(gnode, ANTLRv4TokenTypes.RULE_ELEMENT_TYPES.get(ANTLRv4Parser.RULE_identifier));
-			if ( id!=null ) {
-				return id.getText();
+			String name = GrammarHeader.getInstance((ANTLRv4FileRoot) element).getName();
+			if ( name!=null ) {
+				return name;
 			}
 			return "<n/a>";
 		}
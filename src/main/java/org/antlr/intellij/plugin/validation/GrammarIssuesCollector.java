@@ -1,11 +1,10 @@
 package org.antlr.intellij.plugin.validation;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
-import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
-import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.intellij.plugin.parsing.GrammarAnalysis;
+import org.antlr.intellij.plugin.parsing.GrammarAnalysisService;
 import org.antlr.runtime.Token;
 import org.antlr.v4.Tool;
 import org.antlr.v4.codegen.CodeGenerator;
@@ -14,109 +13,51 @@ import org.antlr.v4.parse.ANTLRParser;
 import org.antlr.v4.runtime.misc.IntervalSet;
 import org.antlr.v4.tool.*;
 import org.antlr.v4.tool.ast.GrammarAST;
-import org.antlr.v4.tool.ast.GrammarRootAST;
 import org.antlr.v4.tool.ast.RuleRefAST;
-import org.jetbrains.annotations.Nullable;
 import org.stringtemplate.v4.ST;
 
 import java.io.File;
-import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.util.*;
 
 
 public class GrammarIssuesCollector {
-    private static final String LANGUAGE_ARG_PREFIX = "-Dlanguage=";
-
     public static final Logger LOG = Logger.getInstance(GrammarIssuesCollector.class.getName());
 
+    /** The issues of the shared {@link GrammarAnalysis} of {@code file}, plus unused rules */
     public static List<GrammarIssue> collectGrammarIssues(PsiFile file) {
-        String grammarFileName = file.getVirtualFile().getPath();
-        LOG.info("doAnnotate "+grammarFileName);
-        String fileContents = file.getText();
-        List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(file.getProject(), file.getVirtualFile());
-        GrammarIssuesCollectorToolListener listener = new GrammarIssuesCollectorToolListener();
-
-        String languageArg = findLanguageArg(args);
-
-        if ( languageArg!=null ) {
-            String language = languageArg.substring(LANGUAGE_ARG_PREFIX.length());
-
-            if ( !targetExists(language) ) {
-                GrammarIssue issue = new GrammarIssue(null);
-                issue.setAnnotation("Unknown target language '" + language + "', analysis will be done using the default target language 'Java'");
-                listener.getIssues().add(issue);
-
-                args.remove(languageArg);
-            }
+        VirtualFile vfile = file.getVirtualFile();
+        if ( vfile==null ) {
+            LOG.error("doAnnotate no virtual file for "+file);
+            return new ArrayList<>();
         }
+        LOG.info("doAnnotate "+vfile.getPath());
+        GrammarAnalysis analysis = GrammarAnalysisService.getInstance(file.getProject()).analyze(vfile);
 
-        final Tool antlr = new Tool(args.toArray(new String[args.size()]));
-        if ( !args.contains("-lib") ) {
-            // getContainingDirectory() must be identified as a read operation on file system
-            ApplicationManager.getApplication().runReadAction(() -> {
-                antlr.libDirectory = file.getContainingDirectory().toString();
-            });
+        // the analysis is shared, work on copies
+        List<GrammarIssue> issues = new ArrayList<>();
+        for (GrammarIssue analysisIssue : analysis.getIssues()) {
+            GrammarIssue issue = new GrammarIssue(analysisIssue.getMsg());
+            issue.setAnnotation(analysisIssue.getAnnotation());
+            issues.add(issue);
         }
 
-        antlr.removeListeners();
-        antlr.addListener(listener);
-        try {
-            StringReader sr = new StringReader(fileContents);
-            ANTLRReaderStream in = new ANTLRReaderStream(sr);
-            in.name = file.getName();
-            GrammarRootAST ast = antlr.parse(file.getName(), in);
-            if ( ast==null || ast.hasErrors ) {
-                for (GrammarIssue issue : listener.getIssues()) {
-                    processIssue(file, issue);
-                }
-                return listener.getIssues();
-            }
-            Grammar g = antlr.createGrammar(ast);
-            g.fileName = grammarFileName;
-
-            String vocabName = g.getOptionString("tokenVocab");
-            if ( vocabName!=null ) { // import vocab to avoid spurious warnings
-                LOG.info("token vocab file "+vocabName);
-                g.importTokensFromTokensFile();
-            }
-
-            VirtualFile vfile = file.getVirtualFile();
-            if ( vfile==null ) {
-                LOG.error("doAnnotate no virtual file for "+file);
-                return listener.getIssues();
-            }
-            g.fileName = vfile.getPath();
-            antlr.process(g, false);
-
+        Grammar g = analysis.getGrammar();
+        if ( g!=null ) {
             Map<String, GrammarAST> unusedRules = getUnusedParserRules(g);
             if ( unusedRules!=null ) {
                 for (String r : unusedRules.keySet()) {
                     Token ruleDefToken = unusedRules.get(r).getToken();
                     GrammarIssue issue = new GrammarIssue(new GrammarInfoMessage(g.fileName, ruleDefToken, r));
-                    listener.getIssues().add(issue);
+                    issues.add(issue);
                 }
             }
-
-            for (GrammarIssue issue : listener.getIssues()) {
-                processIssue(file, issue);
-            }
-        }
-        catch (Exception e) {
-            LOG.error("antlr can't process "+file.getName(), e);
         }
-        return listener.getIssues();
-    }
 
-    @Nullable
-    private static String findLanguageArg(List<String> args) {
-        for ( String arg : args ) {
-            if ( arg.startsWith(LANGUAGE_ARG_PREFIX) ) {
-                return arg;
-            }
+        for (GrammarIssue issue : issues) {
+            processIssue(file, issue);
         }
-
-        return null;
+        return issues;
     }
 
     public static void processIssue(final PsiFile file, GrammarIssue issue) {
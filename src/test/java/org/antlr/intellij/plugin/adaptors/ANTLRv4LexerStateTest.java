@@ -0,0 +1,68 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import junit.framework.TestCase;
+import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.IntegerStack;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class ANTLRv4LexerStateTest extends TestCase {
+
+	public void test_usual_states_are_shared() {
+		// Given
+		IntegerStack stack = new IntegerStack();
+		stack.push(Lexer.DEFAULT_MODE);
+
+		// When
+		ANTLRv4LexerState inDefaultMode = ANTLRv4LexerState.get(Lexer.DEFAULT_MODE, null, ANTLRv4Lexer.RULE_REF);
+		ANTLRv4LexerState inAction = ANTLRv4LexerState.get(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF);
+
+		// Then
+		assertSame(inDefaultMode, ANTLRv4LexerState.get(Lexer.DEFAULT_MODE, new IntegerStack(), ANTLRv4Lexer.RULE_REF));
+		assertSame(inAction, ANTLRv4LexerState.get(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF));
+		assertEquals(new ANTLRv4LexerState(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF), inAction);
+		assertFalse(inAction.equals(ANTLRv4LexerState.get(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.TOKEN_REF)));
+	}
+
+	public void test_nested_modes_are_not_shared() {
+		// Given
+		IntegerStack stack = new IntegerStack();
+		stack.push(Lexer.DEFAULT_MODE);
+		stack.push(ANTLRv4Lexer.Action);
+
+		ANTLRv4LexerState expected = new ANTLRv4LexerState(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF);
+
+		// When
+		ANTLRv4LexerState state = ANTLRv4LexerState.get(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF);
+		stack.pop();
+
+		// Then
+		assertEquals(expected, state);
+		assertNotSame(state, ANTLRv4LexerState.get(ANTLRv4Lexer.Action, stack, ANTLRv4Lexer.RULE_REF));
+	}
+
+	public void test_lexing_a_grammar_creates_few_states() {
+		// Given
+		ANTLRv4Lexer lexer = new ANTLRv4Lexer(CharStreams.fromString(
+			"grammar T;\n" +
+			"options { tokenVocab = L; }\n" +
+			"@members { int i; }\n" +
+			"r[int x] : A {i++;} b ;\n" +
+			"b : A+ {x}? ;\n" +
+			"A : [a-z]+ -> channel(HIDDEN) ;\n"));
+		Set<ANTLRv4LexerState> states = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		// When
+		for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+			states.add(ANTLRv4LexerState.get(lexer._mode, lexer._modeStack, lexer.getCurrentRuleType()));
+		}
+
+		// Then
+		assertTrue(states.size() < 10);
+	}
+}
@@ -0,0 +1,112 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import com.intellij.openapi.util.io.StreamUtil;
+import junit.framework.TestCase;
+import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
+import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
+import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class GrammarParsingBenchmarkTest extends TestCase {
+	private static final int ITERATIONS = 20;
+
+	public void test_SLL_first_builds_the_same_tree_as_LL() throws IOException {
+		// Given
+		String grammar = readSqlBase();
+
+		ANTLRv4Parser llParser = createParser(grammar);
+		ANTLRv4Parser sllParser = createParser(grammar);
+
+		// When
+		ParseTree ll = parseLL(llParser);
+		ParseTree sll = ANTLRv4GrammarParser.parseSLLFirst(sllParser, ANTLRv4Parser.RULE_grammarSpec);
+
+		// Then
+		assertEquals(ll.toStringTree(llParser), sll.toStringTree(sllParser));
+	}
+
+	public void test_syntax_errors_are_reported_once_by_the_LL_stage() {
+		// Given
+		ANTLRv4Parser parser = createParser("grammar T;\nr : A ( B ;\ns : C ;\n");
+		SyntaxErrorListener listener = new SyntaxErrorListener();
+		parser.addErrorListener(listener);
+
+		// When
+		ParseTree tree = ANTLRv4GrammarParser.parseSLLFirst(parser, ANTLRv4Parser.RULE_grammarSpec);
+
+		// Then
+		assertEquals(1, listener.getSyntaxErrors().size());
+		assertTrue(tree.toStringTree(parser).contains("(parserRuleSpec s :"));
+		assertEquals(PredictionMode.LL, parser.getInterpreter().getPredictionMode());
+	}
+
+	/** Not a pass/fail test, reports how much faster parsing SqlBase.g4 is
+	 *  SLL-first with the shared cache than with full LL prediction.
+	 */
+	public void test_SqlBase_speedup() throws IOException {
+		// Given
+		String grammar = readSqlBase();
+		parseLL(createParser(grammar)); // warm up both
+		ANTLRv4GrammarParser.parseSLLFirst(createParser(grammar), ANTLRv4Parser.RULE_grammarSpec);
+
+		// When
+		long llTime = 0;
+		long sllTime = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			ANTLRv4Parser parser = createParser(grammar);
+			long start = System.nanoTime();
+			parseLL(parser);
+			llTime += System.nanoTime() - start;
+
+			parser = createParser(grammar);
+			start = System.nanoTime();
+			ANTLRv4GrammarParser.parseSLLFirst(parser, ANTLRv4Parser.RULE_grammarSpec);
+			sllTime += System.nanoTime() - start;
+		}
+
+		// Then
+		System.out.printf("SqlBase.g4: LL %.2fms, SLL-first %.2fms per parse, %.2fx speedup, %d DFA states cached%n",
+			llTime / 1e6 / ITERATIONS, sllTime / 1e6 / ITERATIONS, (double) llTime / sllTime,
+			SharedPredictionCache.getInstance().getDFAStateCount());
+	}
+
+	public void test_shared_cache_starts_over_once_too_big() throws IOException {
+		// Given
+		SharedPredictionCache cache = SharedPredictionCache.getInstance();
+		ANTLRv4Parser parser = createParser(readSqlBase());
+		cache.install(parser);
+		parser.grammarSpec();
+		int states = cache.getDFAStateCount();
+		assertTrue(states > 0);
+
+		// When
+		SharedPredictionCache.trim(states);
+		SharedPredictionCache notTooBig = SharedPredictionCache.getInstance();
+		SharedPredictionCache.trim(states - 1);
+
+		// Then
+		assertSame(cache, notTooBig);
+		assertNotSame(cache, SharedPredictionCache.getInstance());
+		assertEquals(0, SharedPredictionCache.getInstance().getDFAStateCount());
+	}
+
+	private static ParseTree parseLL(ANTLRv4Parser parser) {
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		return parser.grammarSpec();
+	}
+
+	private String readSqlBase() throws IOException {
+		return StreamUtil.readText(getClass().getResourceAsStream("/parser/SqlBase.g4"), StandardCharsets.UTF_8);
+	}
+
+	private static ANTLRv4Parser createParser(String grammar) {
+		ANTLRv4Lexer lexer = new ANTLRv4Lexer(CharStreams.fromString(grammar));
+		return new ANTLRv4Parser(new CommonTokenStream(lexer));
+	}
+}
@@ -0,0 +1,188 @@
+package org.antlr.intellij.plugin.adaptors;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.PsiTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
+import org.antlr.intellij.plugin.TestUtils;
+import org.antlr.intellij.plugin.psi.LexerRuleSpecNode;
+import org.antlr.intellij.plugin.psi.ParserRuleSpecNode;
+import org.antlr.intellij.plugin.psi.RuleSpecNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RuleBodyReparseTest extends LightPlatformCodeInsightFixtureTestCase {
+	public void testRuleBodiesAreReparseableNodes() {
+		// When
+		PsiFile file = myFixture.configureByText("T.g4", "grammar T;\nr : A b ;\nb : A* ;\nA : [a-z]+ ;\n");
+
+		// Then
+		ParserRuleSpecNode r = PsiTreeUtil.findChildOfType(file, ParserRuleSpecNode.class);
+		LexerRuleSpecNode a = PsiTreeUtil.findChildOfType(file, LexerRuleSpecNode.class);
+		assertNotNull(r.getNode().findChildByType(ANTLRv4TokenTypes.PARSER_RULE_BODY));
+		assertNotNull(a.getNode().findChildByType(ANTLRv4TokenTypes.LEXER_RULE_BODY));
+	}
+
+	public void testBodyWithSyntaxErrorIsNotLazy() {
+		// When
+		PsiFile file = myFixture.configureByText("T.g4", "grammar T;\nr : A ( b ;\nb : A ;\n");
+
+		// Then
+		ParserRuleSpecNode r = PsiTreeUtil.findChildOfType(file, ParserRuleSpecNode.class);
+		assertNull(r.getNode().findChildByType(ANTLRv4TokenTypes.PARSER_RULE_BODY));
+	}
+
+	public void testTypingInParserRuleBody() {
+		// Given
+		myFixture.configureByText("T.g4", "grammar T;\nr : A b<caret> ;\nb : A* ;\nA : 'a' ;\n");
+		Map<String, RuleSpecNode> rules = getRules();
+		ASTNode body = getBody("r");
+
+		// When
+		type(" | A");
+
+		// Then
+		assertSameStructureAsFullReparse();
+		assertOnlyBodyReparsed(rules, body);
+		assertEquals("A b | A", getBody("r").getText());
+	}
+
+	public void testTypingInLexerRuleBody() {
+		// Given
+		myFixture.configureByText("T.g4", "lexer grammar T;\nA : 'a'<caret> ;\nB : 'b' ;\n");
+		Map<String, RuleSpecNode> rules = getRules();
+		ASTNode body = getBody("A");
+
+		// When
+		type(" [x-z]+ -> skip");
+
+		// Then
+		assertSameStructureAsFullReparse();
+		assertOnlyBodyReparsed(rules, body);
+		assertEquals("'a' [x-z]+ -> skip", getBody("A").getText());
+	}
+
+	public void testEditsLeavingTheBodyReparseTheFile() {
+		// Given
+		myFixture.configureByText("T.g4", "grammar T;\nr : A<caret> B ;\nb : A* ;\nA : 'a' ;\nB : 'b' ;\n");
+		RuleSpecNode r = getRules().get("r");
+		ASTNode body = getBody("r");
+
+		// When
+		type(" ;\ns : C");
+
+		// Then the rule itself was reparsed, not just its body
+		assertSameStructureAsFullReparse();
+		assertNotSame(r, getRules().get("r"));
+		assertNull(body.getTreeParent());
+		assertEquals("A", getBody("r").getText());
+		assertEquals("C B", getBody("s").getText());
+	}
+
+	public void testUnterminatedActionInBody() {
+		// Given
+		myFixture.configureByText("T.g4", "grammar T;\nr : A<caret> ;\nb : A* ;\nA : 'a' ;\n");
+
+		// When
+		type(" {");
+
+		// Then
+		assertSameStructureAsFullReparse();
+	}
+
+	/** Typing and deleting characters in one rule of a grammar of more than 20k lines.
+	 *  With bodies reparsed on their own, the time doesn't depend on the size of the grammar.
+	 */
+	public void testTypingLatencyInLargeGrammar() {
+		// Given
+		StringBuilder grammar = new StringBuilder("grammar Large;\n");
+		for (int i = 0; i < 5000; i++) {
+			grammar.append("r").append(i).append("\n")
+				.append("\t: A r").append(i + 1).append(" (B | C)*\n")
+				.append("\t| 'x' r").append(i + 2).append("?\n")
+				.append("\t;\n");
+		}
+		grammar.append("A : [a-z]+ ;\nB : 'b' ;\nC : 'c' ;\n");
+		int offset = grammar.indexOf("(B | C)*", grammar.length() / 2) + "(B | C".length();
+		myFixture.configureByText("Large.g4", grammar.toString());
+		myFixture.getEditor().getCaretModel().moveToOffset(offset);
+		PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+		myFixture.getFile().getNode().getChildren(null); // parse before measuring
+
+		// When
+		PlatformTestUtil.startPerformanceTest("typing in a rule body of a large grammar", 2000, () -> {
+			for (char c : " | A".toCharArray()) {
+				myFixture.type(c);
+				PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+			}
+			for (int i = 0; i < 4; i++) {
+				myFixture.type('\b');
+				PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+			}
+		}).assertTiming();
+
+		// Then
+		assertSameStructureAsFullReparse();
+	}
+
+	private void type(String text) {
+		for (char c : text.toCharArray()) {
+			myFixture.type(c);
+			PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+		}
+	}
+
+	private ASTNode getBody(String ruleName) {
+		for (ParserRuleSpecNode rule : PsiTreeUtil.findChildrenOfType(myFixture.getFile(), ParserRuleSpecNode.class)) {
+			if ( ruleName.equals(rule.getName()) ) {
+				return rule.getNode().findChildByType(ANTLRv4TokenTypes.PARSER_RULE_BODY);
+			}
+		}
+		for (LexerRuleSpecNode rule : PsiTreeUtil.findChildrenOfType(myFixture.getFile(), LexerRuleSpecNode.class)) {
+			if ( ruleName.equals(rule.getName()) ) {
+				return rule.getNode().findChildByType(ANTLRv4TokenTypes.LEXER_RULE_BODY);
+			}
+		}
+		fail("no rule " + ruleName);
+		return null;
+	}
+
+	private Map<String, RuleSpecNode> getRules() {
+		Map<String, RuleSpecNode> rules = new LinkedHashMap<>();
+		for (RuleSpecNode rule : PsiTreeUtil.findChildrenOfType(myFixture.getFile(), RuleSpecNode.class)) {
+			rules.put(rule.getName(), rule);
+		}
+		return rules;
+	}
+
+	/** The rules, including the one being edited, are the same instances as
+	 *  before, only the body of the edited rule was replaced: a reparse of
+	 *  the whole grammar would have created a new node for that rule
+	 */
+	private void assertOnlyBodyReparsed(Map<String, RuleSpecNode> rulesBefore, ASTNode bodyBefore) {
+		Map<String, RuleSpecNode> rules = getRules();
+		assertEquals(rulesBefore.keySet(), rules.keySet());
+		for (String name : rules.keySet()) {
+			assertSame(name, rulesBefore.get(name), rules.get(name));
+		}
+		assertNull(bodyBefore.getTreeParent());
+	}
+
+	private void assertSameStructureAsFullReparse() {
+		PsiTestUtil.checkFileStructure(myFixture.getFile());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// This can avoid exceptions
+		ANTLRv4PluginController.getInstance(getProject()).getConsole().setOutputPaused(true);
+
+		TestUtils.tearDownIgnoringObjectNotDisposedException(() -> super.tearDown());
+	}
+}
@@ -0,0 +1,20 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+
+public class CappedSyntaxErrorListenerTest extends TestCase {
+
+	public void test_errors_past_the_cap_are_only_counted() {
+		// Given
+		CappedSyntaxErrorListener listener = new CappedSyntaxErrorListener(3);
+
+		// When
+		for (int i = 0; i<10; i++) {
+			listener.syntaxError(null, null, i+1, 0, "error "+i, null);
+		}
+
+		// Then
+		assertEquals(3, listener.getSyntaxErrors().size());
+		assertEquals(10, listener.getErrorCount());
+	}
+}
@@ -0,0 +1,104 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.LightPlatformCodeInsightTestCase;
+import org.antlr.intellij.plugin.TestUtils;
+import org.antlr.v4.tool.Grammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class DiffAwareToolTest extends LightPlatformCodeInsightTestCase {
+	private static final long LONG_AGO = 1_000_000_000_000L;
+
+	private File dir;
+	private File grammarFile;
+	private DiffAwareTool tool;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = FileUtil.createTempDirectory("generation", null);
+		grammarFile = new File(dir, "T.g4");
+		tool = new DiffAwareTool(new String[] {"-o", dir.getPath()});
+	}
+
+	public void testFirstGenerationWritesEverything() throws IOException {
+		// When
+		generate("grammar T;\nr : A ;\nA : 'a' ;\n");
+
+		// Then
+		assertEquals(getNames(Arrays.asList(dir.listFiles((d, name) -> !name.endsWith(".g4")))), getNames(tool.getWrittenFiles()));
+		assertTrue(tool.getUnchangedFiles().isEmpty());
+	}
+
+	public void testIdenticalOutputIsNotRewritten() throws IOException {
+		// Given
+		generate("grammar T;\nr : A ;\nA : 'a' ;\n");
+		Set<String> generated = getNames(tool.getWrittenFiles());
+		ageOutputFiles();
+
+		// When
+		generate("grammar T;\nr : A ;\nA : 'a' ;\n");
+
+		// Then
+		assertTrue(tool.getWrittenFiles().isEmpty());
+		assertEquals(generated, getNames(tool.getUnchangedFiles()));
+		for (File file : tool.getUnchangedFiles()) {
+			assertEquals(file.getName(), LONG_AGO, file.lastModified());
+		}
+	}
+
+	public void testChangedOutputIsWritten() throws IOException {
+		// Given
+		generate("grammar T;\nr : A ;\nA : 'a' ;\n");
+		ageOutputFiles();
+
+		// When a parser rule is renamed, the lexer stays the same
+		generate("grammar T;\ns : A ;\nA : 'a' ;\n");
+
+		// Then
+		Set<String> written = getNames(tool.getWrittenFiles());
+		assertTrue(written.contains("TParser.java"));
+		assertTrue(written.contains("TListener.java"));
+		assertTrue(getNames(tool.getUnchangedFiles()).contains("TLexer.java"));
+		assertFalse(written.contains("TLexer.java"));
+		for (File file : tool.getWrittenFiles()) {
+			assertTrue(file.getName(), file.lastModified()!=LONG_AGO);
+		}
+		assertTrue(FileUtil.loadFile(new File(dir, "TParser.java")).contains("public final SContext s()"));
+	}
+
+	private void generate(String text) throws IOException {
+		FileUtil.writeToFile(grammarFile, text);
+		tool.startGeneration();
+		// as Tool.processGrammarsOnCommandLine() does
+		Grammar g = tool.createGrammar(tool.parseGrammar(grammarFile.getPath()));
+		g.fileName = grammarFile.getPath();
+		tool.process(g, true);
+		assertEquals(0, tool.getNumErrors());
+	}
+
+	private void ageOutputFiles() {
+		for (File file : tool.getWrittenFiles()) {
+			assertTrue(file.setLastModified(LONG_AGO));
+		}
+	}
+
+	private static Set<String> getNames(Iterable<File> files) {
+		Set<String> names = new HashSet<>();
+		for (File file : files) {
+			names.add(file.getName());
+		}
+		return names;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.delete(dir);
+		TestUtils.tearDownIgnoringObjectNotDisposedException(() -> super.tearDown());
+	}
+}
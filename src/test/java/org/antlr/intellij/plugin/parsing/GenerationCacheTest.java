@@ -0,0 +1,129 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformCodeInsightTestCase;
+import org.antlr.intellij.plugin.TestUtils;
+import org.antlr.v4.parse.TokenVocabParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class GenerationCacheTest extends LightPlatformCodeInsightTestCase {
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = FileUtil.createTempDirectory("generation", null);
+	}
+
+	public void testTouchingTheGrammarKeepsTheKey() throws IOException {
+		// Given
+		VirtualFile file = createGrammar("T.g4", "grammar T;\nr : A ;\nA : 'a' ;\n");
+		String before = computeKey(file);
+
+		// When
+		File ioFile = new File(file.getPath());
+		assertTrue(ioFile.setLastModified(ioFile.lastModified() + 10_000));
+		file.refresh(false, false);
+
+		// Then
+		assertEquals(before, computeKey(file));
+	}
+
+	public void testChangingTheArgumentsChangesTheKey() throws IOException {
+		// Given
+		VirtualFile file = createGrammar("T.g4", "grammar T;\nr : A ;\nA : 'a' ;\n");
+		List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(getProject(), file);
+		String before = computeKey(args, file);
+
+		// When
+		List<String> otherArgs = new ArrayList<>(args);
+		otherArgs.add("-visitor");
+
+		// Then
+		assertFalse(before.equals(computeKey(otherArgs, file)));
+	}
+
+	public void testEditingAnImportedGrammarChangesTheKey() throws IOException {
+		// Given
+		VirtualFile imported = createGrammar("Common.g4", "grammar Common;\nid : ID ;\nID : [a-z]+ ;\n");
+		VirtualFile importer = createGrammar("T.g4", "grammar T;\nimport Common;\nr : id ;\n");
+		String before = computeKey(importer);
+
+		// When
+		edit(imported, "grammar Common;\nid : ID | INT ;\nID : [a-z]+ ;\nINT : [0-9]+ ;\n");
+
+		// Then
+		assertFalse(before.equals(computeKey(importer)));
+	}
+
+	public void testChangingTheTokensFileChangesTheKey() throws IOException {
+		// Given a parser whose lexer grammar isn't there, only its tokens file
+		VirtualFile parser = createGrammar("TParser.g4", "parser grammar TParser;\noptions { tokenVocab = TLexer; }\nr : A ;\n");
+		GrammarAnalysis analysis = analyze(parser);
+		File tokensFile = new TokenVocabParser(analysis.getGrammar()).getImportedVocabFile();
+		FileUtil.writeToFile(tokensFile, "A=1\n");
+		String before = computeKey(parser);
+
+		// When
+		FileUtil.writeToFile(tokensFile, "B=1\nA=2\n");
+
+		// Then
+		assertFalse(before.equals(computeKey(parser)));
+	}
+
+	public void testDeletedOutputFileMakesTheGenerationStale() throws IOException {
+		// Given
+		GenerationCache cache = new GenerationCache();
+		File parser = new File(dir, "TParser.java");
+		File lexer = new File(dir, "TLexer.java");
+		FileUtil.writeToFile(parser, "class TParser {}");
+		FileUtil.writeToFile(lexer, "class TLexer {}");
+		cache.generated("T.g4", "key", Arrays.asList(parser, lexer));
+		assertTrue(cache.isUpToDate("T.g4", "key"));
+		assertFalse(cache.isUpToDate("T.g4", "other key"));
+
+		// When
+		FileUtil.delete(lexer);
+
+		// Then
+		assertFalse(cache.isUpToDate("T.g4", "key"));
+	}
+
+	private String computeKey(VirtualFile file) {
+		return computeKey(RunANTLROnGrammarFile.getANTLRArgsAsList(getProject(), file), file);
+	}
+
+	private String computeKey(List<String> args, VirtualFile file) {
+		return GenerationCache.computeKey(args, Collections.singletonList(analyze(file)));
+	}
+
+	private GrammarAnalysis analyze(VirtualFile file) {
+		return GrammarAnalysisService.getInstance(getProject()).analyze(file);
+	}
+
+	private VirtualFile createGrammar(String name, String text) throws IOException {
+		File file = new File(dir, name);
+		FileUtil.writeToFile(file, text);
+		return LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
+	}
+
+	private static void edit(VirtualFile file, String text) throws IOException {
+		WriteAction.runAndWait(() -> VfsUtil.saveText(file, text));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.delete(dir);
+		TestUtils.tearDownIgnoringObjectNotDisposedException(() -> super.tearDown());
+	}
+}
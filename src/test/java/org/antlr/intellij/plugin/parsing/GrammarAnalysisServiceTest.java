@@ -0,0 +1,216 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformCodeInsightTestCase;
+import org.antlr.intellij.plugin.TestUtils;
+import org.antlr.intellij.plugin.validation.GrammarIssue;
+import org.antlr.v4.Tool;
+import org.antlr.v4.tool.ANTLRMessage;
+import org.antlr.v4.tool.ANTLRToolListener;
+import org.antlr.v4.tool.ErrorType;
+import org.antlr.v4.tool.Grammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+public class GrammarAnalysisServiceTest extends LightPlatformCodeInsightTestCase {
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// on disk, the tool reads imported grammars and tokens files itself
+		dir = FileUtil.createTempDirectory("analysis", null);
+	}
+
+	public void testSameStampReusesTheAnalysis() throws IOException {
+		// Given
+		VirtualFile file = createGrammar("T.g4", "grammar T;\nr : A ;\nA : 'a' ;\n");
+
+		// When
+		GrammarAnalysis first = analyze(file);
+		GrammarAnalysis second = analyze(file);
+
+		// Then
+		assertSame(first, second);
+		assertFalse(first.hasErrors());
+	}
+
+	public void testEditingTheGrammarInvalidatesIt() throws IOException {
+		// Given
+		VirtualFile file = createGrammar("T.g4", "grammar T;\nr : A ;\nA : 'a' ;\n");
+		GrammarAnalysis before = analyze(file);
+
+		// When
+		edit(file, "grammar T;\nr : A A ;\nA : 'a' ;\n");
+
+		// Then
+		assertNotSame(before, analyze(file));
+	}
+
+	public void testEditingTheLexerInvalidatesTheParser() throws IOException {
+		// Given
+		VirtualFile lexer = createGrammar("TLexer.g4", "lexer grammar TLexer;\nA : 'a' ;\n");
+		VirtualFile parser = createGrammar("TParser.g4", "parser grammar TParser;\noptions { tokenVocab = TLexer; }\nr : A ;\n");
+		GrammarAnalysis before = analyze(parser);
+		assertFalse(before.hasErrors());
+		assertNotNull(before.getLexerGrammar());
+
+		// When
+		edit(lexer, "lexer grammar TLexer;\nA : 'a' ;\nB : 'b' ;\n");
+
+		// Then
+		GrammarAnalysis after = analyze(parser);
+		assertNotSame(before, after);
+		assertTrue(after.getGrammar().getTokenType("B") > 0);
+	}
+
+	public void testEditingAnImportedGrammarInvalidatesTheImporter() throws IOException {
+		// Given
+		VirtualFile imported = createGrammar("Common.g4", "grammar Common;\nid : ID ;\nID : [a-z]+ ;\n");
+		VirtualFile importer = createGrammar("T.g4", "grammar T;\nimport Common;\nr : id ;\n");
+		GrammarAnalysis before = analyze(importer);
+		assertFalse(before.hasErrors());
+
+		// When
+		edit(imported, "grammar Common;\nid : ID | INT ;\nID : [a-z]+ ;\nINT : [0-9]+ ;\n");
+
+		// Then
+		GrammarAnalysis after = analyze(importer);
+		assertNotSame(before, after);
+		assertNotNull(after.getGrammar().getRule("id"));
+	}
+
+	public void testMissingTokensFileIsNotAnError() throws IOException {
+		// Given
+		VirtualFile parser = createGrammar("TParser.g4", "parser grammar TParser;\noptions { tokenVocab = Missing; }\nr : A ;\n");
+
+		// When
+		GrammarAnalysis analysis = analyze(parser);
+
+		// Then
+		assertFalse(analysis.hasErrors());
+		assertNotNull(analysis.getGrammar());
+		assertTrue(getErrorTypes(analysis.getIssues()).contains(ErrorType.CANNOT_FIND_TOKENS_FILE_REFD_IN_GRAMMAR));
+	}
+
+	public void testCircularTokenVocabularyTerminates() throws IOException {
+		// Given
+		VirtualFile a = createGrammar("A.g4", "parser grammar A;\noptions { tokenVocab = B; }\nr : X ;\n");
+		createGrammar("B.g4", "parser grammar B;\noptions { tokenVocab = A; }\ns : Y ;\n");
+
+		// When
+		GrammarAnalysis analysis = analyze(a);
+
+		// Then
+		assertNotNull(analysis.getGrammar());
+		assertNull(analysis.getLexerGrammar());
+	}
+
+	public void testIssuesAreTheOnesTheToolReports() throws IOException {
+		// Given
+		String text =
+			"grammar T;\n" +
+			"r : A b | c ;\n" +
+			"b : B ;\n" +
+			"d : d D | D ;\n" +
+			"A : 'a' ;\n" +
+			"A : 'aa' ;\n";
+		VirtualFile file = createGrammar("T.g4", text);
+
+		// When
+		GrammarAnalysis analysis = analyze(file);
+
+		// Then
+		assertEquals(getToolErrorTypes(file, text), getErrorTypes(analysis.getIssues()));
+		assertTrue(analysis.hasErrors());
+	}
+
+	public void testConcurrentCallersShareOneAnalysis() throws Exception {
+		// Given
+		StringBuilder text = new StringBuilder("grammar T;\ns : r0 EOF ;\n");
+		for (int i = 0; i<200; i++) {
+			text.append("r").append(i).append(" : 'k").append(i).append("' (ID | INT)* r").append(i+1).append(" | ID ;\n");
+		}
+		text.append("r200 : INT ;\nID : [a-z]+ ;\nINT : [0-9]+ ;\n");
+		VirtualFile file = createGrammar("T.g4", text.toString());
+
+		// When
+		Future<GrammarAnalysis> first = ApplicationManager.getApplication().executeOnPooledThread(() -> analyzeInReadAction(file));
+		Future<GrammarAnalysis> second = ApplicationManager.getApplication().executeOnPooledThread(() -> analyzeInReadAction(file));
+
+		// Then
+		assertSame(first.get(), second.get());
+	}
+
+	/** What the annotator used to report: a plain tool with the same arguments */
+	private List<ErrorType> getToolErrorTypes(VirtualFile file, String text) {
+		List<String> args = RunANTLROnGrammarFile.getANTLRArgsAsList(getProject(), file);
+		Tool antlr = new Tool(args.toArray(new String[0]));
+		antlr.libDirectory = dir.getPath();
+		List<ErrorType> errorTypes = new ArrayList<>();
+		antlr.removeListeners();
+		antlr.addListener(new ANTLRToolListener() {
+			@Override
+			public void info(String msg) {
+			}
+
+			@Override
+			public void error(ANTLRMessage msg) {
+				errorTypes.add(msg.getErrorType());
+			}
+
+			@Override
+			public void warning(ANTLRMessage msg) {
+				errorTypes.add(msg.getErrorType());
+			}
+		});
+		Grammar g = antlr.createGrammar(antlr.parseGrammarFromString(text));
+		g.fileName = file.getPath();
+		antlr.process(g, false);
+		return errorTypes;
+	}
+
+	private static List<ErrorType> getErrorTypes(List<GrammarIssue> issues) {
+		List<ErrorType> errorTypes = new ArrayList<>();
+		for (GrammarIssue issue : issues) {
+			if ( issue.getMsg()!=null ) {
+				errorTypes.add(issue.getMsg().getErrorType());
+			}
+		}
+		return errorTypes;
+	}
+
+	private VirtualFile createGrammar(String name, String text) throws IOException {
+		File file = new File(dir, name);
+		FileUtil.writeToFile(file, text);
+		return LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
+	}
+
+	private static void edit(VirtualFile file, String text) throws IOException {
+		WriteAction.runAndWait(() -> VfsUtil.saveText(file, text));
+	}
+
+	private GrammarAnalysis analyze(VirtualFile file) {
+		return GrammarAnalysisService.getInstance(getProject()).analyze(file);
+	}
+
+	private GrammarAnalysis analyzeInReadAction(VirtualFile file) {
+		return ReadAction.compute(() -> analyze(file));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.delete(dir);
+		TestUtils.tearDownIgnoringObjectNotDisposedException(() -> super.tearDown());
+	}
+}
@@ -0,0 +1,79 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class GrammarDependencyGraphTest extends TestCase {
+
+	public void test_all_dependents_of_shared_lexer() {
+		// Given
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		graph.setDependencies("/g/AParser.g4", Collections.singletonList("/g/CommonLexer.g4"));
+		graph.setDependencies("/g/BParser.g4", Collections.singletonList("/g/CommonLexer.g4"));
+
+		// Then
+		assertEquals(new HashSet<>(Arrays.asList("/g/AParser.g4", "/g/BParser.g4")),
+					 new HashSet<>(graph.getTransitiveDependents("/g/CommonLexer.g4")));
+		assertEquals(Collections.emptyList(), graph.getTransitiveDependents("/g/AParser.g4"));
+	}
+
+	public void test_dependents_come_after_their_dependencies() {
+		// Given P imports Q, both use L, and Q imports L's imported grammar
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		graph.setDependencies("/g/P.g4", Arrays.asList("/g/L.g4", "/g/Q.g4"));
+		graph.setDependencies("/g/Q.g4", Collections.singletonList("/g/L.g4"));
+
+		// When
+		List<String> order = graph.getTransitiveDependents("/g/L.g4");
+
+		// Then
+		assertEquals(Arrays.asList("/g/Q.g4", "/g/P.g4"), order);
+	}
+
+	public void test_reloading_replaces_dependencies() {
+		// Given
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		graph.setDependencies("/g/P.g4", Collections.singletonList("/g/OldLexer.g4"));
+
+		// When
+		graph.setDependencies("/g/P.g4", Collections.singletonList("/g/NewLexer.g4"));
+
+		// Then
+		assertEquals(Collections.emptySet(), graph.getDirectDependents("/g/OldLexer.g4"));
+		assertEquals(Collections.singleton("/g/P.g4"), graph.getDirectDependents("/g/NewLexer.g4"));
+
+		graph.remove("/g/P.g4");
+		assertEquals(Collections.emptySet(), graph.getDirectDependents("/g/NewLexer.g4"));
+	}
+
+	public void test_layers_put_lexers_first() {
+		// Given P imports Q, both use L, and R is on its own
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		graph.setDependencies("/g/P.g4", Arrays.asList("/g/L.g4", "/g/Q.g4"));
+		graph.setDependencies("/g/Q.g4", Collections.singletonList("/g/L.g4"));
+		graph.setDependencies("/g/R.g4", Collections.singletonList("/g/Elsewhere.g4"));
+
+		// When
+		List<List<String>> layers = graph.getLayers(Arrays.asList("/g/P.g4", "/g/Q.g4", "/g/L.g4", "/g/R.g4"));
+
+		// Then
+		assertEquals(3, layers.size());
+		assertEquals(new HashSet<>(Arrays.asList("/g/L.g4", "/g/R.g4")), new HashSet<>(layers.get(0)));
+		assertEquals(Collections.singletonList("/g/Q.g4"), layers.get(1));
+		assertEquals(Collections.singletonList("/g/P.g4"), layers.get(2));
+	}
+
+	public void test_cycles_terminate() {
+		// Given
+		GrammarDependencyGraph graph = new GrammarDependencyGraph();
+		graph.setDependencies("C:\\g\\A.g4", Collections.singletonList("C:/g/B.g4"));
+		graph.setDependencies("C:/g/B.g4", Collections.singletonList("C:/g/A.g4"));
+
+		// Then
+		assertEquals(Collections.singletonList("C:/g/A.g4"), graph.getTransitiveDependents("C:/g/B.g4"));
+	}
+}
@@ -0,0 +1,73 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.v4.Tool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+public class GrammarFingerprintTest extends TestCase {
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : e EOF ;\n" +
+		"e : e '*' e | INT ;\n" +
+		"INT : [0-9]+ ;\n";
+
+	public void test_comments_and_formatting_dont_matter() {
+		// Given
+		GrammarFingerprint before = fingerprint(GRAMMAR);
+
+		// When
+		GrammarFingerprint after = fingerprint(
+			"// a comment\n" +
+			"grammar T;\n" +
+			"s\n  : e EOF\n  ;\n" +
+			"/* another */ e : e '*' e | INT ;\n" +
+			"INT : [0-9]+ ;\n"
+		);
+
+		// Then
+		assertTrue(after.sameAs(before));
+	}
+
+	public void test_changed_added_and_removed_rules() {
+		// Given
+		GrammarFingerprint before = fingerprint(GRAMMAR);
+
+		// When
+		GrammarFingerprint after = fingerprint(
+			"grammar T;\n" +
+			"s : e EOF ;\n" +
+			"e : e '+' e | INT ;\n" +
+			"ID : [a-z]+ ;\n"
+		);
+
+		// Then
+		assertEquals(new LinkedHashSet<>(Arrays.asList("e", "ID", "INT")), after.getChangedRules(before));
+		assertFalse(after.sameAs(before));
+	}
+
+	public void test_options_and_rule_order_are_in_the_header() {
+		// Given
+		GrammarFingerprint before = fingerprint(GRAMMAR);
+
+		// When
+		GrammarFingerprint withOptions = fingerprint(GRAMMAR.replace("grammar T;", "grammar T; options { caseInsensitive = true; }"));
+		GrammarFingerprint reordered = fingerprint(
+			"grammar T;\n" +
+			"e : e '*' e | INT ;\n" +
+			"s : e EOF ;\n" +
+			"INT : [0-9]+ ;\n"
+		);
+
+		// Then
+		assertFalse(withOptions.sameHeader(before));
+		assertEquals(Collections.emptySet(), withOptions.getChangedRules(before));
+		assertFalse(reordered.sameHeader(before));
+	}
+
+	private static GrammarFingerprint fingerprint(String grammar) {
+		return GrammarFingerprint.of(new Tool().parseGrammarFromString(grammar));
+	}
+}
@@ -0,0 +1,134 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.intellij.adaptor.parser.SyntaxError;
+import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.tool.LexerGrammar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IncrementalLexerTest extends TestCase {
+
+	private static final String GRAMMAR =
+		"lexer grammar L;\n" +
+		"ID : [a-z]+ ;\n" +
+		"ABC : 'ABC' ;\n" +
+		"A : 'A' ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ \\n]+ -> skip ;\n" +
+		"LQ : '\"' -> pushMode(STR) ;\n" +
+		"mode STR;\n" +
+		"TEXT : ~'\"'+ ;\n" +
+		"RQ : '\"' -> popMode ;\n";
+
+	private LexerATNCache lexerATNCache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		lexerATNCache = new LexerATNCache(new LexerGrammar(GRAMMAR), CaseChangingStrategy.LEAVE_AS_IS);
+	}
+
+	public void test_edit_in_the_middle_reuses_prefix() {
+		// Given
+		IncrementalLexer lexer = new IncrementalLexer();
+		List<? extends Token> before = lex(lexer, "abc 12\ndef 34\nghi 56").getTokens();
+
+		// When
+		TokenStreamSubset after = lex(lexer, "abc 12\ndxef 34\nghi 56");
+
+		// Then
+		assertSameTokens("abc 12\ndxef 34\nghi 56", after);
+		assertEquals(before.get(0).toString(), after.get(0).toString());
+		// copied onto the new input, not holding on to the old one
+		assertSame(after.getTokenSource(), after.get(0).getTokenSource());
+	}
+
+	public void test_edit_after_a_supplementary_character() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "abc \uD83D\uDE00 12\ndef 34\nghi 56");
+		assertSameTokens("abc \uD83D\uDE00 12\ndxef 34\nghi 56", lex(lexer, "abc \uD83D\uDE00 12\ndxef 34\nghi 56"));
+		assertSameTokens("abc \uD83D\uDE00 12\ndef 34\nghi 56", lex(lexer, "abc \uD83D\uDE00 12\ndef 34\nghi 56"));
+		assertSameTokens("abc \uD83D\uDE00 12x\ndef 34\nghi 56", lex(lexer, "abc \uD83D\uDE00 12x\ndef 34\nghi 56"));
+		assertSameTokens("abc \uD83D\uDE00 ab\ndef 34\nghi 56", lex(lexer, "abc \uD83D\uDE00 ab\ndef 34\nghi 56"));
+		assertSameTokens("abc \uD83D\uDE00 abx\ndef 34\nghi 56", lex(lexer, "abc \uD83D\uDE00 abx\ndef 34\nghi 56"));
+	}
+
+	public void test_insert_and_delete_a_supplementary_character() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "ab cd\nef 12");
+		assertSameTokens("ab \uD83D\uDE00cd\nef 12", lex(lexer, "ab \uD83D\uDE00cd\nef 12"));
+		assertSameTokens("ab cd\nef 12", lex(lexer, "ab cd\nef 12"));
+	}
+
+	public void test_edit_before_a_supplementary_character() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "abc 12\ndef \uD83D\uDE00 34\nghi 56");
+		assertSameTokens("abc 123\ndef \uD83D\uDE00 34\nghi 56", lex(lexer, "abc 123\ndef \uD83D\uDE00 34\nghi 56"));
+		assertSameTokens("ab 123\ndef \uD83D\uDE00 34\nghi 56", lex(lexer, "ab 123\ndef \uD83D\uDE00 34\nghi 56"));
+	}
+
+	public void test_edit_of_a_supplementary_character() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "abc \uD83D\uDE00 12");
+		assertSameTokens("abc \uD83D\uDE01 12", lex(lexer, "abc \uD83D\uDE01 12"));
+		assertSameTokens("abc \uD83E\uDE01 12", lex(lexer, "abc \uD83E\uDE01 12"));
+	}
+
+	public void test_edit_that_enters_a_mode() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "abc 12 def 34 ghi");
+		assertSameTokens("abc \"12 def 34 ghi", lex(lexer, "abc \"12 def 34 ghi"));
+		assertSameTokens("abc \"12 def\" 34 ghi", lex(lexer, "abc \"12 def\" 34 ghi"));
+	}
+
+	public void test_edit_after_token_that_looked_ahead() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "x AB y");
+		assertSameTokens("x ABC y", lex(lexer, "x ABC y"));
+	}
+
+	public void test_errors_are_reported_again_in_reused_regions() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "a # b\nc % d");
+		SyntaxErrorListener listener = new SyntaxErrorListener();
+		lexer.tokenize(lexerATNCache, "input", "a # bb\nc % d", listener);
+
+		SyntaxErrorListener expected = new SyntaxErrorListener();
+		new IncrementalLexer().tokenize(lexerATNCache, "input", "a # bb\nc % d", expected);
+		assertEquals(toStrings(expected.getSyntaxErrors()), toStrings(listener.getSyntaxErrors()));
+	}
+
+	public void test_append_and_delete_at_the_end() {
+		IncrementalLexer lexer = new IncrementalLexer();
+		lex(lexer, "abc 12");
+		assertSameTokens("abc 123", lex(lexer, "abc 123"));
+		assertSameTokens("abc", lex(lexer, "abc"));
+		assertSameTokens("", lex(lexer, ""));
+	}
+
+	private TokenStreamSubset lex(IncrementalLexer lexer, String text) {
+		return lexer.tokenize(lexerATNCache, "input", text, new SyntaxErrorListener());
+	}
+
+	private void assertSameTokens(String text, TokenStreamSubset actual) {
+		List<String> expected = toStrings(lex(new IncrementalLexer(), text).getTokens());
+		assertEquals(expected, toStrings(actual.getTokens()));
+	}
+
+	private static List<String> toStrings(List<?> objects) {
+		List<String> strings = new ArrayList<>();
+		for (Object o : objects) {
+			if ( o instanceof SyntaxError ) {
+				SyntaxError e = (SyntaxError) o;
+				strings.add(e.getLine() + ":" + e.getCharPositionInLine() + " " + e.getMessage());
+			}
+			else {
+				strings.add(o.toString());
+			}
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,75 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedCharStreamTest extends TestCase {
+
+	private Path file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = Files.createTempFile("preview", ".txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+		super.tearDown();
+	}
+
+	public void test_ascii_input() throws IOException {
+		assertSameAsCodePointCharStream("hello\nworld\n".repeat(500));
+	}
+
+	public void test_multi_byte_input() throws IOException {
+		assertSameAsCodePointCharStream("héllo 世界 😀\n".repeat(500));
+	}
+
+	public void test_empty_input() throws IOException {
+		assertSameAsCodePointCharStream("");
+	}
+
+	public void test_malformed_input_is_read_as_replacement_chars() throws IOException {
+		// Given
+		Files.write(file, new byte[]{'a', (byte) 0xC3, 'b', (byte) 0xFF});
+
+		// When
+		MappedCharStream input = new MappedCharStream(file, "test");
+
+		// Then
+		assertEquals(4, input.size());
+		assertEquals("a�b�", input.getText(Interval.of(0, 3)));
+	}
+
+	private void assertSameAsCodePointCharStream(String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		CharStream expected = CharStreams.fromString(text);
+		MappedCharStream actual = new MappedCharStream(file, "test");
+
+		assertEquals(expected.size(), actual.size());
+		while ( expected.LA(1)!=IntStream.EOF ) {
+			assertEquals(expected.LA(1), actual.LA(1));
+			expected.consume();
+			actual.consume();
+		}
+		assertEquals(IntStream.EOF, actual.LA(1));
+
+		int size = expected.size();
+		for (int i = 0; i<size; i += 97) {
+			actual.seek(i);
+			assertEquals(expected.getText(Interval.of(i, size-1)), actual.getText(Interval.of(i, size-1)));
+			assertEquals(Character.toString(expected.getText(Interval.of(i, i)).codePointAt(0)),
+						 Character.toString(actual.codePointAt(i)));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.tool.Grammar;
+
+public class ParsingResultCacheTest extends TestCase {
+
+	private Grammar g;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		g = new Grammar("grammar T; s : ID* EOF ; ID : [a-z]+ ; WS : [ ]+ -> skip ;");
+	}
+
+	public void test_hit_only_for_same_grammar_version_rule_and_input() {
+		// Given
+		ParsingResultCache cache = new ParsingResultCache();
+		ParsingResult result = result("a b c");
+		cache.put(key(1, "s", "a b c"), result, 42);
+
+		// Then
+		ParsingResultCache.Hit hit = cache.get(key(1, "s", "a b c"), false);
+		assertSame(result, hit.result);
+		assertEquals(42, hit.parseTime_ns);
+		assertNull(cache.get(key(2, "s", "a b c"), false));
+		assertNull(cache.get(key(1, "t", "a b c"), false));
+		assertNull(cache.get(key(1, "s", "a b d"), false));
+	}
+
+	public void test_least_recently_used_is_evicted_first() {
+		// Given
+		ParsingResultCache cache = new ParsingResultCache(2, Long.MAX_VALUE);
+		cache.put(key(1, "s", "a"), result("a"), 0);
+		cache.put(key(1, "s", "b"), result("b"), 0);
+
+		// When
+		cache.get(key(1, "s", "a"), false);
+		cache.put(key(1, "s", "c"), result("c"), 0);
+
+		// Then
+		assertNotNull(cache.get(key(1, "s", "a"), false));
+		assertNull(cache.get(key(1, "s", "b"), false));
+		assertNotNull(cache.get(key(1, "s", "c"), false));
+	}
+
+	public void test_memory_cap() {
+		// Given a cap that holds 2 results of 3 tokens
+		ParsingResultCache cache = new ParsingResultCache(10, 1200);
+
+		// When
+		cache.put(key(1, "s", "a b"), result("a b"), 0);
+		cache.put(key(1, "s", "c d"), result("c d"), 0);
+		cache.put(key(1, "s", "e f"), result("e f"), 0);
+
+		// Then
+		assertEquals(2, cache.size());
+		assertNull(cache.get(key(1, "s", "a b"), false));
+	}
+
+	public void test_results_without_profiling_data_or_partial_are_not_used() {
+		// Given
+		ParsingResultCache cache = new ParsingResultCache();
+		ParsingResult partial = result("b");
+		partial.budgetExceededMessage = "budget exceeded";
+
+		// When
+		cache.put(key(1, "s", "a"), result("a"), 0);
+		cache.put(key(1, "s", "b"), partial, 0);
+
+		// Then
+		assertNull(cache.get(key(1, "s", "a"), true));
+		assertNull(cache.get(key(1, "s", "b"), false));
+	}
+
+	private static ParsingResultCache.Key key(long grammarVersion, String startRuleName, String input) {
+		return new ParsingResultCache.Key("T.g4", grammarVersion, startRuleName, CaseChangingStrategy.LEAVE_AS_IS,
+										  false, input);
+	}
+
+	private ParsingResult result(String input) {
+		CommonTokenStream tokens = new CommonTokenStream(g.createLexerInterpreter(CharStreams.fromString(input)));
+		tokens.fill();
+		return new ParsingResult(new PreviewParser(g, tokens), null, new SyntaxErrorListener());
+	}
+}
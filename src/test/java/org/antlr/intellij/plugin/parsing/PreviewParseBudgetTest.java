@@ -0,0 +1,61 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.tool.Grammar;
+
+public class PreviewParseBudgetTest extends TestCase {
+
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : e (';' e)* EOF ;\n" +
+		"e : e '*' e | e '+' e | '(' e ')' | INT ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ ]+ -> skip ;\n";
+
+	public void test_token_budget_stops_parsing_with_partial_tree() throws Exception {
+		// Given
+		PreviewParser parser = createParser("1+2;3*4;5");
+		parser.setBudget(new PreviewParseBudget(0, 0, 5));
+
+		// When
+		PreviewParseBudget.ParseBudgetExceededException e = parse(parser);
+
+		// Then
+		assertEquals(5, e.getToken().getTokenIndex());
+		assertEquals("Preview budget exceeded at token 5 (line 1:5): the input has more than 5 tokens", e.getMessage());
+		assertEquals("(s:1 (e:2 (e:4 1) + (e:4 2)) ; (e:1 (e:4 3) *))", parser.getPartialParseTree().toStringTree(parser));
+	}
+
+	public void test_node_budget_keeps_left_recursive_rule_in_progress() throws Exception {
+		// Given
+		PreviewParser parser = createParser("1+2+3+4+5");
+		parser.setBudget(new PreviewParseBudget(0, 10, 0));
+
+		// When
+		parse(parser);
+
+		// Then
+		ParserRuleContext tree = parser.getPartialParseTree();
+		assertEquals("(s:1 (e:2 (e:2 (e:4 1) + (e:4 2)) + (e:4 3)))", tree.toStringTree(parser));
+	}
+
+	private static PreviewParser createParser(String input) throws Exception {
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = new CommonTokenStream(g.createLexerInterpreter(CharStreams.fromString(input)));
+		return new PreviewParser(g, tokens);
+	}
+
+	private static PreviewParseBudget.ParseBudgetExceededException parse(PreviewParser parser) {
+		try {
+			parser.parse(0);
+		}
+		catch (PreviewParseBudget.ParseBudgetExceededException e) {
+			return e;
+		}
+		fail("budget should have been exceeded");
+		return null;
+	}
+}
@@ -0,0 +1,121 @@
+package org.antlr.intellij.plugin.parsing;
+
+import junit.framework.TestCase;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.tool.Grammar;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Compares {@link PreviewParser}'s int array of ATN states by token index
+ *  with the {@code HashMap<Token, Integer>} it used before.
+ */
+public class TokenStateTrackingBenchmarkTest extends TestCase {
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : stat* EOF ;\n" +
+		"stat : ID '=' e ';' ;\n" +
+		"e : e '*' e | e '+' e | '(' e ')' | ID | INT ;\n" +
+		"ID : [a-z]+ ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ \\n]+ -> skip ;\n";
+	private static final int STATEMENTS = 20_000;
+	private static final int ITERATIONS = 5;
+
+	/** The previous implementation */
+	private static class MapTrackingPreviewParser extends PreviewParser {
+		final Map<Token, Integer> inputTokenToStateMap = new HashMap<>();
+
+		MapTrackingPreviewParser(ParserATNCache cache, CommonTokenStream input) {
+			super(cache, input);
+			disableTokenStateTracking();
+		}
+
+		@Override
+		protected void setATNStateForToken(Token t, int atnState) {
+			inputTokenToStateMap.put(t, atnState);
+		}
+	}
+
+	public void test_both_record_the_same_states() throws Exception {
+		// Given
+		Grammar g = new Grammar(GRAMMAR);
+		ParserATNCache cache = new ParserATNCache(g);
+		CommonTokenStream tokens = tokenize(g, input(100));
+
+		// When
+		PreviewParser arrayParser = parse(new PreviewParser(cache, tokens), tokens);
+		MapTrackingPreviewParser mapParser = parse(new MapTrackingPreviewParser(cache, tokens), tokens);
+
+		// Then
+		for (Token t : tokens.getTokens()) {
+			Integer state = mapParser.inputTokenToStateMap.get(t);
+			assertEquals(state!=null ? state : ATNState.INVALID_STATE_NUMBER, arrayParser.getATNStateForToken(t));
+		}
+	}
+
+	/** Reports the memory allocated and the time spent per parse by each. */
+	public void test_int_array_allocates_less_than_map() throws Exception {
+		// Given
+		Grammar g = new Grammar(GRAMMAR);
+		ParserATNCache cache = new ParserATNCache(g);
+		CommonTokenStream tokens = tokenize(g, input(STATEMENTS));
+		parse(new PreviewParser(cache, tokens), tokens); // warm up the DFA and the JIT
+		parse(new MapTrackingPreviewParser(cache, tokens), tokens);
+
+		// When
+		long arrayBytes = 0, arrayTime = 0, mapBytes = 0, mapTime = 0;
+		for (int i = 0; i<ITERATIONS; i++) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			parse(new PreviewParser(cache, tokens), tokens);
+			arrayTime += System.nanoTime() - start;
+			arrayBytes += allocatedBytes() - bytes;
+
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			parse(new MapTrackingPreviewParser(cache, tokens), tokens);
+			mapTime += System.nanoTime() - start;
+			mapBytes += allocatedBytes() - bytes;
+		}
+
+		// Then
+		System.out.printf("%d tokens: int array %.1f MB, %.1f ms per parse; HashMap %.1f MB, %.1f ms per parse%n",
+			tokens.size(),
+			arrayBytes / 1e6 / ITERATIONS, arrayTime / 1e6 / ITERATIONS,
+			mapBytes / 1e6 / ITERATIONS, mapTime / 1e6 / ITERATIONS);
+		assertTrue(arrayBytes<mapBytes);
+	}
+
+	private static String input(int statements) {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i<statements; i++) {
+			input.append("x").append(" = (a + ").append(i).append(") * b;\n");
+		}
+		return input.toString();
+	}
+
+	private static CommonTokenStream tokenize(Grammar g, String input) {
+		CommonTokenStream tokens = new CommonTokenStream(g.createLexerInterpreter(CharStreams.fromString(input)));
+		tokens.fill();
+		return tokens;
+	}
+
+	private static <P extends PreviewParser> P parse(P parser, CommonTokenStream tokens) {
+		tokens.seek(0);
+		parser.setBuildParseTree(false);
+		parser.removeErrorListeners();
+		parser.parse(0);
+		return parser;
+	}
+
+	/** Bytes allocated by this thread so far, on HotSpot */
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+			.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,179 @@
+package org.antlr.intellij.plugin.preview;
+
+import junit.framework.TestCase;
+import org.abego.treelayout.NodeExtentProvider;
+import org.abego.treelayout.TreeLayout;
+import org.abego.treelayout.util.DefaultConfiguration;
+import org.antlr.v4.gui.TreeLayoutAdaptor;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import org.antlr.v4.runtime.tree.Tree;
+
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+public class ParseTreeLayoutIndexTest extends TestCase {
+	private static final double MIN_SUBTREE_PIXELS = 4;
+
+	private TreeLayout<Tree> layout;
+	private ParseTreeLayoutIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(42);
+		ParserRuleContext root = new ParserRuleContext();
+		addChildren(root, random, 0);
+		layout = new TreeLayout<>(new TreeLayoutAdaptor(root), new NodeExtentProvider<Tree>() {
+			@Override
+			public double getWidth(Tree tree) {
+				return 10 + tree.getChildCount() * 7;
+			}
+
+			@Override
+			public double getHeight(Tree tree) {
+				return tree instanceof TerminalNodeImpl ? 12 : 16;
+			}
+		}, new DefaultConfiguration<>(20, 5), true);
+		index = new ParseTreeLayoutIndex(layout);
+	}
+
+	public void test_index_holds_every_node_once() {
+		assertEquals(layout.getNodeBounds().size(), index.size());
+		Set<Tree> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		nodes.addAll(Arrays.asList(index.nodes));
+		assertEquals(layout.getNodeBounds().keySet(), nodes);
+	}
+
+	public void test_no_clip_paints_everything() {
+		// When
+		Recorder recorder = paint(null, 0);
+
+		// Then
+		assertEquals(index.size(), recorder.boxes.size());
+		assertEquals(index.size()-1, recorder.edges.size());
+		assertTrue(recorder.collapsed.isEmpty());
+	}
+
+	public void test_visible_boxes_and_edges_match_a_full_scan() {
+		Rectangle2D bounds = layout.getBounds();
+		for (double scale : new double[] {2, 1, 0.5, 0.1, 0.02}) {
+			double viewportWidth = 800 / scale;
+			double viewportHeight = 600 / scale;
+			for (double fx = -0.5; fx<=1; fx += 0.25) {
+				for (double fy = -0.5; fy<=1; fy += 0.25) {
+					Rectangle2D clip = new Rectangle2D.Double(bounds.getX() + fx * bounds.getWidth(),
+															  bounds.getY() + fy * bounds.getHeight(),
+															  viewportWidth, viewportHeight);
+					assertSameAsFullScan(clip, MIN_SUBTREE_PIXELS / scale);
+				}
+			}
+		}
+	}
+
+	public void test_empty_and_off_screen_viewports() {
+		Rectangle2D bounds = layout.getBounds();
+		assertSameAsFullScan(new Rectangle2D.Double(bounds.getCenterX(), bounds.getCenterY(), 0, 0), 0);
+		Rectangle2D offScreen = new Rectangle2D.Double(bounds.getMaxX() + 100, bounds.getMaxY() + 100, 800, 600);
+		assertSameAsFullScan(offScreen, 0);
+
+		Recorder recorder = paint(offScreen, 0);
+		assertTrue(recorder.boxes.isEmpty());
+		assertTrue(recorder.edges.isEmpty());
+	}
+
+	/** What {@link ParseTreeLayoutIndex#paint} should report, found by looking at every node */
+	private void assertSameAsFullScan(Rectangle2D clip, double minSubtreeExtent) {
+		Map<Tree, Rectangle2D.Double> nodeBounds = layout.getNodeBounds();
+		Set<Integer> boxes = new HashSet<>();
+		Set<String> edges = new HashSet<>();
+		Set<Integer> collapsed = new HashSet<>();
+		Map<Tree, Integer> indexOf = new IdentityHashMap<>();
+		for (int i = 0; i<index.size(); i++) {
+			indexOf.put(index.nodes[i], i);
+		}
+		scan(index.nodes[0], true, clip, minSubtreeExtent, nodeBounds, indexOf, boxes, edges, collapsed);
+
+		Recorder recorder = paint(clip, minSubtreeExtent);
+		assertEquals(clip+" at "+minSubtreeExtent, boxes, recorder.boxes);
+		assertEquals(clip+" at "+minSubtreeExtent, edges, recorder.edges);
+		assertEquals(clip+" at "+minSubtreeExtent, collapsed, recorder.collapsed);
+	}
+
+	private void scan(Tree node, boolean isRoot, Rectangle2D clip, double minSubtreeExtent,
+					  Map<Tree, Rectangle2D.Double> nodeBounds, Map<Tree, Integer> indexOf,
+					  Set<Integer> boxes, Set<String> edges, Set<Integer> collapsed) {
+		Rectangle2D subtree = subtreeBounds(node, nodeBounds);
+		if ( !isRoot && !clip.intersects(subtree) ) {
+			return;
+		}
+		int i = indexOf.get(node);
+		if ( node.getChildCount()>0 && subtree.getWidth()<minSubtreeExtent && subtree.getHeight()<minSubtreeExtent ) {
+			collapsed.add(i);
+			return;
+		}
+		Rectangle2D.Double box = nodeBounds.get(node);
+		if ( clip.intersects(box) ) {
+			boxes.add(i);
+		}
+		for (int c = 0; c<node.getChildCount(); c++) {
+			Tree child = node.getChild(c);
+			Rectangle2D.Double childBox = nodeBounds.get(child);
+			if ( clip.intersectsLine(box.getCenterX(), box.getMaxY(), childBox.getCenterX(), childBox.getMinY()) ) {
+				edges.add(i+"->"+indexOf.get(child));
+			}
+			scan(child, false, clip, minSubtreeExtent, nodeBounds, indexOf, boxes, edges, collapsed);
+		}
+	}
+
+	private static Rectangle2D subtreeBounds(Tree node, Map<Tree, Rectangle2D.Double> nodeBounds) {
+		Rectangle2D bounds = (Rectangle2D) nodeBounds.get(node).clone();
+		for (int c = 0; c<node.getChildCount(); c++) {
+			bounds.add(subtreeBounds(node.getChild(c), nodeBounds));
+		}
+		return bounds;
+	}
+
+	private Recorder paint(Rectangle2D clip, double minSubtreeExtent) {
+		Recorder recorder = new Recorder();
+		index.paint(clip, minSubtreeExtent, recorder);
+		return recorder;
+	}
+
+	private static class Recorder implements ParseTreeLayoutIndex.Painter {
+		final Set<Integer> boxes = new HashSet<>();
+		final Set<String> edges = new HashSet<>();
+		final Set<Integer> collapsed = new HashSet<>();
+
+		@Override
+		public void edge(int parent, int child) {
+			assertTrue("edges before boxes", boxes.isEmpty());
+			assertTrue(edges.add(parent+"->"+child));
+		}
+
+		@Override
+		public void box(int node) {
+			assertTrue(boxes.add(node));
+		}
+
+		@Override
+		public void collapsedSubtree(int node) {
+			assertTrue(collapsed.add(node));
+		}
+	}
+
+	private static void addChildren(ParserRuleContext parent, Random random, int depth) {
+		int n = depth<8 ? 1 + random.nextInt(4) : 0;
+		for (int i = 0; i<n; i++) {
+			if ( depth>=2 && random.nextInt(3)==0 ) {
+				parent.addChild(new TerminalNodeImpl(new CommonToken(1, "t"+i)));
+			}
+			else {
+				ParserRuleContext child = new ParserRuleContext(parent, 0);
+				parent.addChild(child);
+				addChildren(child, random, depth+1);
+			}
+		}
+	}
+}
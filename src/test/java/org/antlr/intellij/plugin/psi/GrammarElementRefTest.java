@@ -1,6 +1,9 @@
 package org.antlr.intellij.plugin.psi;
 
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
@@ -188,6 +191,17 @@ public class GrammarElementRefTest extends LightPlatformCodeInsightFixtureTestCa
 		});
 	}
 
+	public void testReferenceToRuleAddedAfterResolving() {
+		myFixture.configureByText("Edited.g4", "grammar Edited;\nr : <caret>B ;\nA : 'a' ;\n");
+		assertResolvesToNothing();
+
+		Document document = myFixture.getEditor().getDocument();
+		WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(document.getTextLength(), "B : 'b' ;\n"));
+		PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+		assertResolvedMatches(LexerRuleSpecNode.class, element -> assertEquals("B", element.getName()));
+	}
+
 	@Override
 	protected void tearDown() throws Exception {
 		// This can avoid exceptions
@@ -0,0 +1,84 @@
+package org.antlr.intellij.plugin.psi;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.TestUtils;
+import org.antlr.v4.parse.ANTLRParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class GrammarHeaderTest extends LightPlatformCodeInsightFixtureTestCase {
+	public void testParserGrammarHeader() {
+		// Given
+		PsiFile file = myFixture.configureByText("P.g4",
+			"parser grammar P;\n" +
+			"options { tokenVocab='L'; superClass=Base; }\n" +
+			"import A, B=C;\n" +
+			"@header { package foo; }\n" +
+			"r : ID ;\n"
+		);
+
+		// When
+		GrammarHeader header = GrammarHeader.getInstance(file);
+
+		// Then
+		assertEquals(ANTLRParser.PARSER, header.getType());
+		assertEquals("P", header.getName());
+		assertEquals("'L'", header.getOption("tokenVocab"));
+		assertEquals("L", header.getTokenVocab());
+		assertEquals("Base", header.getOption("superClass"));
+		assertEquals(Arrays.asList("A", "C"), header.getImports());
+		assertNotNull(header.getOptionsSpec());
+		assertNull(header.getTokensSpec());
+		assertEquals(" package foo; ", header.findAction("header").getActionBlockText());
+		assertNull(header.findAction("members"));
+	}
+
+	public void testLexerGrammarHeader() {
+		// Given
+		PsiFile file = myFixture.configureByText("L.g4",
+			"lexer grammar L;\n" +
+			"tokens { T }\n" +
+			"channels { COMMENTS, WS }\n" +
+			"ID : [a-z]+ ;\n"
+		);
+
+		// When
+		GrammarHeader header = GrammarHeader.getInstance(file);
+
+		// Then
+		assertEquals(ANTLRParser.LEXER, header.getType());
+		assertEquals(Arrays.asList("COMMENTS", "WS"), header.getChannels());
+		assertEquals(Collections.emptyList(), header.getImports());
+		assertNotNull(header.getTokensSpec());
+		assertNull(header.getTokenVocab());
+	}
+
+	public void testHeaderFollowsEdits() {
+		// Given
+		PsiFile file = myFixture.configureByText("G.g4", "grammar G;\nr : A ;\nA : 'a' ;\n");
+		assertNull(GrammarHeader.getInstance(file).getTokenVocab());
+
+		// When
+		Document document = myFixture.getEditor().getDocument();
+		WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString("grammar G;\n".length(), "options { tokenVocab=V; }\n"));
+		PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+
+		// Then
+		assertEquals(ANTLRParser.COMBINED, GrammarHeader.getInstance(file).getType());
+		assertEquals("V", GrammarHeader.getInstance(file).getTokenVocab());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// This can avoid exceptions
+		ANTLRv4PluginController.getInstance(getProject()).getConsole().setOutputPaused(true);
+
+		TestUtils.tearDownIgnoringObjectNotDisposedException(() -> super.tearDown());
+	}
+}
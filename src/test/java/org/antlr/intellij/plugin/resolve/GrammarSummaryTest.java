@@ -0,0 +1,73 @@
+package org.antlr.intellij.plugin.resolve;
+
+import junit.framework.TestCase;
+import org.antlr.v4.parse.ANTLRParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+public class GrammarSummaryTest extends TestCase {
+	public void test_lexer_names_and_vocabulary() {
+		// When
+		GrammarSummary summary = GrammarSummary.of(
+			"lexer grammar L;\n" +
+			"import Common, C=Other;\n" +
+			"tokens { T1, T2 }\n" +
+			"channels { C1 }\n" +
+			"A : 'a' F ;\n" +
+			"fragment F : 'f' ;\n" +
+			"mode M;\n" +
+			"B : 'b' -> popMode ;\n"
+		);
+
+		// Then
+		assertEquals("L", summary.getName());
+		assertEquals(ANTLRParser.LEXER, summary.getType());
+		assertEquals(Arrays.asList("Common", "Other"), summary.getImports());
+		assertNull(summary.getTokenVocab());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("T1", "T2", "C1", "A", "F", "M", "B")), summary.getDefinedNames());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("T1", "T2", "A", "B")), summary.getVocabularyNames());
+	}
+
+	public void test_parser_with_token_vocab() {
+		// When
+		GrammarSummary summary = GrammarSummary.of(
+			"parser grammar P;\n" +
+			"options { tokenVocab='L'; }\n" +
+			"s[int x] returns [int y] @init {} : A s2 ;\n" +
+			"s2 : B ;\n"
+		);
+
+		// Then
+		assertEquals(ANTLRParser.PARSER, summary.getType());
+		assertEquals("L", summary.getTokenVocab());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("s", "s2")), summary.getDefinedNames());
+		assertEquals(Collections.emptySet(), summary.getVocabularyNames());
+	}
+
+	public void test_save_and_read() throws IOException {
+		// Given
+		GrammarSummary summary = GrammarSummary.of(
+			"grammar G;\n" +
+			"import Common;\n" +
+			"options { tokenVocab=L; }\n" +
+			"s : A ;\n" +
+			"A : 'a' ;\n"
+		);
+
+		// When
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		summary.save(new DataOutputStream(bytes));
+		GrammarSummary read = GrammarSummary.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		// Then
+		assertEquals(summary, read);
+		assertEquals(ANTLRParser.COMBINED, read.getType());
+	}
+}